@@ -0,0 +1,37 @@
+package com.apuex.restclient.benchmarks;
+
+import com.apuex.restclient.HttpRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link HttpRequest#asString(java.io.InputStream, String)}.
+ *
+ * @author wangxy
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class AsStringBenchmark {
+
+    @Param({"1024", "1048576", "16777216"})
+    public int size;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        payload = Payloads.json(size);
+    }
+
+    @Benchmark
+    public String asString() throws IOException {
+        return HttpRequest.asString(new ByteArrayInputStream(payload), HttpRequest.DEFAULT_CHARSET);
+    }
+}
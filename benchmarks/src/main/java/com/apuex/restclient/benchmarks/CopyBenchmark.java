@@ -0,0 +1,50 @@
+package com.apuex.restclient.benchmarks;
+
+import com.apuex.restclient.HttpRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link HttpRequest#copy(java.io.InputStream, java.io.OutputStream, boolean, byte[])}
+ * with different buffer sizes.
+ *
+ * @author wangxy
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CopyBenchmark {
+
+    @Param({"1024", "1048576"})
+    public int size;
+
+    @Param({"1024", "8192", "65536"})
+    public int bufferSize;
+
+    private byte[] payload;
+    private byte[] buffer;
+
+    @Setup
+    public void setup() {
+        payload = Payloads.json(size);
+        buffer = new byte[bufferSize];
+    }
+
+    @Benchmark
+    public long copyDiscard() throws IOException {
+        return HttpRequest.copy(new ByteArrayInputStream(payload), null, false, buffer);
+    }
+
+    @Benchmark
+    public long copyToByteArray() throws IOException {
+        return HttpRequest.copy(new ByteArrayInputStream(payload),
+                new ByteArrayOutputStream(), true, buffer);
+    }
+}
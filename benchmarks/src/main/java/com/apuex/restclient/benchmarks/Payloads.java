@@ -0,0 +1,30 @@
+package com.apuex.restclient.benchmarks;
+
+import java.nio.charset.Charset;
+
+/**
+ * Fixed, deterministic payloads for the benchmarks.
+ *
+ * @author wangxy
+ */
+final class Payloads {
+
+    private static final byte[] RECORD = ("{\"id\":12345,\"name\":\"rest-client\","
+            + "\"tags\":[\"alpha\",\"beta\",\"gamma\"],\"active\":true}\n")
+            .getBytes(Charset.forName("US-ASCII"));
+
+    private Payloads() {
+    }
+
+    /**
+     * @param size Size in bytes.
+     * @return ASCII JSON lines filling exactly the given size.
+     */
+    static byte[] json(int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i += RECORD.length) {
+            System.arraycopy(RECORD, 0, payload, i, Math.min(RECORD.length, size - i));
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,105 @@
+package com.apuex.restclient.benchmarks;
+
+import com.apuex.restclient.RequestMonitor;
+import com.apuex.restclient.RequestSpec;
+import com.apuex.restclient.Response;
+import com.apuex.restclient.RestClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures full request/response round-trips through
+ * {@link RestClient#send(RequestSpec, RequestMonitor)} and
+ * {@link RestClient#open(RequestSpec, RequestMonitor)} against an
+ * in-process {@link HttpServer} serving fixed payloads.
+ *
+ * @author wangxy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SendBenchmark {
+
+    private static final int WRITE_SIZE = 65536;
+
+    @Param({"1024", "65536", "1048576", "104857600"})
+    public int size;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private RestClient client;
+    private RequestSpec request;
+
+    @Setup
+    public void setup() throws IOException {
+        final byte[] payload = Payloads.json(size);
+        // without it, the server answers small responses only after the
+        // client's delayed ACK.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+                exchange.sendResponseHeaders(200, payload.length);
+                OutputStream out = exchange.getResponseBody();
+                // the server drops bodies written in one huge write.
+                for (int i = 0; i < payload.length; i += WRITE_SIZE) {
+                    out.write(payload, i, Math.min(WRITE_SIZE, payload.length - i));
+                }
+                out.close();
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        client = new RestClient();
+        request = new RequestSpec("http://127.0.0.1:" + server.getAddress().getPort() + "/payload",
+                "GET", "application/json", "application/json",
+                Collections.<String, String>emptyMap(), "");
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public String send() throws Exception {
+        return client.send(request, new RequestMonitor());
+    }
+
+    /**
+     * Streams the body through {@link Response#forEachChunk}, i.e. in
+     * constant memory, instead of building a String.
+     */
+    @Benchmark
+    public long open() throws Exception {
+        Response response = client.open(request, new RequestMonitor());
+        final long[] checksum = new long[1];
+        response.forEachChunk(new Response.ChunkHandler() {
+            public void chunk(ByteBuffer chunk) {
+                while (chunk.hasRemaining()) {
+                    checksum[0] += chunk.get();
+                }
+            }
+        });
+        return checksum[0];
+    }
+}
@@ -0,0 +1,76 @@
+package com.apuex.restclient;
+
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends requests without blocking the caller. Engines are selected by name
+ * at runtime with {@link #create(String, RestClient)}:
+ * <ul>
+ * <li>{@link #BLOCKING} runs {@link RestClient} on a pool of threads, one
+ * per request in flight. It is always available.</li>
+ * <li>{@link #HTTP2} is built on java.net.http.HttpClient, which
+ * multiplexes requests to the same host over a single HTTP/2 connection
+ * and needs only a handful of threads for thousands of requests in
+ * flight. It is only compiled by the jdk11 build profile and needs a Java
+ * 11 runtime.</li>
+ * </ul>
+ *
+ * @author wangxy
+ */
+public interface AsyncEngine {
+
+    String BLOCKING = "blocking";
+    String HTTP2 = "http2";
+
+    /**
+     * Sends the request, reporting progress to the given monitor, like
+     * {@link RestClient#send(RequestSpec, OutputStream, RequestMonitor)}.
+     *
+     * @param request The request to send.
+     * @param body    The stream to copy the decoded response body to, or
+     *                null to discard it. It is flushed, but not closed.
+     * @param monitor The monitor to report progress to.
+     * @return A future of the response headers, which completes
+     * exceptionally if the request fails.
+     */
+    CompletableFuture<String> send(RequestSpec request, OutputStream body, RequestMonitor monitor);
+
+    /**
+     * Releases the threads of this engine. Requests in flight are aborted.
+     */
+    void close();
+
+    /**
+     * @param name     {@link #BLOCKING} or {@link #HTTP2}.
+     * @param settings The client, whose timeouts, redirect and decompression
+     *                 settings and metrics the engine adopts.
+     * @param threads  The number of threads of a {@link #BLOCKING} engine,
+     *                 i.e. the number of requests it sends concurrently.
+     * @return A new engine.
+     * @throws IllegalArgumentException The engine is unknown or not
+     *                                  available in this build or runtime.
+     */
+    static AsyncEngine create(String name, RestClient settings, int threads) {
+        if (BLOCKING.equals(name)) {
+            return new BlockingEngine(settings, threads);
+        }
+        if (!HTTP2.equals(name)) {
+            throw new IllegalArgumentException("Unknown engine " + name);
+        }
+        try {
+            return (AsyncEngine) Class.forName("com.apuex.restclient.HttpClientEngine")
+                    .getConstructor(RestClient.class).newInstance(settings);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("The " + HTTP2 + " engine is not part of this build,"
+                    + " build with -Pjdk11.", e);
+        } catch (UnsupportedClassVersionError e) {
+            throw new IllegalArgumentException("The " + HTTP2 + " engine needs Java 11 or later.", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException(e.getCause().toString(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,670 @@
+package com.apuex.restclient;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs a collection of requests without a display, e.g. to smoke test
+ * endpoints from CI. The collection is read as JSON lines, one request per
+ * line:
+ * <pre>
+ *   {"id": "login", "method": "POST", "url": "http://host/login", "body": "..."}
+ *   {"id": "me", "url": "http://host/me", "headers": {"Accept": "*&#47;*"}, "dependsOn": ["login"]}
+ * </pre>
+ * Members other than url are optional: method defaults to GET, contentType
+ * and acceptContentType to application/json. attachments lists files to
+ * send, like those attached in {@link MainFrame}.
+ * <p>
+ * Requests are sent through an {@link AsyncEngine}, with a bounded number
+ * of requests in flight. The {@link AsyncEngine#BLOCKING} engine uses a
+ * thread per request in flight, the {@link AsyncEngine#HTTP2} engine a
+ * handful of threads for any number of them. A request, which depends on
+ * others, is only sent once they have succeeded, and is skipped if one of
+ * them failed. Results are written as JSON lines in the order in which
+ * requests complete.
+ * <p>
+ * Given a data file, each request of the collection is sent once per row
+ * instead, with the {@code ${column}} placeholders in its url, headers and
+ * body replaced by the values of that row, see {@link #run(List, String)}.
+ *
+ * @author wangxy
+ */
+public class BatchRunner {
+
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    private static final RequestTiming.Phase[] PHASES = RequestTiming.Phase.values();
+
+    private final AsyncEngine engine;
+    private final int concurrency;
+    private final boolean includeBody;
+    private final Writer out;
+    private final AtomicInteger failed = new AtomicInteger();
+    private final Queue<Item> queue = new ArrayDeque<Item>();
+    private int inFlight;
+    private volatile CountDownLatch finished;
+    /**
+     * Set while the current thread runs {@link #dispatch()}.
+     */
+    private final ThreadLocal<Boolean> dispatching = new ThreadLocal<Boolean>();
+
+    /**
+     * @param engine      The engine to send with.
+     * @param concurrency The maximum number of requests in flight.
+     * @param includeBody Whether to write response bodies to the results.
+     * @param out         The writer to write results to.
+     */
+    public BatchRunner(AsyncEngine engine, int concurrency, boolean includeBody, Writer out) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency < 1");
+        }
+        this.engine = engine;
+        this.concurrency = concurrency;
+        this.includeBody = includeBody;
+        this.out = out;
+    }
+
+    /**
+     * Reads a collection of requests.
+     *
+     * @param in The collection as JSON lines. Blank lines are skipped.
+     * @return The requests in the order given.
+     * @throws IllegalArgumentException A line is not a valid request, ids
+     *                                  are duplicated or dependencies are
+     *                                  unknown or cyclic.
+     */
+    public static List<Item> read(BufferedReader in) throws IOException {
+        List<Item> items = new ArrayList<Item>();
+        Map<String, Item> byId = new HashMap<String, Item>();
+        int lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            Item item;
+            try {
+                item = Item.of(Json.parse(line), lineNumber);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+            if (byId.put(item.id, item) != null) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": duplicate id " + item.id);
+            }
+            items.add(item);
+        }
+        for (Item item : items) {
+            for (String id : item.dependsOn) {
+                Item dependency = byId.get(id);
+                if (dependency == null) {
+                    throw new IllegalArgumentException("Line " + item.line + ": unknown dependency " + id);
+                }
+                dependency.dependents.add(item);
+            }
+        }
+        checkAcyclic(items);
+        return items;
+    }
+
+    private static void checkAcyclic(List<Item> items) {
+        Map<Item, Integer> pending = new HashMap<Item, Integer>();
+        Deque<Item> ready = new ArrayDeque<Item>();
+        for (Item item : items) {
+            pending.put(item, item.dependsOn.size());
+            if (item.dependsOn.isEmpty()) {
+                ready.add(item);
+            }
+        }
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            Item item = ready.poll();
+            visited++;
+            for (Item dependent : item.dependents) {
+                int left = pending.get(dependent) - 1;
+                pending.put(dependent, left);
+                if (left == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (visited != items.size()) {
+            throw new IllegalArgumentException("Dependencies are cyclic.");
+        }
+    }
+
+    /**
+     * Sends the given requests and writes a result line for each of them,
+     * returning once all have completed or been skipped.
+     *
+     * @return Whether all requests succeeded.
+     */
+    public boolean run(List<Item> items) throws InterruptedException {
+        finished = new CountDownLatch(items.size());
+        for (Item item : items) {
+            item.reset();
+        }
+        for (Item item : items) {
+            if (item.dependsOn.isEmpty()) {
+                ready(item);
+            }
+        }
+        finished.await();
+        return failed.get() == 0;
+    }
+
+    /**
+     * Queues an item, whose dependencies have succeeded, and sends it as
+     * soon as fewer than the maximum number of requests are in flight.
+     */
+    private void ready(Item item) {
+        synchronized (queue) {
+            queue.add(item);
+        }
+        dispatch();
+    }
+
+    /**
+     * Sends queued items while fewer than the maximum number of requests
+     * are in flight. A request may complete within {@link #send(Item)},
+     * e.g. if its url is malformed, and call back here; the loop on the
+     * stack then goes on instead, so that a run of such requests does not
+     * nest calls until the stack overflows.
+     */
+    private void dispatch() {
+        if (dispatching.get() != null) {
+            return;
+        }
+        dispatching.set(Boolean.TRUE);
+        try {
+            for (; ; ) {
+                Item item;
+                synchronized (queue) {
+                    if (inFlight >= concurrency || queue.isEmpty()) {
+                        return;
+                    }
+                    item = queue.poll();
+                    inFlight++;
+                }
+                send(item);
+            }
+        } finally {
+            dispatching.remove();
+        }
+    }
+
+    private void completed(Item item, boolean ok) {
+        finished.countDown();
+        for (Item dependent : item.dependents) {
+            if (!ok) {
+                skip(dependent, item.id);
+            } else if (dependent.dependencySucceeded()) {
+                ready(dependent);
+            }
+        }
+        synchronized (queue) {
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    private void skip(Item item, String cause) {
+        if (!item.markSkipped()) {
+            return;
+        }
+        failed.incrementAndGet();
+        Map<String, Object> result = newResult(item);
+        result.put("ok", Boolean.FALSE);
+        result.put("skipped", Boolean.TRUE);
+        result.put("error", "Dependency " + cause + " failed.");
+        write(result);
+        finished.countDown();
+        for (Item dependent : item.dependents) {
+            skip(dependent, item.id);
+        }
+    }
+
+    /**
+     * Sends each of the given requests once per row of a data file, with
+     * the {@code ${name}} placeholders of their url, headers and body
+     * replaced by the values of the column of that name, and writes a
+     * result line for each of them, returning once all have completed.
+     * The templates are compiled once. Rows are read as requests are sent,
+     * and reading pauses while the maximum number of requests are in
+     * flight, so that memory stays flat however large the file is.
+     *
+     * @param items The requests, which must not depend on each other.
+     * @param data  The data file, as read by {@link DataReader}.
+     * @return Whether all requests succeeded.
+     * @throws IllegalArgumentException A request has dependencies or an
+     *                                  invalid placeholder, or the data file
+     *                                  lacks a column.
+     */
+    public boolean run(List<Item> items, String data) throws IOException, InterruptedException {
+        List<String> variables = new ArrayList<String>();
+        List<ItemTemplate> templates = new ArrayList<ItemTemplate>();
+        for (Item item : items) {
+            if (!item.dependsOn.isEmpty()) {
+                throw new IllegalArgumentException("Line " + item.line + ": dependsOn is not supported with data.");
+            }
+            try {
+                templates.add(new ItemTemplate(item, variables));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + item.line + ": " + e.getMessage(), e);
+            }
+        }
+        Semaphore window = new Semaphore(concurrency);
+        DataReader rows = DataReader.open(data, variables);
+        try {
+            for (; ; ) {
+                String[] values;
+                try {
+                    values = rows.next();
+                } catch (IllegalArgumentException e) {
+                    for (ItemTemplate template : templates) {
+                        fail(template.item, rows.getRow(), e);
+                    }
+                    continue;
+                }
+                if (values == null) {
+                    break;
+                }
+                for (ItemTemplate template : templates) {
+                    RequestSpec request;
+                    try {
+                        request = template.expand(values);
+                    } catch (IllegalArgumentException e) {
+                        fail(template.item, rows.getRow(), e);
+                        continue;
+                    }
+                    // blocks while the window is full, which holds back reading.
+                    window.acquire();
+                    Map<String, Object> result = newResult(template.item.id, rows.getRow(), request);
+                    send(request, result, window);
+                }
+            }
+        } finally {
+            rows.close();
+            // wait for the requests in flight.
+            window.acquire(concurrency);
+            window.release(concurrency);
+        }
+        return failed.get() == 0;
+    }
+
+    private void send(RequestSpec request, final Map<String, Object> result, final Semaphore window) {
+        final RequestMonitor monitor = new RequestMonitor();
+        final ByteArrayOutputStream body = includeBody ? new ByteArrayOutputStream() : null;
+        engine.send(request, body, monitor).whenComplete(new BiConsumer<String, Throwable>() {
+            public void accept(String headerSection, Throwable failure) {
+                try {
+                    report(result, monitor, body, failure);
+                } finally {
+                    window.release();
+                }
+            }
+        });
+    }
+
+    private void fail(Item item, long row, Exception e) {
+        failed.incrementAndGet();
+        Map<String, Object> result = newResult(item.id, row, item.request);
+        result.put("ok", Boolean.FALSE);
+        result.put("error", e.getMessage());
+        write(result);
+    }
+
+    private void send(final Item item) {
+        final RequestMonitor monitor = new RequestMonitor();
+        final ByteArrayOutputStream body = includeBody ? new ByteArrayOutputStream() : null;
+        engine.send(item.request, body, monitor).whenComplete(new BiConsumer<String, Throwable>() {
+            public void accept(String headerSection, Throwable failure) {
+                boolean ok = false;
+                try {
+                    ok = report(newResult(item), monitor, body, failure);
+                } finally {
+                    completed(item, ok);
+                }
+            }
+        });
+    }
+
+    private boolean report(Map<String, Object> result, RequestMonitor monitor, ByteArrayOutputStream body,
+                           Throwable failure) {
+        boolean ok;
+        if (failure == null) {
+            ok = monitor.getResponseCode() < 400;
+            result.put("status", (long) monitor.getResponseCode());
+        } else {
+            ok = false;
+            Throwable cause = (failure instanceof CompletionException && failure.getCause() != null)
+                    ? failure.getCause() : failure;
+            result.put("error", cause.toString());
+        }
+        if (!ok) {
+            failed.incrementAndGet();
+        }
+        result.put("ok", ok);
+        result.put("millis", monitor.getTiming().getTotalNanos() / 1e6);
+        result.put("attempts", (long) monitor.getAttempts());
+        result.put("bytesSent", monitor.getBytesSent());
+        result.put("bytesReceived", monitor.getBytesReceived());
+        Map<String, Object> timing = new LinkedHashMap<String, Object>();
+        for (RequestTiming.Phase phase : PHASES) {
+            timing.put(phase.name().toLowerCase(Locale.ROOT), monitor.getTiming().getNanos(phase) / 1e6);
+        }
+        result.put("timing", timing);
+        if (body != null && failure == null) {
+            result.put("body", new String(body.toByteArray(),
+                    HttpRequest.toCharset(HttpRequest.getCharset(monitor.getContentType()))));
+        }
+        write(result);
+        return ok;
+    }
+
+    private static Map<String, Object> newResult(Item item) {
+        return newResult(item.id, -1, item.request);
+    }
+
+    /**
+     * @param row The number of the data row, or -1 if there is none.
+     */
+    private static Map<String, Object> newResult(String id, long row, RequestSpec request) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("id", id);
+        if (row >= 0) {
+            result.put("row", row);
+        }
+        result.put("method", request.getMethod());
+        result.put("url", request.getUrl());
+        return result;
+    }
+
+    private void write(Map<String, Object> result) {
+        synchronized (out) {
+            try {
+                Json.write(out, result);
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                // the reader went away, nothing left to report to.
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * A request of a collection.
+     */
+    public static class Item {
+
+        private final String id;
+        private final int line;
+        private final RequestSpec request;
+        private final List<String> dependsOn;
+        private final List<Item> dependents = new ArrayList<Item>();
+        private int pending;
+        private boolean skipped;
+
+        Item(String id, int line, RequestSpec request, List<String> dependsOn) {
+            this.id = id;
+            this.line = line;
+            this.request = request;
+            this.dependsOn = dependsOn;
+        }
+
+        synchronized void reset() {
+            pending = dependsOn.size();
+            skipped = false;
+        }
+
+        /**
+         * @return Whether this was the last dependency and the item may be
+         * sent.
+         */
+        synchronized boolean dependencySucceeded() {
+            return --pending == 0 && !skipped;
+        }
+
+        /**
+         * @return Whether the item had been neither skipped nor sent yet.
+         */
+        synchronized boolean markSkipped() {
+            if (skipped || pending == 0) {
+                return false;
+            }
+            skipped = true;
+            return true;
+        }
+
+        static Item of(Object json, int line) {
+            if (!(json instanceof Map)) {
+                throw new IllegalArgumentException("Expected an object.");
+            }
+            Map<?, ?> map = (Map<?, ?>) json;
+            String url = string(map, "url", null);
+            if (url == null) {
+                throw new IllegalArgumentException("url is missing.");
+            }
+            Map<String, String> headers = new LinkedHashMap<String, String>();
+            Object h = map.get("headers");
+            if (h instanceof Map) {
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) h).entrySet()) {
+                    headers.put(String.valueOf(e.getKey()), String.valueOf(e.getValue()));
+                }
+            } else if (h instanceof String) {
+                headers.putAll(RequestSpec.parseHeaders((String) h));
+            }
+            List<File> attachments = new ArrayList<File>();
+            for (String path : strings(map.get("attachments"))) {
+                attachments.add(new File(path));
+            }
+            RequestSpec request = new RequestSpec(url,
+                    string(map, "method", "GET").toUpperCase(Locale.ROOT),
+                    string(map, "contentType", "application/json"),
+                    string(map, "acceptContentType", "application/json"),
+                    headers,
+                    string(map, "body", ""),
+                    attachments);
+            return new Item(string(map, "id", Integer.toString(line)), line, request,
+                    strings(map.get("dependsOn")));
+        }
+
+        private static String string(Map<?, ?> map, String key, String defaultValue) {
+            Object value = map.get(key);
+            return (value == null) ? defaultValue : value.toString();
+        }
+
+        private static List<String> strings(Object value) {
+            if (value == null) {
+                return Collections.emptyList();
+            }
+            if (!(value instanceof List)) {
+                return Collections.singletonList(value.toString());
+            }
+            List<String> result = new ArrayList<String>();
+            for (Object element : (List<?>) value) {
+                result.add(String.valueOf(element));
+            }
+            return result;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public RequestSpec getRequest() {
+            return request;
+        }
+
+        public List<String> getDependsOn() {
+            return dependsOn;
+        }
+    }
+
+    /**
+     * A request of a collection, whose url, headers and body are
+     * templates.
+     */
+    private static class ItemTemplate {
+
+        private final Item item;
+        private final Template url;
+        private final Template[] headerNames;
+        private final Template[] headerValues;
+        private final Template body;
+
+        ItemTemplate(Item item, List<String> variables) {
+            this.item = item;
+            RequestSpec request = item.request;
+            this.url = Template.compile(request.getUrl(), variables);
+            this.headerNames = new Template[request.getHeaders().size()];
+            this.headerValues = new Template[headerNames.length];
+            int i = 0;
+            for (Map.Entry<String, String> h : request.getHeaders().entrySet()) {
+                headerNames[i] = Template.compile(h.getKey(), variables);
+                headerValues[i++] = Template.compile(h.getValue(), variables);
+            }
+            this.body = Template.compile(request.getBody(), variables);
+        }
+
+        RequestSpec expand(String[] values) {
+            Map<String, String> headers = new LinkedHashMap<String, String>();
+            for (int i = 0; i < headerNames.length; i++) {
+                headers.put(headerNames[i].expand(values), headerValues[i].expand(values));
+            }
+            RequestSpec request = item.request;
+            return new RequestSpec(url.expand(values), request.getMethod(), request.getContentType(),
+                    request.getAcceptContentType(), headers, body.expand(values), request.getAttachments());
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -cp rest-client.jar " + BatchRunner.class.getName()
+                + " [options] collection.jsonl|-");
+        System.err.println("  -c, --concurrency N  requests in flight, default " + DEFAULT_CONCURRENCY);
+        System.err.println("  -o, --output FILE    write results to FILE instead of stdout");
+        System.err.println("  -t, --timeout MILLIS connect and read timeout");
+        System.err.println("  -e, --engine NAME    " + AsyncEngine.BLOCKING + " (default) or " + AsyncEngine.HTTP2);
+        System.err.println("  -b, --body           include response bodies in the results");
+        System.err.println("  -d, --data FILE      send each request once per row of FILE, .csv with a header");
+        System.err.println("                       row or .jsonl, replacing ${column} in url, headers and body");
+        System.err.println("  -r, --retries N      retry idempotent requests up to N times ("
+                + AsyncEngine.BLOCKING + " engine)");
+        System.err.println("  -h, --hedge          send a copy of slow idempotent requests ("
+                + AsyncEngine.BLOCKING + " engine)");
+        System.exit(2);
+    }
+
+    /**
+     * Runs a collection and exits with 0 if all requests succeeded, 1 if
+     * any failed, and 2 if the arguments or the collection are invalid.
+     */
+    public static void main(String[] args) throws Exception {
+        int concurrency = DEFAULT_CONCURRENCY;
+        String output = null;
+        int timeout = -1;
+        boolean includeBody = false;
+        int retries = 0;
+        boolean hedge = false;
+        String engineName = AsyncEngine.BLOCKING;
+        String collection = null;
+        String data = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("-c".equals(arg) || "--concurrency".equals(arg)) {
+                    concurrency = Integer.parseInt(args[++i]);
+                } else if ("-o".equals(arg) || "--output".equals(arg)) {
+                    output = args[++i];
+                } else if ("-t".equals(arg) || "--timeout".equals(arg)) {
+                    timeout = Integer.parseInt(args[++i]);
+                } else if ("-e".equals(arg) || "--engine".equals(arg)) {
+                    engineName = args[++i];
+                } else if ("-b".equals(arg) || "--body".equals(arg)) {
+                    includeBody = true;
+                } else if ("-r".equals(arg) || "--retries".equals(arg)) {
+                    retries = Integer.parseInt(args[++i]);
+                } else if ("-h".equals(arg) || "--hedge".equals(arg)) {
+                    hedge = true;
+                } else if ("-d".equals(arg) || "--data".equals(arg)) {
+                    data = args[++i];
+                } else if (collection == null && (!arg.startsWith("-") || "-".equals(arg))) {
+                    collection = arg;
+                } else {
+                    usage();
+                }
+            }
+        } catch (RuntimeException e) {
+            // missing or invalid option value.
+            usage();
+        }
+        if (collection == null || concurrency < 1 || retries < 0
+                || (data != null && "-".equals(data) && "-".equals(collection))) {
+            usage();
+        }
+
+        List<Item> items;
+        BufferedReader in = new BufferedReader(new InputStreamReader("-".equals(collection)
+                ? System.in : new FileInputStream(collection), HttpRequest.DEFAULT_CHARSET));
+        try {
+            items = read(in);
+        } catch (IllegalArgumentException e) {
+            System.err.println(collection + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        } finally {
+            in.close();
+        }
+
+        RestClient.configureKeepAlive(concurrency);
+        RestClient client = new RestClient(concurrency);
+        if (timeout >= 0) {
+            client.setConnectTimeout(timeout);
+            client.setReadTimeout(timeout);
+        }
+        if (retries > 0 || hedge) {
+            RetryPolicy policy = new RetryPolicy();
+            policy.setMaxAttempts(retries + 1);
+            policy.setHedge(hedge);
+            client.setRetryPolicy(policy);
+        }
+        AsyncEngine engine;
+        try {
+            engine = AsyncEngine.create(engineName, client, concurrency);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(output == null
+                ? System.out : new FileOutputStream(output), HttpRequest.DEFAULT_CHARSET));
+        boolean ok;
+        try {
+            BatchRunner runner = new BatchRunner(engine, concurrency, includeBody, out);
+            ok = (data == null) ? runner.run(items) : runner.run(items, data);
+        } catch (IllegalArgumentException e) {
+            System.err.println(data + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        } finally {
+            engine.close();
+            out.close();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,58 @@
+package com.apuex.restclient;
+
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link AsyncEngine#BLOCKING} engine: runs the blocking
+ * {@link RestClient} on a fixed pool of threads, so requests beyond the
+ * size of the pool wait in its queue.
+ *
+ * @author wangxy
+ */
+class BlockingEngine implements AsyncEngine {
+
+    private final RestClient client;
+    private final ExecutorService executor;
+
+    BlockingEngine(RestClient client, int threads) {
+        this.client = client;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "blocking-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public CompletableFuture<String> send(final RequestSpec request, final OutputStream body,
+                                         final RequestMonitor monitor) {
+        final CompletableFuture<String> result = new CompletableFuture<String>();
+        executor.execute(new Runnable() {
+            public void run() {
+                if (result.isDone()) {
+                    // cancelled while queued.
+                    return;
+                }
+                try {
+                    result.complete(client.send(request, body, monitor));
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            }
+        });
+        monitor.attach(result);
+        return result;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+}
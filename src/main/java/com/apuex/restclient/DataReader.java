@@ -0,0 +1,218 @@
+package com.apuex.restclient;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Streams the rows of a data file, as the values of a given list of
+ * variables, without keeping more than the current row in memory. Files
+ * named *.jsonl, *.ndjson or *.json are read as JSON lines, one object per
+ * row, any other file as CSV (RFC 4180) with a header row naming the
+ * columns.
+ *
+ * @author wangxy
+ */
+public abstract class DataReader implements Closeable {
+
+    protected final List<String> variables;
+    protected final BufferedReader in;
+    private long row;
+
+    protected DataReader(BufferedReader in, List<String> variables) {
+        this.in = in;
+        this.variables = variables;
+    }
+
+    /**
+     * @param file      The data file, or "-" for the standard input, which
+     *                  is read as CSV.
+     * @param variables The names of the variables to read the values of.
+     * @return A reader of the file.
+     * @throws IllegalArgumentException The CSV header lacks a variable.
+     */
+    public static DataReader open(String file, List<String> variables) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader("-".equals(file)
+                ? System.in : new FileInputStream(file), HttpRequest.DEFAULT_CHARSET));
+        String name = file.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+            return new JsonLines(in, variables);
+        }
+        try {
+            return new Csv(in, variables);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        } catch (RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The values of the variables in the next row, by index, null
+     * for a variable the row has no value for, or null at the end of the
+     * file.
+     * @throws IllegalArgumentException The row is malformed. It is skipped,
+     *                                  so that the next row may be read.
+     */
+    public final String[] next() throws IOException {
+        row++;
+        return read();
+    }
+
+    /**
+     * @return The number of the row last read, starting at 1.
+     */
+    public long getRow() {
+        return row;
+    }
+
+    protected abstract String[] read() throws IOException;
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * One JSON object per line. Strings are taken as is, other values as
+     * JSON.
+     */
+    private static class JsonLines extends DataReader {
+
+        JsonLines(BufferedReader in, List<String> variables) {
+            super(in, variables);
+        }
+
+        @Override
+        protected String[] read() throws IOException {
+            String line;
+            do {
+                line = in.readLine();
+                if (line == null) {
+                    return null;
+                }
+            } while (line.trim().isEmpty());
+            Object json = Json.parse(line);
+            if (!(json instanceof Map)) {
+                throw new IllegalArgumentException("Expected an object.");
+            }
+            Map<?, ?> map = (Map<?, ?>) json;
+            String[] values = new String[variables.size()];
+            for (int i = 0; i < values.length; i++) {
+                String name = variables.get(i);
+                if (map.containsKey(name)) {
+                    Object value = map.get(name);
+                    values[i] = (value instanceof String) ? (String) value : Json.toString(value);
+                }
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Comma separated values, which may be quoted with double quotes, so
+     * that they may hold commas, line breaks and doubled quotes.
+     */
+    private static class Csv extends DataReader {
+
+        private final int[] columns;
+        private final List<String> fields = new ArrayList<String>();
+        private final StringBuilder field = new StringBuilder();
+
+        Csv(BufferedReader in, List<String> variables) throws IOException {
+            super(in, variables);
+            in.mark(1);
+            if (in.read() != '\uFEFF') {
+                // no byte order mark.
+                in.reset();
+            }
+            List<String> header = readRecord();
+            if (header == null) {
+                throw new IllegalArgumentException("The header row is missing.");
+            }
+            header = new ArrayList<String>(header);
+            columns = new int[variables.size()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = header.indexOf(variables.get(i));
+                if (columns[i] == -1) {
+                    throw new IllegalArgumentException("No column " + variables.get(i) + " in " + header);
+                }
+            }
+        }
+
+        @Override
+        protected String[] read() throws IOException {
+            List<String> record = readRecord();
+            if (record == null) {
+                return null;
+            }
+            String[] values = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = (columns[i] < record.size()) ? record.get(columns[i]) : null;
+            }
+            return values;
+        }
+
+        /**
+         * @return The fields of the next record, which are reused by the
+         * next call, or null at the end of the file. Empty lines are
+         * skipped.
+         */
+        private List<String> readRecord() throws IOException {
+            fields.clear();
+            field.setLength(0);
+            boolean quoted = false;
+            boolean empty = true;
+            for (; ; ) {
+                int c = in.read();
+                if (c == -1) {
+                    if (quoted) {
+                        throw new EOFException("Unclosed quote at the end of the file.");
+                    }
+                    if (empty) {
+                        return null;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                }
+                if (quoted) {
+                    if (c != '"') {
+                        field.append((char) c);
+                    } else {
+                        in.mark(1);
+                        if (in.read() == '"') {
+                            field.append('"');
+                        } else {
+                            in.reset();
+                            quoted = false;
+                        }
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                    empty = false;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    empty = false;
+                } else if (c == '\r' || c == '\n') {
+                    if (c == '\r') {
+                        in.mark(1);
+                        if (in.read() != '\n') {
+                            in.reset();
+                        }
+                    }
+                    if (!empty) {
+                        fields.add(field.toString());
+                        return fields;
+                    }
+                } else {
+                    field.append((char) c);
+                    empty = false;
+                }
+            }
+        }
+    }
+}
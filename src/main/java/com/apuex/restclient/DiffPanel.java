@@ -0,0 +1,308 @@
+package com.apuex.restclient;
+
+import javax.swing.*;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Shows the differences between two response bodies, which are compared
+ * in the background straight from their spool files. JSON bodies are
+ * compared structurally by a {@link JsonDiff}, anything else, or JSON that
+ * does not parse, line by line by a {@link LineDiff}, showing the changed
+ * lines with {@link #CONTEXT} lines around them.
+ * <p>
+ * Differences are shown as they are found; after {@link #OUTPUT_LIMIT}
+ * lines they are only counted, so that comparing very different bodies
+ * does not fill the heap with text.
+ *
+ * @author wangxy
+ */
+public class DiffPanel extends JPanel {
+
+    private static final int CONTEXT = 3;
+
+    private static final int OUTPUT_LIMIT = 5000;
+
+    /**
+     * Values are shown up to this number of characters.
+     */
+    private static final int VALUE_LIMIT = 200;
+
+    private static final SimpleAttributeSet HEADER = style(new Color(0x8C8C8C));
+    private static final SimpleAttributeSet REMOVED = style(new Color(0xC00000));
+    private static final SimpleAttributeSet ADDED = style(new Color(0x067D17));
+    private static final SimpleAttributeSet CONTEXT_LINE = new SimpleAttributeSet();
+
+    public DiffPanel(ResourceBundle bundle) {
+        this.bundle = bundle;
+        initComponents();
+    }
+
+    private static SimpleAttributeSet style(Color color) {
+        SimpleAttributeSet attributes = new SimpleAttributeSet();
+        StyleConstants.setForeground(attributes, color);
+        return attributes;
+    }
+
+    private void initComponents() {
+        status = new JLabel();
+        stopButton = new JButton();
+        closeButton = new JButton();
+        output = new JTextPane() {
+            @Override
+            public boolean getScrollableTracksViewportWidth() {
+                // do not wrap lines, like a text area.
+                Component parent = getParent();
+                return parent == null || getUI().getPreferredSize(this).width <= parent.getWidth();
+            }
+        };
+
+        setLayout(new BorderLayout());
+
+        JPanel toolBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 2));
+        toolBar.add(status);
+
+        stopButton.setText(bundle.getString("cancel.request"));
+        stopButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                if (worker != null) {
+                    worker.cancel(true);
+                }
+            }
+        });
+        toolBar.add(stopButton);
+
+        closeButton.setText(bundle.getString("close.response"));
+        closeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                close();
+            }
+        });
+        toolBar.add(closeButton);
+        add(toolBar, BorderLayout.NORTH);
+
+        output.setEditable(false);
+        output.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        add(new JScrollPane(output), BorderLayout.CENTER);
+    }
+
+    /**
+     * Compares the bodies on a background thread. The files must not be
+     * deleted before the comparison is done. Must be called on the event
+     * dispatch thread.
+     *
+     * @param typeA The content type of the first body, or null.
+     * @param typeB The content type of the second body, or null.
+     */
+    public void compare(final File fileA, final Charset charsetA, final String typeA,
+                        final File fileB, final Charset charsetB, final String typeB) {
+        final long started = System.nanoTime();
+        status.setText(bundle.getString("diff.running"));
+        worker = new SwingWorker<Boolean, Object[]>() {
+            private int lines;
+            private int differences;
+
+            @Override
+            protected Boolean doInBackground() throws Exception {
+                if (JsonDiff.isJson(typeA) && JsonDiff.isJson(typeB)) {
+                    Object a;
+                    Object b;
+                    try {
+                        a = Json.parse(HttpRequest.asString(new FileInputStream(fileA), charsetA.name()));
+                        b = Json.parse(HttpRequest.asString(new FileInputStream(fileB), charsetB.name()));
+                    } catch (IllegalArgumentException e) {
+                        // not JSON after all.
+                        compareLines();
+                        return false;
+                    }
+                    compareJson(a, b);
+                    return true;
+                }
+                compareLines();
+                return false;
+            }
+
+            private void compareJson(Object first, Object second) throws IOException {
+                new JsonDiff(new JsonDiff.Listener() {
+                    public void difference(JsonDiff.Kind kind, String path, Object a, Object b) {
+                        differences++;
+                        if (lines > OUTPUT_LIMIT) {
+                            return;
+                        }
+                        print(HEADER, path);
+                        if (kind != JsonDiff.Kind.ADDED) {
+                            print(REMOVED, "- " + format(a));
+                        }
+                        if (kind != JsonDiff.Kind.REMOVED) {
+                            print(ADDED, "+ " + format(b));
+                        }
+                    }
+                }).diff(first, second);
+            }
+
+            private void compareLines() throws IOException {
+                MappedTextFile a = new MappedTextFile(fileA);
+                try {
+                    MappedTextFile b = new MappedTextFile(fileB);
+                    try {
+                        final LineDiff diff = new LineDiff(a, b);
+                        final LineDiff.Lines linesA = diff.getA();
+                        final LineDiff.Lines linesB = diff.getB();
+                        // the end of the last change in a, -1 before the first.
+                        final int[] last = {-1};
+                        diff.diff(new Myers.Listener() {
+                            public void changed(int aStart, int aEnd, int bStart, int bEnd) {
+                                differences++;
+                                if (lines > OUTPUT_LIMIT) {
+                                    return;
+                                }
+                                if (last[0] >= 0 && aStart - last[0] <= 2 * CONTEXT) {
+                                    for (int i = last[0]; i < aStart; i++) {
+                                        print(CONTEXT_LINE, "  " + linesA.get(i, charsetA));
+                                    }
+                                } else {
+                                    if (last[0] >= 0) {
+                                        for (int i = last[0]; i < last[0] + CONTEXT; i++) {
+                                            print(CONTEXT_LINE, "  " + linesA.get(i, charsetA));
+                                        }
+                                    }
+                                    int context = Math.min(CONTEXT, Math.min(aStart, bStart));
+                                    print(HEADER, "@@ -" + (aStart - context + 1) + " +" + (bStart - context + 1) + " @@");
+                                    for (int i = aStart - context; i < aStart; i++) {
+                                        print(CONTEXT_LINE, "  " + linesA.get(i, charsetA));
+                                    }
+                                }
+                                for (int i = aStart; i < aEnd && lines <= OUTPUT_LIMIT; i++) {
+                                    print(REMOVED, "- " + linesA.get(i, charsetA));
+                                }
+                                for (int j = bStart; j < bEnd && lines <= OUTPUT_LIMIT; j++) {
+                                    print(ADDED, "+ " + linesB.get(j, charsetB));
+                                }
+                                last[0] = aEnd;
+                            }
+                        });
+                        if (last[0] >= 0 && lines <= OUTPUT_LIMIT) {
+                            for (int i = last[0]; i < Math.min(last[0] + CONTEXT, linesA.size()); i++) {
+                                print(CONTEXT_LINE, "  " + linesA.get(i, charsetA));
+                            }
+                        }
+                    } finally {
+                        b.close();
+                    }
+                } finally {
+                    a.close();
+                }
+            }
+
+            /**
+             * Shows a line, unless {@link #OUTPUT_LIMIT} lines have been
+             * shown already, in which case the differences are only counted
+             * from then on.
+             */
+            private void print(AttributeSet style, String text) {
+                if (lines < OUTPUT_LIMIT) {
+                    publish(new Object[]{style, text + '\n'});
+                } else if (lines == OUTPUT_LIMIT) {
+                    publish(new Object[]{HEADER, "...\n"});
+                }
+                lines++;
+            }
+
+            /**
+             * Appends the lines at once and then colors them, as inserting
+             * lines one by one takes time growing with the document.
+             */
+            @Override
+            protected void process(List<Object[]> chunks) {
+                StyledDocument document = output.getStyledDocument();
+                int offset = document.getLength();
+                StringBuilder sb = new StringBuilder();
+                for (Object[] line : chunks) {
+                    sb.append((String) line[1]);
+                }
+                try {
+                    document.insertString(offset, sb.toString(), null);
+                } catch (BadLocationException e) {
+                    throw new IllegalStateException(e);
+                }
+                int start = offset;
+                int end = offset;
+                AttributeSet style = null;
+                for (Object[] line : chunks) {
+                    if (line[0] != style) {
+                        if (style != null && style != CONTEXT_LINE) {
+                            document.setCharacterAttributes(start, end - start, style, true);
+                        }
+                        style = (AttributeSet) line[0];
+                        start = end;
+                    }
+                    end += ((String) line[1]).length();
+                }
+                if (style != null && style != CONTEXT_LINE) {
+                    document.setCharacterAttributes(start, end - start, style, true);
+                }
+            }
+
+            @Override
+            protected void done() {
+                stopButton.setEnabled(false);
+                long millis = (System.nanoTime() - started) / 1000000;
+                try {
+                    String key = get() ? "diff.status.json" : "diff.status.lines";
+                    status.setText(MessageFormat.format(bundle.getString(key), differences, millis));
+                    if (differences == 0) {
+                        output.setText(bundle.getString("diff.equal"));
+                    }
+                } catch (CancellationException e) {
+                    status.setText(MessageFormat.format(bundle.getString("diff.cancelled"), differences, millis));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    status.setText(e.getCause().toString());
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private static String format(Object value) {
+        String text = Json.toString(value);
+        return (text.length() <= VALUE_LIMIT) ? text : text.substring(0, VALUE_LIMIT) + "...";
+    }
+
+    private void close() {
+        if (worker != null) {
+            worker.cancel(true);
+        }
+        Container parent = getParent();
+        if (parent != null) {
+            parent.remove(this);
+            parent.validate();
+            parent.repaint();
+        }
+    }
+
+    // Variables declaration
+    private JLabel status;
+    private JButton stopButton;
+    private JButton closeButton;
+    private JTextPane output;
+    private ResourceBundle bundle;
+    private SwingWorker<Boolean, Object[]> worker;
+    // End of variables declaration
+}
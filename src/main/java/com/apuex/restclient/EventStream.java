@@ -0,0 +1,363 @@
+package com.apuex.restclient;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows a streaming response, such as Server-Sent Events, newline
+ * delimited JSON or a long poll, and reports every event as soon as it has
+ * arrived rather than once the response has ended.
+ * <p>
+ * A response of type {@value #EVENT_STREAM} is parsed as Server-Sent
+ * Events; any other response is split into lines, each of which is an
+ * event. Once the response ends or fails, the request is sent again after
+ * the retry delay, with the id of the last event received as
+ * Last-Event-ID, until {@link #stop()} is called or the server answers 204
+ * No Content or any other status than 2xx. A request, which accepts
+ * nothing but {@value #EVENT_STREAM}, is not sent again either once a
+ * response of another type has arrived.
+ *
+ * @author wangxy
+ */
+public class EventStream {
+
+    public static final String EVENT_STREAM = "text/event-stream";
+
+    /**
+     * Milliseconds to wait before reconnecting, unless the server sets
+     * another delay with a retry field.
+     */
+    public static final long DEFAULT_RETRY = 3000L;
+
+    /**
+     * Lines and event data longer than this many characters are truncated,
+     * so that a stream without line breaks cannot exhaust the heap.
+     */
+    public static final int MAX_LENGTH = 1 << 20;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * A single event, or line of a stream, which is not an event stream.
+     */
+    public static class Event {
+
+        private final long time;
+        private final String type;
+        private final String id;
+        private final String data;
+
+        Event(String type, String id, String data) {
+            this.time = System.currentTimeMillis();
+            this.type = type;
+            this.id = id;
+            this.data = data;
+        }
+
+        /**
+         * @return The time the event arrived, in milliseconds since the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return The event type, "message" unless set by the server, or
+         * null if the stream is not an event stream.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return The last event id set by the server, or null.
+         */
+        public String getId() {
+            return id;
+        }
+
+        public String getData() {
+            return data;
+        }
+    }
+
+    /**
+     * Receives the events of the stream, on the thread running it.
+     */
+    public interface Listener {
+
+        /**
+         * Called once the response headers of each connection have arrived.
+         */
+        void connected(Response response);
+
+        void event(Event event);
+
+        /**
+         * @param cause The error, which ended the connection, or null if the
+         *              response ended normally.
+         * @param retry Milliseconds until the next attempt to connect, or -1
+         *              if the stream is over.
+         */
+        void disconnected(Exception cause, long retry);
+    }
+
+    private final RestClient client;
+    private final RequestSpec request;
+    private final Listener listener;
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+    private volatile String lastEventId;
+    private volatile long retry = DEFAULT_RETRY;
+    private volatile RequestMonitor monitor;
+    private volatile boolean stopped;
+
+    // the event being parsed.
+    private boolean eventStream;
+    private String type;
+    private StringBuilder data;
+
+    public EventStream(RestClient client, RequestSpec request, Listener listener) {
+        this.client = client;
+        this.request = request;
+        this.listener = listener;
+    }
+
+    public long getEventCount() {
+        return events.get();
+    }
+
+    /**
+     * @return The number of connections made, including the current one.
+     */
+    public long getConnectionCount() {
+        return connections.get();
+    }
+
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * @return The monitor of the current connection, or null between
+     * connections.
+     */
+    public RequestMonitor getMonitor() {
+        return monitor;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Follows the stream until {@link #stop()} is called, connecting again
+     * whenever a response ends. Meant to be run on a thread of its own.
+     */
+    public void run() {
+        while (!stopped) {
+            RequestMonitor m = new RequestMonitor();
+            monitor = m;
+            Exception failure = null;
+            boolean over = false;
+            try {
+                Response response = client.open(request(), m);
+                try {
+                    connections.incrementAndGet();
+                    listener.connected(response);
+                    int status = response.getStatus();
+                    String contentType = response.getContentType();
+                    if (status == 204) {
+                        over = true;
+                    } else if (status < 200 || status >= 300) {
+                        over = true;
+                        failure = new IOException("Unexpected status: " + response.getStatusLine());
+                    } else if (isEventStream(acceptContentType()) && !isEventStream(contentType)) {
+                        over = true;
+                        failure = new IOException("Unexpected Content-Type: " + contentType);
+                    } else {
+                        read(response);
+                    }
+                } finally {
+                    response.close();
+                }
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                monitor = null;
+            }
+            if (stopped) {
+                break;
+            }
+            if (over) {
+                stopped = true;
+                listener.disconnected(failure, -1);
+                break;
+            }
+            long delay = retry;
+            listener.disconnected(failure, delay);
+            synchronized (this) {
+                long until = System.currentTimeMillis() + delay;
+                for (long left = delay; left > 0 && !stopped; left = until - System.currentTimeMillis()) {
+                    try {
+                        wait(left);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        stopped = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops following the stream, closing the current connection.
+     */
+    public void stop() {
+        stopped = true;
+        RequestMonitor m = monitor;
+        if (m != null) {
+            m.cancel();
+        }
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return The request with the headers of an event stream added.
+     */
+    private RequestSpec request() {
+        Map<String, String> extra = new LinkedHashMap<String, String>();
+        extra.put("Accept", acceptContentType());
+        // keeps an endless body out of the HttpCache, too.
+        extra.put("Cache-Control", "no-cache, no-store");
+        if (lastEventId != null) {
+            extra.put("Last-Event-ID", lastEventId);
+        }
+        return request.withHeaders(extra);
+    }
+
+    /**
+     * @return The Accept header of the request.
+     */
+    private String acceptContentType() {
+        for (Map.Entry<String, String> h : request.getHeaders().entrySet()) {
+            if (h.getKey().equalsIgnoreCase("Accept")) {
+                return h.getValue();
+            }
+        }
+        return request.getAcceptContentType();
+    }
+
+    /**
+     * @param contentType A Content-Type or Accept header, or null.
+     * @return Whether it is {@value #EVENT_STREAM}, and nothing else.
+     */
+    private static boolean isEventStream(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int parameters = contentType.indexOf(';');
+        String type = (parameters == -1) ? contentType : contentType.substring(0, parameters);
+        return type.trim().toLowerCase(Locale.ROOT).equals(EVENT_STREAM);
+    }
+
+    private void read(Response response) throws IOException {
+        eventStream = isEventStream(response.getContentType());
+        type = null;
+        data = null;
+        // event streams are always UTF-8.
+        Charset charset = HttpRequest.toCharset(eventStream ? HttpRequest.DEFAULT_CHARSET : response.getCharset());
+        Reader in = new InputStreamReader(response.getBody(), charset);
+        char[] buffer = new char[BUFFER_SIZE];
+        StringBuilder line = new StringBuilder();
+        boolean afterCR = false;
+        int n;
+        while (!stopped && (n = in.read(buffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                char c = buffer[i];
+                if (c == '\n' && afterCR) {
+                    afterCR = false;
+                } else if (c == '\r' || c == '\n') {
+                    afterCR = (c == '\r');
+                    line(line.toString());
+                    line.setLength(0);
+                } else {
+                    afterCR = false;
+                    if (line.length() < MAX_LENGTH) {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        if (!eventStream && line.length() > 0) {
+            line(line.toString());
+        }
+        // an event stream drops an event, which has not been completed.
+    }
+
+    private void line(String line) {
+        if (!eventStream) {
+            if (!line.isEmpty()) {
+                dispatch(new Event(null, null, line));
+            }
+            return;
+        }
+        if (line.isEmpty()) {
+            if (data != null) {
+                data.setLength(data.length() - 1);
+                dispatch(new Event(type != null ? type : "message", lastEventId, data.toString()));
+            }
+            type = null;
+            data = null;
+            return;
+        }
+        if (line.startsWith(":")) {
+            // a comment, e.g. to keep the connection alive.
+            return;
+        }
+        int colon = line.indexOf(':');
+        String field = (colon == -1) ? line : line.substring(0, colon);
+        String value = (colon == -1) ? "" : line.substring(line.startsWith(" ", colon + 1) ? colon + 2 : colon + 1);
+        if (field.equals("event")) {
+            type = value;
+        } else if (field.equals("data")) {
+            if (data == null) {
+                data = new StringBuilder();
+            }
+            if (data.length() < MAX_LENGTH) {
+                data.append(value);
+            }
+            data.append('\n');
+        } else if (field.equals("id")) {
+            if (value.indexOf('\0') == -1) {
+                lastEventId = value;
+            }
+        } else if (field.equals("retry")) {
+            // anything but ASCII digits is ignored, as the specification says.
+            boolean digits = !value.isEmpty();
+            for (int i = 0; digits && i < value.length(); i++) {
+                digits = value.charAt(i) >= '0' && value.charAt(i) <= '9';
+            }
+            if (digits) {
+                try {
+                    retry = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    // too large.
+                }
+            }
+        }
+    }
+
+    private void dispatch(Event event) {
+        events.incrementAndGet();
+        listener.event(event);
+    }
+}
@@ -0,0 +1,288 @@
+package com.apuex.restclient;
+
+import java.io.*;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An on-disk store of recorded exchanges, which a {@link MockServer}
+ * replays. A {@link RestClient} records the responses it receives into a
+ * store once set with {@link RestClient#setRecorder(ExchangeStore)}.
+ * <p>
+ * The store is a directory holding an index, {@value #INDEX}, with one
+ * JSON line per exchange, and the bodies in files named after the SHA-256
+ * of their content, so that a body received many times is stored once.
+ * Bodies are stored decoded, as the client reads them, and the index is
+ * appended to as exchanges are recorded. The last exchange recorded for a
+ * method and request target (path and query) replaces earlier ones.
+ *
+ * @author wangxy
+ */
+public class ExchangeStore {
+
+    public static final String INDEX = "exchanges.jsonl";
+
+    /**
+     * Headers, which describe how a body was transferred rather than the
+     * body itself, and are therefore not recorded.
+     */
+    private static final String[] TRANSFER_HEADERS = {
+            "Content-Length", "Transfer-Encoding", "Connection", "Keep-Alive"
+    };
+
+    /**
+     * A recorded exchange.
+     */
+    public static class Exchange {
+
+        private final String method;
+        private final String target;
+        private final int status;
+        private final String reason;
+        private final Map<String, List<String>> headers;
+        private final File body;
+        private final long length;
+
+        Exchange(String method, String target, int status, String reason,
+                 Map<String, List<String>> headers, File body, long length) {
+            this.method = method;
+            this.target = target;
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.body = body;
+            this.length = length;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * @return The path and query of the request.
+         */
+        public String getTarget() {
+            return target;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * @return The response headers, without those describing the
+         * transfer, e.g. Content-Length.
+         */
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * @return The file holding the body, or null if there is none.
+         */
+        public File getBody() {
+            return body;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+
+    private final File directory;
+    private final File index;
+    private final Map<String, Exchange> exchanges = new HashMap<String, Exchange>();
+
+    /**
+     * Opens the store in the given directory, creating it if need be, and
+     * reads the exchanges recorded before.
+     *
+     * @throws IOException The index cannot be read or is corrupt.
+     */
+    public ExchangeStore(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        this.directory = directory;
+        this.index = new File(directory, INDEX);
+        if (index.isFile()) {
+            load();
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized int size() {
+        return exchanges.size();
+    }
+
+    /**
+     * @param method The request method.
+     * @param target The request target, i.e. the path and query.
+     * @return The exchange recorded last for the method and target, or null
+     * if there is none.
+     */
+    public synchronized Exchange find(String method, String target) {
+        return exchanges.get(method + " " + target);
+    }
+
+    /**
+     * Records a response, once its body has been read to the end.
+     *
+     * @param request    The request sent.
+     * @param statusLine The status line, e.g. "HTTP/1.1 200 OK".
+     * @param status     The status code.
+     * @param headers    The response headers.
+     * @param decoded    Whether the body has been decoded, so that its
+     *                   Content-Encoding no longer applies.
+     * @param body       The body, or null if there is none.
+     * @return The body to read instead, which copies what is read into the
+     * store.
+     */
+    InputStream record(RequestSpec request, String statusLine, int status, Map<String, List<String>> headers,
+                       boolean decoded, InputStream body) throws IOException {
+        URL url = new URL(request.getUrl().replaceAll(" ", "%20"));
+        String target = url.getFile().isEmpty() ? "/" : url.getFile();
+        String reason = "";
+        if (statusLine != null) {
+            String[] parts = statusLine.split(" ", 3);
+            reason = (parts.length == 3) ? parts[2] : "";
+        }
+        Map<String, List<String>> recorded = Response.newHeaders();
+        recorded.putAll(headers);
+        for (String name : TRANSFER_HEADERS) {
+            recorded.remove(name);
+        }
+        if (decoded) {
+            recorded.remove("Content-Encoding");
+        }
+        Exchange exchange = new Exchange(request.getMethod(), target, status, reason,
+                Collections.unmodifiableMap(recorded), null, 0);
+        if (body == null) {
+            put(exchange);
+            return null;
+        }
+        return new Recorder(exchange, body);
+    }
+
+    private synchronized void put(Exchange exchange) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<String, Object>();
+        line.put("method", exchange.method);
+        line.put("target", exchange.target);
+        line.put("status", (long) exchange.status);
+        line.put("reason", exchange.reason);
+        line.put("headers", exchange.headers);
+        if (exchange.body != null) {
+            line.put("body", exchange.body.getName());
+            line.put("length", exchange.length);
+        }
+        Writer out = new OutputStreamWriter(new FileOutputStream(index, true), HttpRequest.DEFAULT_CHARSET);
+        try {
+            Json.write(out, line);
+            out.write('\n');
+        } finally {
+            out.close();
+        }
+        exchanges.put(exchange.method + " " + exchange.target, exchange);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(index),
+                HttpRequest.DEFAULT_CHARSET));
+        try {
+            int lineNumber = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    Map<String, Object> e = (Map<String, Object>) Json.parse(line);
+                    Map<String, List<String>> headers = Response.newHeaders();
+                    for (Map.Entry<String, Object> h : ((Map<String, Object>) e.get("headers")).entrySet()) {
+                        List<String> values = new ArrayList<String>();
+                        for (Object v : (List<Object>) h.getValue()) {
+                            values.add(String.valueOf(v));
+                        }
+                        headers.put(h.getKey(), Collections.unmodifiableList(values));
+                    }
+                    String body = (String) e.get("body");
+                    Exchange exchange = new Exchange((String) e.get("method"), (String) e.get("target"),
+                            ((Number) e.get("status")).intValue(), (String) e.get("reason"),
+                            Collections.unmodifiableMap(headers),
+                            (body != null) ? new File(directory, body) : null,
+                            (body != null) ? ((Number) e.get("length")).longValue() : 0);
+                    exchanges.put(exchange.method + " " + exchange.target, exchange);
+                } catch (RuntimeException ex) {
+                    // malformed JSON, or a field missing or of the wrong type.
+                    throw new IOException(index + ":" + lineNumber + ": " + ex.getMessage(), ex);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies a body into a temporary file while it is read, and records the
+     * exchange once the end has been reached. A body, which is closed or
+     * skipped before its end, is not recorded.
+     */
+    private class Recorder extends TeeInputStream {
+
+        private final Exchange exchange;
+        private final MessageDigest digest = Digests.sha256();
+        private final File temp;
+        private final OutputStream file;
+        private long length;
+
+        Recorder(Exchange exchange, InputStream body) throws IOException {
+            super(body);
+            this.exchange = exchange;
+            this.temp = File.createTempFile("record", ".tmp", directory);
+            this.file = new BufferedOutputStream(new FileOutputStream(temp));
+        }
+
+        boolean write(byte[] b, int off, int len) throws IOException {
+            file.write(b, off, len);
+            digest.update(b, off, len);
+            length += len;
+            return true;
+        }
+
+        void commit() throws IOException {
+            file.close();
+            File body = new File(directory, Digests.hex(digest.digest()) + ".body");
+            synchronized (ExchangeStore.this) {
+                if (body.isFile()) {
+                    // received before.
+                    temp.delete();
+                } else if (!temp.renameTo(body)) {
+                    temp.delete();
+                    throw new IOException("Cannot store " + body);
+                }
+            }
+            put(new Exchange(exchange.method, exchange.target, exchange.status, exchange.reason,
+                    exchange.headers, body, length));
+        }
+
+        void abort() throws IOException {
+            file.close();
+            temp.delete();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.apuex.restclient;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Pretty-prints text while it is written, so that a response body is
+ * formatted chunk by chunk as it arrives, without building a tree and in
+ * constant memory. Input, which is not well-formed, is passed through as
+ * well as possible rather than rejected.
+ * <p>
+ * The tokens written are reported to a {@link TokenListener} with their
+ * offsets in the formatted output, e.g. for syntax highlighting.
+ *
+ * @author wangxy
+ */
+public abstract class FormattingWriter extends Writer {
+
+    public enum Token {
+        KEY, STRING, NUMBER, LITERAL, TAG, ATTRIBUTE, COMMENT
+    }
+
+    /**
+     * Receives the tokens of the formatted output.
+     */
+    public interface TokenListener {
+
+        /**
+         * @param token The kind of token.
+         * @param start Offset of the first character in the output.
+         * @param end   Offset after the last character in the output.
+         */
+        void token(Token token, long start, long end);
+    }
+
+    protected static final String INDENT = "  ";
+
+    private final Writer out;
+    private final TokenListener listener;
+    private long position;
+    private Token token;
+    private long tokenStart;
+
+    protected FormattingWriter(Writer out, TokenListener listener) {
+        this.out = out;
+        this.listener = listener;
+    }
+
+    /**
+     * @param contentType A Content-Type, e.g. "application/json; charset=UTF-8".
+     * @param out         The writer to write the formatted text to.
+     * @param listener    The listener to report tokens to, or null.
+     * @return A writer formatting JSON or XML, or null if the content type
+     * is neither.
+     */
+    public static FormattingWriter create(String contentType, Writer out, TokenListener listener) {
+        if (contentType == null) {
+            return null;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int parameters = type.indexOf(';');
+        if (parameters != -1) {
+            type = type.substring(0, parameters);
+        }
+        type = type.trim();
+        if (type.equals("application/json") || type.endsWith("+json") || type.equals("text/json")) {
+            return new JsonFormattingWriter(out, listener);
+        }
+        if (type.equals("application/xml") || type.endsWith("+xml") || type.equals("text/xml")) {
+            return new XmlFormattingWriter(out, listener);
+        }
+        return null;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off, end = off + len; i < end; i++) {
+            format(cbuf[i]);
+        }
+    }
+
+    /**
+     * Formats the next input character.
+     */
+    protected abstract void format(char c) throws IOException;
+
+    /**
+     * Writes what is still held back at the end of the input.
+     */
+    protected void finish() throws IOException {
+    }
+
+    /**
+     * Writes a character to the output.
+     */
+    protected final void emit(char c) throws IOException {
+        out.write(c);
+        position++;
+    }
+
+    protected final void emit(String s) throws IOException {
+        out.write(s);
+        position += s.length();
+    }
+
+    protected final void emit(CharSequence s, int start, int end) throws IOException {
+        out.append(s, start, end);
+        position += end - start;
+    }
+
+    protected final void newLine(int depth) throws IOException {
+        emit('\n');
+        for (int i = 0; i < depth; i++) {
+            emit(INDENT);
+        }
+    }
+
+    /**
+     * Starts a token at the current output position, ending the current
+     * one if any.
+     */
+    protected final void begin(Token t) {
+        end();
+        token = t;
+        tokenStart = position;
+    }
+
+    /**
+     * Ends the current token, if any, at the current output position.
+     */
+    protected final void end() {
+        if (token != null) {
+            if (listener != null && position > tokenStart) {
+                listener.token(token, tokenStart, position);
+            }
+            token = null;
+        }
+    }
+
+    protected final boolean inToken() {
+        return token != null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes what is left, ends the current token and closes the
+     * underlying writer.
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        end();
+        out.close();
+    }
+}
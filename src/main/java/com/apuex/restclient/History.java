@@ -0,0 +1,743 @@
+package com.apuex.restclient;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A persistent history of the exchanges sent from {@link MainFrame}.
+ * <p>
+ * Exchanges are appended to a log, {@value #LOG}, as JSON lines holding the
+ * request and the response headers. Request and response bodies are
+ * stored apart, gzipped, in files named after the SHA-256 of their
+ * content, so that a body received many times is stored once. A response
+ * body is stored while it is read, and the exchange is logged once the
+ * body has been read to the end.
+ * <p>
+ * Nothing is read when a history is created. The log is read on the first
+ * search, and from then on only from where the previous search stopped,
+ * into an index in memory: the method, URL, status and time of each
+ * exchange, and inverted lists of the words in its headers and in the
+ * first {@link #INDEX_LIMIT} bytes of its body, if textual. The words of a
+ * body are logged along with the first exchange receiving it as a textual
+ * response body, so that bodies are only read when asked for.
+ *
+ * @author wangxy
+ */
+public class History {
+
+    public static final String LOG = "history.log";
+
+    /**
+     * The number of bytes at the start of a textual body, whose words are
+     * indexed.
+     */
+    public static final int INDEX_LIMIT = 64 << 10;
+
+    private static final String BODIES = "bodies";
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 32;
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final Logger LOGGER = Logger.getLogger(History.class.getName());
+
+    /**
+     * An exchange in the index, which only holds what is listed and
+     * searched for. Its request and response are read from the log with
+     * {@link History#read(Entry)}.
+     */
+    public static class Entry {
+
+        private final long offset;
+        private final long time;
+        private final String method;
+        private final String url;
+        private final int status;
+        private final long millis;
+        private final long length;
+        private final int id;
+        private final int body;
+
+        Entry(long offset, long time, String method, String url, int status, long millis, long length,
+              int id, int body) {
+            this.offset = offset;
+            this.time = time;
+            this.method = method;
+            this.url = url;
+            this.status = status;
+            this.millis = millis;
+            this.length = length;
+            this.id = id;
+            this.body = body;
+        }
+
+        /**
+         * @return The time the exchange was logged, in milliseconds since
+         * the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return The length of the decoded response body.
+         */
+        public long getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * An exchange as read from the log.
+     */
+    public class Exchange {
+
+        private final RequestSpec request;
+        private final String statusLine;
+        private final Map<String, List<String>> headers;
+        private final String body;
+
+        Exchange(RequestSpec request, String statusLine, Map<String, List<String>> headers, String body) {
+            this.request = request;
+            this.statusLine = statusLine;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public RequestSpec getRequest() {
+            return request;
+        }
+
+        public String getStatusLine() {
+            return statusLine;
+        }
+
+        public Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * @return The status line and headers, formatted as by
+         * {@link Response#formatHeaders()}.
+         */
+        public String formatHeaders() {
+            return Response.format(statusLine, headers);
+        }
+
+        public String getCharset() {
+            List<String> contentType = headers.get("Content-Type");
+            return HttpRequest.getCharset((contentType == null || contentType.isEmpty())
+                    ? null : contentType.get(0));
+        }
+
+        /**
+         * @return The decoded response body, which is empty if there was
+         * none.
+         */
+        public InputStream openBody() throws IOException {
+            return (body == null) ? new ByteArrayInputStream(new byte[0]) : openBlob(body);
+        }
+    }
+
+    /**
+     * A sorted list of ids, which are mostly added in increasing order.
+     */
+    private static class Postings {
+
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id) {
+            int i = (size == 0 || ids[size - 1] < id) ? -size - 1 : Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) {
+                return;
+            }
+            i = -i - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            // the words of an earlier body logged late.
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            ids[i] = id;
+            size++;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    private final File directory;
+    private final File log;
+    private final File bodies;
+    /**
+     * Guards appending to the log, while the index is guarded by the
+     * history itself, so that logging an exchange never waits for the
+     * index to be read.
+     */
+    private final Object logLock = new Object();
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final Map<String, Integer> bodyIds = new HashMap<String, Integer>();
+    private final Map<String, Postings> headerTerms = new HashMap<String, Postings>();
+    private final Map<String, Postings> bodyTerms = new HashMap<String, Postings>();
+    /**
+     * The ids of the bodies, whose words have been indexed.
+     */
+    private final BitSet indexedBodies = new BitSet();
+    /**
+     * The hashes of the bodies, whose words have been logged, or found in
+     * the log by a search, so far. A body stored before, as a request body
+     * or a binary response body, has its words logged once received as a
+     * textual response body.
+     */
+    private final Set<String> loggedTerms = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private long indexed;
+
+    /**
+     * Creates a history in the user's home directory.
+     */
+    public History() throws IOException {
+        this(new File(System.getProperty("user.home"), ".rest-client" + File.separator + "history"));
+    }
+
+    /**
+     * Opens the history in the given directory, creating it if need be.
+     * The log is not read until searched.
+     */
+    public History(File directory) throws IOException {
+        this.directory = directory;
+        this.log = new File(directory, LOG);
+        this.bodies = new File(directory, BODIES);
+        if (!bodies.isDirectory() && !bodies.mkdirs()) {
+            throw new IOException("Cannot create directory " + bodies);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The number of exchanges indexed so far.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Records an exchange, once its response body has been read to the
+     * end. Errors storing the exchange are logged rather than thrown, so
+     * that they never fail the request.
+     *
+     * @param request  The request sent.
+     * @param response The response received, whose body has not been read.
+     * @param monitor  The monitor of the request, which tells its duration.
+     * @return The response body to read instead, which stores what is read.
+     */
+    public InputStream record(RequestSpec request, Response response, RequestMonitor monitor) {
+        InputStream body = response.getBody();
+        try {
+            Map<String, Object> record = new LinkedHashMap<String, Object>();
+            record.put("method", request.getMethod());
+            record.put("url", request.getUrl());
+            record.put("contentType", request.getContentType());
+            record.put("acceptContentType", request.getAcceptContentType());
+            record.put("headers", request.getHeaders());
+            if (!request.getAttachments().isEmpty()) {
+                List<String> attachments = new ArrayList<String>();
+                for (File f : request.getAttachments()) {
+                    attachments.add(f.getPath());
+                }
+                record.put("attachments", attachments);
+            } else if (request.getBody() != null && !request.getBody().isEmpty()) {
+                record.put("requestBody", storeBlob(request.getBody().getBytes(HttpRequest.DEFAULT_CHARSET)));
+            }
+            record.put("status", (long) response.getStatus());
+            record.put("statusLine", response.getStatusLine());
+            record.put("responseHeaders", response.getHeaders());
+            return new Recorder(record, body, isText(response.getContentType()),
+                    HttpRequest.toCharset(response.getCharset()), monitor);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot record " + request, e);
+            return body;
+        }
+    }
+
+    /**
+     * Finds exchanges by their URL, status, headers or body. The query is a
+     * list of terms separated by blanks, all of which must match:
+     * <ul>
+     * <li>{@code status:404} or {@code status:5xx} matches the status,</li>
+     * <li>{@code method:POST} matches the request method,</li>
+     * <li>{@code header:text} matches the words of the text in the request
+     * or response headers,</li>
+     * <li>{@code body:text} matches the words of the text in the response
+     * body,</li>
+     * <li>any other term matches part of the URL, ignoring case.</li>
+     * </ul>
+     * Reads what has been logged since the previous search first.
+     *
+     * @param query The query, which matches all exchanges if blank.
+     * @return The matching exchanges, the latest first.
+     * @throws IOException The log cannot be read.
+     */
+    public synchronized List<Entry> search(String query) throws IOException {
+        catchUp();
+        List<String> urlParts = new ArrayList<String>();
+        List<String> methods = new ArrayList<String>();
+        List<String> statuses = new ArrayList<String>();
+        List<Postings> headerPostings = new ArrayList<Postings>();
+        List<Postings> bodyPostings = new ArrayList<Postings>();
+        for (String term : query.trim().split("\\s+")) {
+            if (term.isEmpty()) {
+                continue;
+            }
+            int colon = term.indexOf(':');
+            String field = (colon > 0) ? term.substring(0, colon).toLowerCase(Locale.ROOT) : "";
+            String value = term.substring(colon + 1);
+            if (field.equals("status")) {
+                statuses.add(value.toLowerCase(Locale.ROOT));
+            } else if (field.equals("method")) {
+                methods.add(value);
+            } else if (field.equals("header") || field.equals("body")) {
+                Map<String, Postings> terms = field.equals("header") ? headerTerms : bodyTerms;
+                for (String word : tokenize(value)) {
+                    Postings postings = terms.get(word);
+                    if (postings == null) {
+                        return Collections.emptyList();
+                    }
+                    (field.equals("header") ? headerPostings : bodyPostings).add(postings);
+                }
+            } else {
+                urlParts.add(term);
+            }
+        }
+        List<Entry> result = new ArrayList<Entry>();
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry e = entries.get(i);
+            if (matches(e, urlParts, methods, statuses, headerPostings, bodyPostings)) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    private static boolean matches(Entry e, List<String> urlParts, List<String> methods, List<String> statuses,
+                                   List<Postings> headerPostings, List<Postings> bodyPostings) {
+        for (String part : urlParts) {
+            if (!containsIgnoreCase(e.url, part)) {
+                return false;
+            }
+        }
+        for (String m : methods) {
+            if (!m.equalsIgnoreCase(e.method)) {
+                return false;
+            }
+        }
+        for (String s : statuses) {
+            String status = Integer.toString(e.status);
+            if (s.length() != status.length()) {
+                return false;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) != 'x' && s.charAt(i) != status.charAt(i)) {
+                    return false;
+                }
+            }
+        }
+        for (Postings p : headerPostings) {
+            if (!p.contains(e.id)) {
+                return false;
+            }
+        }
+        for (Postings p : bodyPostings) {
+            if (e.body < 0 || !p.contains(e.body)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsIgnoreCase(String s, String part) {
+        for (int i = 0, end = s.length() - part.length(); i <= end; i++) {
+            if (s.regionMatches(true, i, part, 0, part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads an exchange back from the log.
+     */
+    @SuppressWarnings("unchecked")
+    public Exchange read(Entry entry) throws IOException {
+        Map<String, Object> record;
+        RandomAccessFile in = new RandomAccessFile(log, "r");
+        try {
+            in.seek(entry.offset);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int c;
+            while ((c = in.read()) != -1 && c != '\n') {
+                line.write(c);
+            }
+            record = (Map<String, Object>) Json.parse(line.toString(HttpRequest.DEFAULT_CHARSET));
+        } finally {
+            in.close();
+        }
+        Map<String, String> requestHeaders = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, Object> h : ((Map<String, Object>) record.get("headers")).entrySet()) {
+            requestHeaders.put(h.getKey(), String.valueOf(h.getValue()));
+        }
+        String requestBody = "";
+        if (record.get("requestBody") != null) {
+            requestBody = HttpRequest.asString(openBlob((String) record.get("requestBody")),
+                    HttpRequest.DEFAULT_CHARSET);
+        }
+        List<File> attachments = new ArrayList<File>();
+        if (record.get("attachments") != null) {
+            for (Object path : (List<Object>) record.get("attachments")) {
+                attachments.add(new File(String.valueOf(path)));
+            }
+        }
+        RequestSpec request = new RequestSpec((String) record.get("url"), (String) record.get("method"),
+                (String) record.get("contentType"), (String) record.get("acceptContentType"),
+                requestHeaders, requestBody, attachments);
+        Map<String, List<String>> headers = Response.newHeaders();
+        for (Map.Entry<String, Object> h : ((Map<String, Object>) record.get("responseHeaders")).entrySet()) {
+            List<String> values = new ArrayList<String>();
+            for (Object v : (List<Object>) h.getValue()) {
+                values.add(String.valueOf(v));
+            }
+            headers.put(h.getKey(), values);
+        }
+        return new Exchange(request, (String) record.get("statusLine"), headers, (String) record.get("body"));
+    }
+
+    /**
+     * Indexes the lines appended to the log since the last call. A line,
+     * which is not complete yet, is left for the next call.
+     */
+    private void catchUp() throws IOException {
+        long length = log.length();
+        if (length <= indexed) {
+            return;
+        }
+        InputStream in = new FileInputStream(log);
+        try {
+            long skipped = 0;
+            while (skipped < indexed) {
+                long n = in.skip(indexed - skipped);
+                if (n <= 0) {
+                    throw new EOFException(log + " has been truncated.");
+                }
+                skipped += n;
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long position = indexed;
+            long lineStart = indexed;
+            int n;
+            while (position < length
+                    && (n = in.read(buffer, 0, (int) Math.min(buffer.length, length - position))) != -1) {
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        line.write(buffer, start, i - start);
+                        index(lineStart, line.toString(HttpRequest.DEFAULT_CHARSET));
+                        line.reset();
+                        start = i + 1;
+                        lineStart = position + i + 1;
+                        indexed = lineStart;
+                    }
+                }
+                line.write(buffer, start, n - start);
+                position += n;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void index(long offset, String line) {
+        if (line.trim().isEmpty()) {
+            return;
+        }
+        Map<String, Object> record;
+        try {
+            record = (Map<String, Object>) Json.parse(line);
+        } catch (RuntimeException e) {
+            // torn by a crash while appending.
+            LOGGER.log(Level.WARNING, "Skipping malformed line at " + offset + " of " + log, e);
+            return;
+        }
+        int id = entries.size();
+        int body = -1;
+        String hash = (String) record.get("body");
+        if (hash != null) {
+            Integer known = bodyIds.get(hash);
+            if (known == null) {
+                body = bodyIds.size();
+                bodyIds.put(hash, body);
+            } else {
+                body = known;
+            }
+            String terms = (String) record.get("terms");
+            if (terms != null && !indexedBodies.get(body)) {
+                indexedBodies.set(body);
+                loggedTerms.add(hash);
+                for (String term : terms.split(" ")) {
+                    post(bodyTerms, term, body);
+                }
+            }
+        }
+        for (Map.Entry<String, Object> h : ((Map<String, Object>) record.get("headers")).entrySet()) {
+            postAll(h.getKey() + " " + h.getValue(), id);
+        }
+        for (Map.Entry<String, Object> h : ((Map<String, Object>) record.get("responseHeaders")).entrySet()) {
+            postAll(h.getKey() + " " + h.getValue(), id);
+        }
+        Number length = (Number) record.get("length");
+        entries.add(new Entry(offset, ((Number) record.get("time")).longValue(), (String) record.get("method"),
+                (String) record.get("url"), ((Number) record.get("status")).intValue(),
+                ((Number) record.get("millis")).longValue(), (length != null) ? length.longValue() : 0,
+                id, body));
+    }
+
+    private void postAll(String text, int id) {
+        for (String term : tokenize(text)) {
+            post(headerTerms, term, id);
+        }
+    }
+
+    private static void post(Map<String, Postings> terms, String term, int id) {
+        if (term.isEmpty()) {
+            return;
+        }
+        Postings postings = terms.get(term);
+        if (postings == null) {
+            postings = new Postings();
+            terms.put(term, postings);
+        }
+        postings.add(id);
+    }
+
+    /**
+     * @return The distinct words of the text, in lower case, which are runs
+     * of letters and digits of a length indexed.
+     */
+    static Set<String> tokenize(CharSequence text) {
+        Set<String> terms = new LinkedHashSet<String>();
+        int start = -1;
+        for (int i = 0, n = text.length(); i <= n; i++) {
+            boolean letter = i < n && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                if (i - start >= MIN_TERM_LENGTH && i - start <= MAX_TERM_LENGTH) {
+                    terms.add(text.subSequence(start, i).toString().toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static boolean isText(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.contains("json") || type.contains("xml")
+                || type.contains("javascript") || type.contains("x-www-form-urlencoded");
+    }
+
+    private void append(Map<String, Object> record) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        Json.write(sb, record);
+        sb.append('\n');
+        byte[] line = sb.toString().getBytes(HttpRequest.DEFAULT_CHARSET);
+        synchronized (logLock) {
+            OutputStream out = new FileOutputStream(log, true);
+            try {
+                // a single write, so that a reader never sees half a line followed by another.
+                out.write(line);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private File blob(String hash) {
+        return new File(new File(bodies, hash.substring(0, 2)), hash + ".gz");
+    }
+
+    private InputStream openBlob(String hash) throws IOException {
+        return new GZIPInputStream(new FileInputStream(blob(hash)), BUFFER_SIZE);
+    }
+
+    /**
+     * @return The hash of the content, which is stored unless stored
+     * before.
+     */
+    private String storeBlob(byte[] content) throws IOException {
+        String hash = Digests.hex(Digests.sha256().digest(content));
+        File target = blob(hash);
+        if (!target.isFile()) {
+            File temp = newTempFile();
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(temp));
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+            commitBlob(temp, target);
+        }
+        return hash;
+    }
+
+    private File newTempFile() throws IOException {
+        return File.createTempFile("body", ".tmp", bodies);
+    }
+
+    /**
+     * Stores the blob, unless it has been stored before.
+     */
+    private void commitBlob(File temp, File target) throws IOException {
+        synchronized (logLock) {
+            if (target.isFile()) {
+                temp.delete();
+                return;
+            }
+            File parent = target.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                temp.delete();
+                throw new IOException("Cannot create directory " + parent);
+            }
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("Cannot store " + target);
+            }
+        }
+    }
+
+    /**
+     * Compresses a body into a temporary file while it is read, keeping the
+     * start of a textual body to index, and logs the exchange once the end
+     * has been reached. An exchange, whose body is closed before its end,
+     * is not logged.
+     */
+    private class Recorder extends TeeInputStream {
+
+        private final Map<String, Object> record;
+        private final Charset charset;
+        private final RequestMonitor monitor;
+        private final MessageDigest digest = Digests.sha256();
+        private final ByteArrayOutputStream text;
+        private final File temp;
+        private final OutputStream file;
+        private long length;
+
+        Recorder(Map<String, Object> record, InputStream body, boolean text, Charset charset,
+                 RequestMonitor monitor) throws IOException {
+            super(body);
+            this.record = record;
+            this.text = text ? new ByteArrayOutputStream() : null;
+            this.charset = charset;
+            this.monitor = monitor;
+            this.temp = newTempFile();
+            this.file = new GZIPOutputStream(new FileOutputStream(temp), BUFFER_SIZE);
+        }
+
+        boolean write(byte[] b, int off, int len) {
+            try {
+                file.write(b, off, len);
+            } catch (IOException e) {
+                // the history is best effort, the caller reads on.
+                LOGGER.log(Level.WARNING, "Cannot store " + temp, e);
+                return false;
+            }
+            digest.update(b, off, len);
+            length += len;
+            if (text != null && text.size() < INDEX_LIMIT) {
+                text.write(b, off, Math.min(len, INDEX_LIMIT - text.size()));
+            }
+            return true;
+        }
+
+        void commit() {
+            try {
+                file.close();
+                record.put("millis", monitor.getElapsedMillis());
+                record.put("time", System.currentTimeMillis());
+                if (length == 0) {
+                    temp.delete();
+                } else {
+                    String hash = Digests.hex(digest.digest());
+                    record.put("body", hash);
+                    record.put("length", length);
+                    commitBlob(temp, blob(hash));
+                    if (text != null && loggedTerms.add(hash)) {
+                        StringBuilder terms = new StringBuilder();
+                        for (String term : tokenize(new String(text.toByteArray(), charset))) {
+                            if (terms.length() > 0) {
+                                terms.append(' ');
+                            }
+                            terms.append(term);
+                        }
+                        record.put("terms", terms.toString());
+                    }
+                }
+                append(record);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot record " + record.get("url"), e);
+                temp.delete();
+                if (record.containsKey("terms")) {
+                    loggedTerms.remove(record.get("body"));
+                }
+            }
+        }
+
+        void abort() {
+            try {
+                file.close();
+            } catch (IOException e) {
+                /* Ignore me */
+            }
+            temp.delete();
+        }
+    }
+}
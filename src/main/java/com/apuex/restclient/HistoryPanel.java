@@ -0,0 +1,293 @@
+package com.apuex.restclient;
+
+import javax.swing.*;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.text.DateFormat;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Lists and searches the exchanges of a {@link History}. Searches run in the
+ * background, and only the exchanges in view are rendered, so that the
+ * panel opens at once however long the history is. The request and
+ * response of the selected exchange are read from the history when
+ * selected, showing at most {@link #PREVIEW_LIMIT} characters of the body.
+ *
+ * @author wangxy
+ */
+public class HistoryPanel extends JPanel {
+
+    /**
+     * Receives the request of an exchange to send again.
+     */
+    public interface Listener {
+
+        void restore(RequestSpec request);
+    }
+
+    private static final int PREVIEW_LIMIT = 256 << 10;
+
+    private static final String[] COLUMNS = {
+            "history.time", "history.method", "history.status.column", "history.millis", "history.length", "history.url"
+    };
+
+    public HistoryPanel(ResourceBundle bundle, History history, Listener listener) {
+        this.bundle = bundle;
+        this.history = history;
+        this.listener = listener;
+        initComponents();
+    }
+
+    private void initComponents() {
+        query = new JTextField(24);
+        searchButton = new JButton();
+        status = new JLabel();
+        restoreButton = new JButton();
+        closeButton = new JButton();
+        model = new EntryTableModel();
+        table = new JTable(model);
+        detail = new JTextArea();
+
+        setLayout(new BorderLayout());
+
+        JPanel toolBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 2));
+        query.setToolTipText(bundle.getString("history.query"));
+        ActionListener search = new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                search();
+            }
+        };
+        query.addActionListener(search);
+        toolBar.add(query);
+
+        searchButton.setText(bundle.getString("history.search"));
+        searchButton.addActionListener(search);
+        toolBar.add(searchButton);
+
+        restoreButton.setText(bundle.getString("history.restore"));
+        restoreButton.setEnabled(false);
+        restoreButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                if (selected != null) {
+                    listener.restore(selected.getRequest());
+                }
+            }
+        });
+        toolBar.add(restoreButton);
+
+        closeButton.setText(bundle.getString("close.response"));
+        closeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                close();
+            }
+        });
+        toolBar.add(closeButton);
+        toolBar.add(status);
+        add(toolBar, BorderLayout.NORTH);
+
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_LAST_COLUMN);
+        int[] widths = {150, 60, 50, 60, 80};
+        for (int i = 0; i < widths.length; i++) {
+            table.getColumnModel().getColumn(i).setPreferredWidth(widths[i]);
+            table.getColumnModel().getColumn(i).setMaxWidth(widths[i] * 2);
+        }
+        table.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+            public void valueChanged(ListSelectionEvent evt) {
+                if (!evt.getValueIsAdjusting()) {
+                    showSelected();
+                }
+            }
+        });
+
+        detail.setEditable(false);
+        detail.setColumns(20);
+        detail.setRows(10);
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                new JScrollPane(table), new JScrollPane(detail));
+        split.setResizeWeight(0.5);
+        add(split, BorderLayout.CENTER);
+    }
+
+    /**
+     * Runs the query in the search field in the background. Must be called
+     * on the event dispatch thread.
+     */
+    public void search() {
+        final String text = query.getText();
+        searchButton.setEnabled(false);
+        status.setText(bundle.getString("history.searching"));
+        new SwingWorker<List<History.Entry>, Void>() {
+            @Override
+            protected List<History.Entry> doInBackground() throws Exception {
+                return history.search(text);
+            }
+
+            @Override
+            protected void done() {
+                searchButton.setEnabled(true);
+                try {
+                    List<History.Entry> found = get();
+                    model.setEntries(found);
+                    status.setText(MessageFormat.format(bundle.getString("history.status"),
+                            found.size(), history.size()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    status.setText(e.getCause().toString());
+                }
+            }
+        }.execute();
+    }
+
+    private void showSelected() {
+        int row = table.getSelectedRow();
+        selected = null;
+        restoreButton.setEnabled(false);
+        if (row < 0) {
+            detail.setText("");
+            return;
+        }
+        final History.Entry entry = model.getEntry(row);
+        new SwingWorker<String, Void>() {
+            private History.Exchange exchange;
+
+            @Override
+            protected String doInBackground() throws Exception {
+                exchange = history.read(entry);
+                RequestSpec request = exchange.getRequest();
+                StringBuilder sb = new StringBuilder();
+                sb.append(request).append('\n');
+                for (Map.Entry<String, String> h : request.getHeaders().entrySet()) {
+                    sb.append(h.getKey()).append(": ").append(h.getValue()).append('\n');
+                }
+                if (!request.getBody().isEmpty()) {
+                    sb.append('\n').append(request.getBody()).append('\n');
+                }
+                sb.append('\n').append(exchange.formatHeaders());
+                Reader in = new InputStreamReader(exchange.openBody(), HttpRequest.toCharset(exchange.getCharset()));
+                try {
+                    char[] buffer = new char[8192];
+                    int n;
+                    while (sb.length() < PREVIEW_LIMIT && (n = in.read(buffer)) != -1) {
+                        sb.append(buffer, 0, n);
+                    }
+                    if (in.read() != -1) {
+                        sb.append("\n...");
+                    }
+                } finally {
+                    in.close();
+                }
+                return sb.toString();
+            }
+
+            @Override
+            protected void done() {
+                if (table.getSelectedRow() < 0 || model.getEntry(table.getSelectedRow()) != entry) {
+                    // selection changed meanwhile.
+                    return;
+                }
+                try {
+                    detail.setText(get());
+                    detail.setCaretPosition(0);
+                    selected = exchange;
+                    restoreButton.setEnabled(true);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    detail.setText(e.getCause().toString());
+                }
+            }
+        }.execute();
+    }
+
+    private void close() {
+        Container parent = getParent();
+        if (parent != null) {
+            parent.remove(this);
+            parent.validate();
+            parent.repaint();
+        }
+    }
+
+    /**
+     * Renders the entries found, which are only read as they are shown.
+     */
+    private class EntryTableModel extends AbstractTableModel {
+
+        private final DateFormat timeFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM);
+        private List<History.Entry> entries = Collections.emptyList();
+
+        void setEntries(List<History.Entry> entries) {
+            this.entries = entries;
+            fireTableDataChanged();
+        }
+
+        History.Entry getEntry(int row) {
+            return entries.get(row);
+        }
+
+        public int getRowCount() {
+            return entries.size();
+        }
+
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return bundle.getString(COLUMNS[column]);
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return (column == 2 || column == 3 || column == 4) ? Long.class : String.class;
+        }
+
+        public Object getValueAt(int row, int column) {
+            History.Entry e = entries.get(row);
+            switch (column) {
+                case 0:
+                    return timeFormat.format(new Date(e.getTime()));
+                case 1:
+                    return e.getMethod();
+                case 2:
+                    return (long) e.getStatus();
+                case 3:
+                    return e.getMillis();
+                case 4:
+                    return e.getLength();
+                default:
+                    return e.getUrl();
+            }
+        }
+    }
+
+    // Variables declaration
+    private JTextField query;
+    private JButton searchButton;
+    private JLabel status;
+    private JButton restoreButton;
+    private JButton closeButton;
+    private JTable table;
+    private EntryTableModel model;
+    private JTextArea detail;
+    private ResourceBundle bundle;
+    private History history;
+    private Listener listener;
+    private History.Exchange selected;
+    // End of variables declaration
+}
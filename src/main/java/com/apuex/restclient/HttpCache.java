@@ -0,0 +1,415 @@
+package com.apuex.restclient;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A private HTTP cache for GET responses, used by {@link RestClient} once
+ * set with {@link RestClient#setCache(HttpCache)}.
+ * <p>
+ * Response bodies are stored in files of their own, while the index of
+ * entries is kept in memory in least recently used order. Once the bodies
+ * exceed the maximum size, the least recently used entries are evicted.
+ * Freshness follows the max-age and no-cache directives of Cache-Control,
+ * then Expires, then a tenth of the time since Last-Modified. Stale
+ * entries are revalidated with If-None-Match and If-Modified-Since, so
+ * that an unchanged body is not downloaded again.
+ *
+ * @author wangxy
+ */
+public class HttpCache {
+
+    public static final long DEFAULT_MAX_SIZE = 256L << 20;
+
+    /**
+     * How a response was obtained from a client with a cache.
+     */
+    public enum Status {
+        /**
+         * Received from the server.
+         */
+        MISS,
+        /**
+         * Served from the cache without contacting the server.
+         */
+        HIT,
+        /**
+         * Served from the cache after the server confirmed it unchanged.
+         */
+        REVALIDATED
+    }
+
+    /**
+     * Freshness of a response, which must not be stored.
+     */
+    static final long NOT_STORABLE = Long.MIN_VALUE;
+
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])max-age\\s*=\\s*\"?(\\d+)");
+    private static final long MAX_AGE_SECONDS = Integer.MAX_VALUE;
+    private static final String LOCK_FILE = ".lock";
+
+    private final File directory;
+    /**
+     * Held for as long as the process runs.
+     */
+    private final FileLock lock;
+    /**
+     * Whether the directory is deleted on exit, with the bodies in it.
+     */
+    private final boolean temporary;
+    private final long maxSize;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long size;
+
+    /**
+     * Creates a cache in a directory under java.io.tmpdir, which is shared
+     * by the caches of successive runs, or, while another cache uses it, in
+     * a new temporary directory of its own.
+     */
+    public HttpCache() throws IOException {
+        this(new File(System.getProperty("java.io.tmpdir"), "rest-client-cache"), DEFAULT_MAX_SIZE, true);
+    }
+
+    /**
+     * @param directory The directory to store bodies in, which is locked
+     *                  for as long as the process runs, so that no other
+     *                  cache uses it. Bodies left over by a previous cache in
+     *                  the same directory are deleted, since the index is not
+     *                  persisted.
+     * @param maxSize   The maximum total size of the stored bodies in bytes.
+     * @throws IOException The directory is used by another cache.
+     */
+    public HttpCache(File directory, long maxSize) throws IOException {
+        this(directory, maxSize, false);
+    }
+
+    private HttpCache(File directory, long maxSize, boolean orTemporary) throws IOException {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize < 0");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory " + directory);
+        }
+        FileLock lock = lock(directory);
+        boolean temporary = false;
+        if (lock == null) {
+            if (!orTemporary) {
+                throw new IOException("Directory " + directory + " is used by another cache");
+            }
+            directory = Files.createTempDirectory("rest-client-cache").toFile();
+            directory.deleteOnExit();
+            new File(directory, LOCK_FILE).deleteOnExit();
+            lock = lock(directory);
+            temporary = true;
+        }
+        this.directory = directory;
+        this.lock = lock;
+        this.temporary = temporary;
+        this.maxSize = maxSize;
+        File[] stale = directory.listFiles();
+        if (stale != null) {
+            for (File f : stale) {
+                if (f.getName().endsWith(".body")) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A lock on the directory, or null if another cache holds it.
+     */
+    private static FileLock lock(File directory) throws IOException {
+        FileChannel channel = new RandomAccessFile(new File(directory, LOCK_FILE), "rw").getChannel();
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return lock;
+            }
+        } catch (OverlappingFileLockException e) {
+            // held by another cache of this process.
+        }
+        channel.close();
+        return null;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return The total size of the stored bodies in bytes.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        for (Entry e : entries.values()) {
+            e.file.delete();
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * @return The entry for the key, which then becomes the most recently
+     * used one, or null if there is none.
+     */
+    synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    synchronized void remove(String key) {
+        Entry e = entries.remove(key);
+        if (e != null) {
+            size -= e.length;
+            e.file.delete();
+        }
+    }
+
+    /**
+     * Removes the entry for the key, unless it has been replaced meanwhile.
+     */
+    synchronized void remove(String key, Entry entry) {
+        if (entries.get(key) == entry) {
+            remove(key);
+        }
+    }
+
+    /**
+     * @return An input stream of the body of the entry, or null if it has
+     * been evicted meanwhile.
+     */
+    synchronized InputStream openBody(Entry entry) {
+        try {
+            return new FileInputStream(entry.file);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts storing a response of the given connection.
+     *
+     * @param key        The key to store the response under.
+     * @param connection The connection, whose response headers decide
+     *                   whether and how long the response is stored.
+     * @param headers    The response headers.
+     * @param decoded    Whether the body has been decoded, so that its
+     *                   Content-Encoding and Content-Length no longer apply.
+     * @param body       The body, as the caller is about to read it.
+     * @return A stream, which reads the given body and adds it to the cache
+     * once read to the end, or the given stream if the response must not be
+     * stored.
+     */
+    InputStream store(String key, HttpURLConnection connection, Map<String, List<String>> headers,
+                      boolean decoded, InputStream body) throws IOException {
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            return body;
+        }
+        String vary = connection.getHeaderField("Vary");
+        if (vary != null && vary.trim().equals("*")) {
+            return body;
+        }
+        long now = System.currentTimeMillis();
+        long freshUntil = freshUntil(connection, now);
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        if (freshUntil == NOT_STORABLE || (freshUntil <= now && etag == null && lastModified == null)) {
+            return body;
+        }
+        File file = File.createTempFile("entry", ".body", directory);
+        if (temporary) {
+            file.deleteOnExit();
+        }
+        Map<String, List<String>> stored = headers;
+        if (decoded && headers.containsKey("Content-Encoding")) {
+            stored = Response.newHeaders();
+            stored.putAll(headers);
+            stored.remove("Content-Encoding");
+            stored.remove("Content-Length");
+        }
+        Entry entry = new Entry(file, stored, connection.getContentType(), etag, lastModified, freshUntil);
+        return new BodyReader(key, entry, body);
+    }
+
+    /**
+     * Updates the freshness of an entry, after the server responded with
+     * 304 Not Modified.
+     */
+    void revalidated(String key, Entry entry, HttpURLConnection connection) {
+        long freshUntil = freshUntil(connection, System.currentTimeMillis());
+        if (freshUntil == NOT_STORABLE) {
+            remove(key);
+            return;
+        }
+        entry.freshUntil = freshUntil;
+        String etag = connection.getHeaderField("ETag");
+        if (etag != null) {
+            entry.etag = etag;
+        }
+        String lastModified = connection.getHeaderField("Last-Modified");
+        if (lastModified != null) {
+            entry.lastModified = lastModified;
+        }
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        Entry replaced = entries.put(key, entry);
+        size += entry.length;
+        if (replaced != null) {
+            size -= replaced.length;
+            replaced.file.delete();
+        }
+        for (Iterator<Entry> i = entries.values().iterator(); size > maxSize && i.hasNext(); ) {
+            Entry eldest = i.next();
+            i.remove();
+            size -= eldest.length;
+            eldest.file.delete();
+        }
+    }
+
+    /**
+     * @return The time in milliseconds until which the response is fresh,
+     * or {@link #NOT_STORABLE}.
+     */
+    static long freshUntil(HttpURLConnection connection, long now) {
+        String cacheControl = connection.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            String directives = cacheControl.toLowerCase(Locale.ROOT);
+            if (directives.contains("no-store")) {
+                return NOT_STORABLE;
+            }
+            if (directives.contains("no-cache")) {
+                return now;
+            }
+            Matcher m = MAX_AGE.matcher(directives);
+            if (m.find()) {
+                long maxAge = (m.group(1).length() > 10)
+                        ? MAX_AGE_SECONDS : Math.min(Long.parseLong(m.group(1)), MAX_AGE_SECONDS);
+                long age = Math.max(0, connection.getHeaderFieldInt("Age", 0));
+                return now + (maxAge - age) * 1000L;
+            }
+        }
+        long date = connection.getHeaderFieldDate("Date", now);
+        if (connection.getHeaderField("Expires") != null) {
+            // invalid dates, such as "0", mean already expired.
+            long expires = connection.getHeaderFieldDate("Expires", date);
+            return now + (expires - date);
+        }
+        long lastModified = connection.getHeaderFieldDate("Last-Modified", 0);
+        if (lastModified > 0 && lastModified < date) {
+            return now + (date - lastModified) / 10;
+        }
+        return now;
+    }
+
+    /**
+     * A cached response.
+     */
+    static class Entry {
+
+        private final File file;
+        private final Map<String, List<String>> headers;
+        private final String contentType;
+        private volatile String etag;
+        private volatile String lastModified;
+        private volatile long freshUntil;
+        private long length;
+
+        Entry(File file, Map<String, List<String>> headers, String contentType,
+              String etag, String lastModified, long freshUntil) {
+            this.file = file;
+            this.headers = headers;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.freshUntil = freshUntil;
+        }
+
+        Map<String, List<String>> getHeaders() {
+            return headers;
+        }
+
+        String getContentType() {
+            return contentType;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < freshUntil;
+        }
+
+        /**
+         * @return The headers of a conditional request for the entry.
+         */
+        Map<String, String> getValidators() {
+            Map<String, String> validators = new LinkedHashMap<String, String>();
+            if (etag != null) {
+                validators.put("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                validators.put("If-Modified-Since", lastModified);
+            }
+            return validators;
+        }
+    }
+
+    /**
+     * Copies a body to the cache as the caller reads it. The entry is added
+     * to the cache once the body has been read to the end, and discarded if
+     * the body is closed before.
+     */
+    class BodyReader extends TeeInputStream {
+
+        private final String key;
+        private final Entry entry;
+        private final OutputStream file;
+
+        BodyReader(String key, Entry entry, InputStream body) throws FileNotFoundException {
+            super(body);
+            this.key = key;
+            this.entry = entry;
+            this.file = new FileOutputStream(entry.file);
+        }
+
+        boolean write(byte[] b, int off, int len) throws IOException {
+            file.write(b, off, len);
+            entry.length += len;
+            // too large to ever be stored otherwise.
+            return entry.length <= maxSize;
+        }
+
+        void commit() throws IOException {
+            file.close();
+            put(key, entry);
+        }
+
+        void abort() throws IOException {
+            file.close();
+            entry.file.delete();
+        }
+    }
+}
@@ -1,17 +1,24 @@
 package com.apuex.restclient;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLEncoder;
-import java.util.List;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Locale;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 public class HttpRequest {
 
     public static final String DEFAULT_CHARSET = "UTF-8";
 
+    /**
+     * The content codings understood by {@link #decode(InputStream, String)}.
+     */
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+
     public static String send(
             String requestUrl,
             String method,
@@ -20,66 +27,148 @@ public class HttpRequest {
             Map<String, String> headers,
             String body
     ) throws Exception {
-        requestUrl = requestUrl.replaceAll(" ", "%20");
-        URL url = new URL(requestUrl);
-        HttpURLConnection connection = (HttpURLConnection) url
-                .openConnection();
+        return send(requestUrl, method, contentType, acceptContentType,
+                headers, body, new RequestMonitor());
+    }
 
-        connection.addRequestProperty("Accept-Content", acceptContentType);
-        connection.addRequestProperty("Accept-Charset", DEFAULT_CHARSET);
-        connection.addRequestProperty("Content-Type", String.format("%s; charset=%s", contentType, DEFAULT_CHARSET));
+    /**
+     * Sends the request through the shared {@link RestClient#getDefault()}
+     * client, reporting progress to the given monitor.
+     *
+     * @see RestClient#send(String, String, String, String, Map, String, RequestMonitor)
+     */
+    public static String send(
+            String requestUrl,
+            String method,
+            String contentType,
+            String acceptContentType,
+            Map<String, String> headers,
+            String body,
+            RequestMonitor monitor
+    ) throws Exception {
+        return RestClient.getDefault().send(requestUrl, method, contentType,
+                acceptContentType, headers, body, monitor);
+    }
 
-        for (Map.Entry<String, String> h : headers.entrySet()) {
-            connection.addRequestProperty(h.getKey(), h.getValue());
-        }
+    /**
+     * Sends the request through the shared {@link RestClient#getDefault()}
+     * client and returns the response as soon as its headers have been
+     * received, so that its body may be processed incrementally.
+     *
+     * @return The response, which the caller must close.
+     * @see RestClient#open(RequestSpec, RequestMonitor)
+     */
+    public static Response open(
+            String requestUrl,
+            String method,
+            String contentType,
+            String acceptContentType,
+            Map<String, String> headers,
+            String body,
+            RequestMonitor monitor
+    ) throws Exception {
+        return RestClient.getDefault().open(new RequestSpec(requestUrl, method, contentType,
+                acceptContentType, headers, body), monitor);
+    }
 
-        connection.setFollowRedirects(true);
-        // default is "GET".
-        connection.setRequestMethod(method);
-        if ("POST".equals(method) || "PUT".equals(method)) {
-            connection.setDoOutput(true);
-            OutputStream os = connection.getOutputStream();
-            PrintWriter pw = new PrintWriter(new OutputStreamWriter(os, DEFAULT_CHARSET));
-            pw.print(body);
-            pw.close();
-            os.close();
-        }
-        StringBuffer headerSection = new StringBuffer();
-        for (Map.Entry<String, List<String>> e : connection
-                .getHeaderFields().entrySet()) {
-            System.out.println(e.getKey() + " = " + e.getValue());
-            if (e.getKey() != null) {
-                headerSection.append(e.getKey() + " = " + e.getValue()).append("\n");
-            } else {
-                headerSection.append(e.getValue()).append("\n");
+    /**
+     * Parses the character set from the value of a Content-Type header.
+     *
+     * @param contentType The header value, e.g. "text/html; charset=UTF-8".
+     *                    May be null.
+     * @return The value of the charset parameter, unquoted, or
+     * {@link #DEFAULT_CHARSET} if none is given. It may still not be the
+     * name of a character set, see {@link #toCharset(String)}.
+     */
+    public static String getCharset(String contentType) {
+        if (contentType != null) {
+            String[] parameters = contentType.split(";");
+            for (int i = 1; i < parameters.length; i++) {
+                int equal = parameters[i].indexOf('=');
+                if (equal == -1 || !parameters[i].substring(0, equal).trim()
+                        .toLowerCase(Locale.ROOT).equals("charset")) {
+                    continue;
+                }
+                String charset = parameters[i].substring(equal + 1).trim();
+                if (charset.length() >= 2 && charset.startsWith("\"") && charset.endsWith("\"")) {
+                    charset = charset.substring(1, charset.length() - 1).trim();
+                }
+                if (!charset.isEmpty()) {
+                    return charset;
+                }
             }
         }
-        System.out.println("\n\n");
-        headerSection.append("\n\n");
+        return DEFAULT_CHARSET;
+    }
 
-        String responseCharset = DEFAULT_CHARSET;
-        try {
-            String responseContentType = connection.getHeaderField("Content-Type");
-            if (responseContentType != null) {
-                int startOfEqual = responseContentType.indexOf('=');
-                if (startOfEqual != -1) {
-                    responseCharset = responseContentType.substring(startOfEqual + 1);
-                    responseCharset = (responseCharset == null) ? DEFAULT_CHARSET
-                            : responseCharset;
-                } else {
-                    responseCharset = DEFAULT_CHARSET;
-                }
+    /**
+     * Looks up a character set named by a server, which may have got the
+     * name wrong.
+     *
+     * @param charset The name, e.g. as returned by {@link #getCharset(String)}.
+     * @return The character set, or the {@link #DEFAULT_CHARSET} if the name
+     * is not legal or not supported.
+     */
+    public static Charset toCharset(String charset) {
+        if (charset != null) {
+            try {
+                return Charset.forName(charset);
+            } catch (IllegalCharsetNameException e) {
+                // falls back to the default below.
+            } catch (UnsupportedCharsetException e) {
+                // falls back to the default below.
             }
-        } catch (Throwable t) {
         }
-        if (connection.getResponseCode() < 300
-                && connection.getResponseCode() >= 200) {
+        return Charset.forName(DEFAULT_CHARSET);
+    }
 
-            return headerSection.toString() + asString(connection.getInputStream(), responseCharset);
-        } else {
-            //return headerSection.toString();
-            return headerSection.toString() + asString(connection.getErrorStream(), responseCharset);
+    /**
+     * Wraps a response stream, so that it is decoded according to its
+     * Content-Encoding while being read. Unknown codings are passed
+     * through unchanged.
+     *
+     * @param in              The response stream, as received.
+     * @param contentEncoding The value of the Content-Encoding header.
+     *                        May be null.
+     * @return The decoded stream.
+     * @throws IOException An I/O error occurred.
+     */
+    public static InputStream decode(InputStream in, String contentEncoding)
+            throws IOException {
+        if (contentEncoding == null) {
+            return in;
+        }
+        String coding = contentEncoding.trim().toLowerCase();
+        if (!"gzip".equals(coding) && !"x-gzip".equals(coding) && !"deflate".equals(coding)) {
+            return in;
         }
+        // responses to HEAD and 204/304 carry the header but no body.
+        PushbackInputStream pin = new PushbackInputStream(in, 2);
+        int b0 = pin.read();
+        if (b0 == -1) {
+            return pin;
+        }
+        int b1 = pin.read();
+        if (b1 != -1) {
+            pin.unread(b1);
+        }
+        pin.unread(b0);
+        if (!"deflate".equals(coding)) {
+            return new GZIPInputStream(pin, DEFAULT_BUFFER_SIZE);
+        }
+        // "deflate" should be zlib wrapped, but some servers send it raw.
+        boolean zlib = (b0 & 0x0f) == 8 && b1 != -1 && ((b0 << 8) | b1) % 31 == 0;
+        final Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(pin, inflater, DEFAULT_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
     }
 
     /**
@@ -0,0 +1,173 @@
+package com.apuex.restclient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two JSON documents, as parsed by {@link Json}, reporting the
+ * values added, removed or changed with their path, e.g.
+ * {@code $.items[3].price}, so that reformatting or reordering object
+ * members makes no difference.
+ * <p>
+ * Array elements are matched by {@link Myers}, so that an element inserted
+ * into an array is reported once rather than as a change of every element
+ * after it. Elements replaced are compared in turn, pairwise; their path
+ * then shows both indexes if they differ, e.g. {@code $.items[3>4]}.
+ *
+ * @author wangxy
+ */
+public class JsonDiff {
+
+    public enum Kind {
+        ADDED, REMOVED, CHANGED
+    }
+
+    /**
+     * Receives the differences in document order.
+     */
+    public interface Listener {
+
+        /**
+         * @param path The path of the value.
+         * @param a    The value in the first document, null if added.
+         * @param b    The value in the second document, null if removed.
+         */
+        void difference(Kind kind, String path, Object a, Object b);
+    }
+
+    /**
+     * The number of values compared between checks for interruption.
+     */
+    private static final int CHECK_INTERVAL = 1 << 12;
+
+    private final Listener listener;
+    private int compared;
+
+    public JsonDiff(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param contentType A Content-Type, or null.
+     * @return Whether the content type is JSON.
+     */
+    public static boolean isJson(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int parameters = type.indexOf(';');
+        if (parameters != -1) {
+            type = type.substring(0, parameters);
+        }
+        type = type.trim();
+        return type.equals("application/json") || type.endsWith("+json") || type.equals("text/json");
+    }
+
+    /**
+     * Compares the documents.
+     *
+     * @throws InterruptedIOException The thread was interrupted.
+     */
+    public void diff(Object a, Object b) throws InterruptedIOException {
+        diff("$", a, b);
+    }
+
+    private void diff(String path, Object a, Object b) throws InterruptedIOException {
+        if (++compared % CHECK_INTERVAL == 0 && Thread.interrupted()) {
+            throw new InterruptedIOException("Diff interrupted.");
+        }
+        if (a instanceof Map && b instanceof Map) {
+            diffObjects(path, (Map<?, ?>) a, (Map<?, ?>) b);
+        } else if (a instanceof List && b instanceof List) {
+            diffArrays(path, (List<?>) a, (List<?>) b);
+        } else if (a == null ? b != null : !a.equals(b)) {
+            listener.difference(Kind.CHANGED, path, a, b);
+        }
+    }
+
+    private void diffObjects(String path, Map<?, ?> a, Map<?, ?> b) throws InterruptedIOException {
+        for (Map.Entry<?, ?> e : a.entrySet()) {
+            String member = member(path, (String) e.getKey());
+            if (b.containsKey(e.getKey())) {
+                diff(member, e.getValue(), b.get(e.getKey()));
+            } else {
+                listener.difference(Kind.REMOVED, member, e.getValue(), null);
+            }
+        }
+        for (Map.Entry<?, ?> e : b.entrySet()) {
+            if (!a.containsKey(e.getKey())) {
+                listener.difference(Kind.ADDED, member(path, (String) e.getKey()), null, e.getValue());
+            }
+        }
+    }
+
+    private void diffArrays(String path, List<?> a, List<?> b) throws InterruptedIOException {
+        if (a.equals(b)) {
+            return;
+        }
+        // equal elements get equal numbers.
+        Map<Object, Integer> numbers = new HashMap<Object, Integer>();
+        int[] x = number(a, numbers);
+        int[] y = number(b, numbers);
+        final List<int[]> changes = new ArrayList<int[]>();
+        new Myers(x, y).diff(new Myers.Listener() {
+            public void changed(int aStart, int aEnd, int bStart, int bEnd) {
+                changes.add(new int[]{aStart, aEnd, bStart, bEnd});
+            }
+        });
+        for (int[] change : changes) {
+            int i = change[0];
+            int j = change[2];
+            for (; i < change[1] && j < change[3]; i++, j++) {
+                String element = (i == j) ? path + '[' + i + ']' : path + '[' + i + '>' + j + ']';
+                diff(element, a.get(i), b.get(j));
+            }
+            for (; i < change[1]; i++) {
+                listener.difference(Kind.REMOVED, path + '[' + i + ']', a.get(i), null);
+            }
+            for (; j < change[3]; j++) {
+                listener.difference(Kind.ADDED, path + '[' + j + ']', null, b.get(j));
+            }
+        }
+    }
+
+    private static int[] number(List<?> list, Map<Object, Integer> numbers) {
+        int[] x = new int[list.size()];
+        for (int i = 0; i < x.length; i++) {
+            Integer number = numbers.get(list.get(i));
+            if (number == null) {
+                number = numbers.size();
+                numbers.put(list.get(i), number);
+            }
+            x[i] = number;
+        }
+        return x;
+    }
+
+    /**
+     * @return The path of a member, with the name quoted unless it is a
+     * plain identifier.
+     */
+    private static String member(String path, String name) {
+        boolean plain = !name.isEmpty() && Character.isJavaIdentifierStart(name.charAt(0));
+        for (int i = 1; plain && i < name.length(); i++) {
+            plain = Character.isJavaIdentifierPart(name.charAt(i));
+        }
+        if (plain) {
+            return path + '.' + name;
+        }
+        StringBuilder sb = new StringBuilder(path).append('[');
+        try {
+            Json.quote(sb, name);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.append(']').toString();
+    }
+}
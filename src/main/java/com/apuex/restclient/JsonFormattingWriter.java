@@ -0,0 +1,120 @@
+package com.apuex.restclient;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.BitSet;
+
+/**
+ * Formats JSON, one member or element per line, indented by nesting depth.
+ * Several values in a row, as in JSON lines, are written one after another.
+ *
+ * @author wangxy
+ */
+class JsonFormattingWriter extends FormattingWriter {
+
+    /**
+     * Whether each open container is an object rather than an array.
+     */
+    private final BitSet objects = new BitSet();
+    private int depth;
+    private boolean inString;
+    private boolean escape;
+    private boolean expectKey;
+    /**
+     * Set after an opening bracket, whose line break is held back until
+     * it is clear the container is not empty.
+     */
+    private boolean open;
+    private boolean started;
+
+    JsonFormattingWriter(Writer out, TokenListener listener) {
+        super(out, listener);
+    }
+
+    @Override
+    protected void format(char c) throws IOException {
+        if (inString) {
+            emit(c);
+            if (escape) {
+                escape = false;
+            } else if (c == '\\') {
+                escape = true;
+            } else if (c == '"') {
+                inString = false;
+                end();
+            }
+            return;
+        }
+        if (Character.isWhitespace(c)) {
+            end();
+            return;
+        }
+        if (open) {
+            open = false;
+            if (c == '}' || c == ']') {
+                end();
+                emit(c);
+                depth--;
+                expectKey = false;
+                return;
+            }
+            newLine(depth);
+        }
+        switch (c) {
+            case '{':
+            case '[':
+                startValue();
+                emit(c);
+                objects.set(depth, c == '{');
+                depth++;
+                open = true;
+                expectKey = (c == '{');
+                break;
+            case '}':
+            case ']':
+                end();
+                if (depth > 0) {
+                    depth--;
+                }
+                newLine(depth);
+                emit(c);
+                expectKey = false;
+                break;
+            case ',':
+                end();
+                emit(',');
+                newLine(depth);
+                expectKey = depth > 0 && objects.get(depth - 1);
+                break;
+            case ':':
+                end();
+                emit(": ");
+                expectKey = false;
+                break;
+            case '"':
+                startValue();
+                begin(expectKey ? Token.KEY : Token.STRING);
+                emit(c);
+                inString = true;
+                break;
+            default:
+                if (!inToken()) {
+                    startValue();
+                    begin(c == '-' || (c >= '0' && c <= '9') ? Token.NUMBER : Token.LITERAL);
+                }
+                emit(c);
+        }
+    }
+
+    /**
+     * Ends the previous token and puts each top level value on a line of
+     * its own.
+     */
+    private void startValue() throws IOException {
+        end();
+        if (depth == 0 && started) {
+            newLine(0);
+        }
+        started = true;
+    }
+}
@@ -0,0 +1,99 @@
+package com.apuex.restclient;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.Locale;
+
+/**
+ * Plots the latencies of the last {@link #CAPACITY} runs of a
+ * {@link Poller}, oldest first, scaled to the slowest of them. Runs, whose
+ * response changed, are marked by a vertical line and failed runs by a red
+ * dot.
+ *
+ * @author wangxy
+ */
+public class LatencyPlot extends JComponent {
+
+    public static final int CAPACITY = 300;
+
+    private static final Color LINE = new Color(0x2060c0);
+    private static final Color CHANGE = new Color(0xf0a030);
+    private static final Color FAILURE = new Color(0xd03030);
+    private static final int GAP = 4;
+
+    private final long[] millis = new long[CAPACITY];
+    private final byte[] flags = new byte[CAPACITY];
+    private int next;
+    private int count;
+
+    public LatencyPlot() {
+        setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        setBackground(Color.WHITE);
+        setOpaque(true);
+    }
+
+    /**
+     * Adds the latest run, dropping the oldest one once full. Must be called
+     * on the event dispatch thread.
+     */
+    public void add(Poller.Sample sample) {
+        millis[next] = sample.getMillis();
+        flags[next] = (byte) ((sample.isChanged() ? 1 : 0) | (sample.isFailed() ? 2 : 0));
+        next = (next + 1) % CAPACITY;
+        count = Math.min(count + 1, CAPACITY);
+        repaint();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        FontMetrics fm = getFontMetrics(getFont());
+        Insets insets = getInsets();
+        return new Dimension(200 + insets.left + insets.right, 5 * fm.getHeight() + insets.top + insets.bottom);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        g.setFont(getFont());
+        FontMetrics fm = g.getFontMetrics();
+        Insets insets = getInsets();
+        long max = 1;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, millis[i]);
+        }
+        String label = String.format(Locale.ROOT, "%d ms", max);
+        g.setColor(getForeground());
+        g.drawString(label, insets.left, insets.top + fm.getAscent());
+        int x0 = insets.left + fm.stringWidth(label) + GAP;
+        int top = insets.top + fm.getAscent() / 2;
+        int bottom = getHeight() - insets.bottom - 1;
+        int width = Math.max(getWidth() - insets.right - x0, 1);
+        int height = Math.max(bottom - top, 1);
+        g.setColor(Color.LIGHT_GRAY);
+        g.drawLine(x0, bottom, x0 + width, bottom);
+
+        int first = (count < CAPACITY) ? 0 : next;
+        int lastX = -1;
+        int lastY = -1;
+        for (int i = 0; i < count; i++) {
+            int index = (first + i) % CAPACITY;
+            int x = x0 + (int) ((long) i * width / CAPACITY);
+            int y = bottom - (int) (millis[index] * height / max);
+            if ((flags[index] & 1) != 0) {
+                g.setColor(CHANGE);
+                g.drawLine(x, top, x, bottom);
+            }
+            g.setColor(LINE);
+            if (lastX >= 0) {
+                g.drawLine(lastX, lastY, x, y);
+            }
+            if ((flags[index] & 2) != 0) {
+                g.setColor(FAILURE);
+                g.fillOval(x - 2, y - 2, 5, 5);
+            }
+            lastX = x;
+            lastY = y;
+        }
+    }
+}
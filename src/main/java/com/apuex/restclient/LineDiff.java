@@ -0,0 +1,223 @@
+package com.apuex.restclient;
+
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Compares two text files line by line, e.g. two spooled response bodies.
+ * <p>
+ * The files are read through {@link MappedTextFile}s, once, to number
+ * their lines so that equal lines get equal numbers; lines are compared by
+ * hash and then byte by byte, ignoring a trailing '\r'. The numbers are
+ * then compared by {@link Myers}. Memory is linear in the number of lines:
+ * a line start and a number per line, plus one entry per distinct line,
+ * which refers to the line in the file rather than copying it.
+ *
+ * @author wangxy
+ */
+public class LineDiff {
+
+    /**
+     * The number of lines numbered between checks for interruption.
+     */
+    private static final int CHECK_INTERVAL = 1 << 14;
+
+    /**
+     * The multiplicative inverse of 31 modulo 2^32, to take the last byte
+     * out of a hash.
+     */
+    private static final int INVERSE_31 = 0xbdef7bdf;
+
+    private final Lines a;
+    private final Lines b;
+
+    /**
+     * Distinct lines, by number: the hash, file, start and length of their
+     * first occurrence.
+     */
+    private int[] hashes = new int[1024];
+    private MappedTextFile[] files = new MappedTextFile[1024];
+    private long[] starts = new long[1024];
+    private int[] lengths = new int[1024];
+    private int count;
+    /**
+     * Open addressing hash table of line numbers plus one, 0 for free slots.
+     */
+    private int[] table = new int[2048];
+
+    public LineDiff(MappedTextFile a, MappedTextFile b) {
+        this.a = new Lines(a);
+        this.b = new Lines(b);
+    }
+
+    public Lines getA() {
+        return a;
+    }
+
+    public Lines getB() {
+        return b;
+    }
+
+    /**
+     * Compares the files, reporting the changed line ranges in order as they
+     * are found. Line starts remain available from {@link #getA()} and
+     * {@link #getB()} afterwards, to show the lines.
+     *
+     * @throws InterruptedIOException The thread was interrupted.
+     */
+    public void diff(Myers.Listener listener) throws InterruptedIOException {
+        int[] x = number(a);
+        int[] y = number(b);
+        // only needed for numbering.
+        hashes = null;
+        files = null;
+        starts = null;
+        lengths = null;
+        table = null;
+        new Myers(x, y).diff(listener);
+    }
+
+    /**
+     * Splits the file into lines and numbers them.
+     */
+    private int[] number(Lines lines) throws InterruptedIOException {
+        MappedTextFile file = lines.file;
+        long length = file.length();
+        long[] lineStarts = new long[1024];
+        int[] numbers = new int[1024];
+        int n = 0;
+        long start = 0;
+        int hash = 0;
+        for (long p = 0; p < length; p++) {
+            byte c = file.get(p);
+            if (c != '\n') {
+                hash = 31 * hash + c;
+                continue;
+            }
+            if (n + 2 > lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+                numbers = Arrays.copyOf(numbers, numbers.length * 2);
+            }
+            lineStarts[n] = start;
+            numbers[n++] = numberOf(file, start, p, hash);
+            start = p + 1;
+            hash = 0;
+            if ((n & (CHECK_INTERVAL - 1)) == 0 && Thread.interrupted()) {
+                throw new InterruptedIOException("Diff interrupted.");
+            }
+        }
+        if (start < length) {
+            // the last line lacks a line break.
+            lineStarts[n] = start;
+            numbers[n++] = numberOf(file, start, length, hash);
+            lineStarts[n] = length + 1;
+        } else {
+            lineStarts[n] = start;
+        }
+        lines.starts = lineStarts;
+        lines.count = n;
+        return Arrays.copyOf(numbers, n);
+    }
+
+    /**
+     * @param hash The hash of the line, including a trailing '\r'.
+     * @return The number of the line [start, end) of the file, a new one
+     * unless an equal line has been numbered before.
+     */
+    private int numberOf(MappedTextFile file, long start, long end, int hash) {
+        if (end > start && file.get(end - 1) == '\r') {
+            hash = (hash - '\r') * INVERSE_31;
+            end--;
+        }
+        int length = (int) (end - start);
+        int mask = table.length - 1;
+        int i = mix(hash) & mask;
+        for (int number; (number = table[i]) != 0; i = (i + 1) & mask) {
+            number--;
+            if (hashes[number] == hash && lengths[number] == length
+                    && equal(files[number], starts[number], file, start, length)) {
+                return number;
+            }
+        }
+        if (count == hashes.length) {
+            hashes = Arrays.copyOf(hashes, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+            starts = Arrays.copyOf(starts, count * 2);
+            files = Arrays.copyOf(files, count * 2);
+        }
+        hashes[count] = hash;
+        files[count] = file;
+        starts[count] = start;
+        lengths[count] = length;
+        table[i] = ++count;
+        if (count * 2 > table.length) {
+            rehash();
+        }
+        return count - 1;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int number = 0; number < count; number++) {
+            int i = mix(hashes[number]) & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = number + 1;
+        }
+    }
+
+    private static boolean equal(MappedTextFile f1, long p1, MappedTextFile f2, long p2, int length) {
+        for (int i = 0; i < length; i++) {
+            if (f1.get(p1 + i) != f2.get(p2 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The lines of one of the files, once compared.
+     */
+    public static class Lines {
+
+        private final MappedTextFile file;
+        /**
+         * The start of each line, followed by the start of the next line
+         * had there been one.
+         */
+        private long[] starts;
+        private int count;
+
+        Lines(MappedTextFile file) {
+            this.file = file;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        /**
+         * @param line    The line number, starting at 0.
+         * @param charset The charset of the file.
+         * @return The line, without its line break.
+         */
+        public String get(int line, Charset charset) {
+            long start = starts[line];
+            int length = (int) (starts[line + 1] - 1 - start);
+            if (length > 0 && file.get(start + length - 1) == '\r') {
+                length--;
+            }
+            byte[] bytes = new byte[length];
+            file.get(start, bytes, 0, length);
+            return new String(bytes, charset);
+        }
+    }
+}
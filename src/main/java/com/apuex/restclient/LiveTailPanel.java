@@ -0,0 +1,289 @@
+package com.apuex.restclient;
+
+import javax.swing.*;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.text.MessageFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.ResourceBundle;
+import java.util.concurrent.Executor;
+
+/**
+ * Tails an {@link EventStream} live. The events arriving in between are
+ * added to the list a batch at a time by a Swing timer, and only the last
+ * {@link #CAPACITY} events are kept, in a ring buffer, so that a stream
+ * of thousands of events per minute may be followed for as long as it
+ * runs. The selected event is shown in full below the list.
+ *
+ * @author wangxy
+ */
+public class LiveTailPanel extends JPanel implements EventStream.Listener {
+
+    public static final int CAPACITY = 2000;
+
+    private static final int REFRESH_INTERVAL = 200;
+    private static final int RATE_INTERVAL = 1000;
+
+    public LiveTailPanel(ResourceBundle bundle) {
+        this.bundle = bundle;
+        initComponents();
+    }
+
+    private void initComponents() {
+        status = new JLabel();
+        stopButton = new JButton();
+        clearButton = new JButton();
+        closeButton = new JButton();
+        follow = new JCheckBox();
+        model = new EventListModel();
+        events = new JList<EventStream.Event>(model);
+        detail = new JTextArea();
+
+        setLayout(new BorderLayout());
+
+        JPanel toolBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 2));
+        toolBar.add(status);
+
+        stopButton.setText(bundle.getString("poll.stop"));
+        stopButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                stop();
+            }
+        });
+        toolBar.add(stopButton);
+
+        clearButton.setText(bundle.getString("tail.clear"));
+        clearButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                model.clear();
+                detail.setText("");
+            }
+        });
+        toolBar.add(clearButton);
+
+        follow.setText(bundle.getString("tail.follow"));
+        follow.setSelected(true);
+        toolBar.add(follow);
+
+        closeButton.setText(bundle.getString("close.response"));
+        closeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                close();
+            }
+        });
+        toolBar.add(closeButton);
+        add(toolBar, BorderLayout.NORTH);
+
+        events.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        // a fixed cell height lets the list lay out only the visible rows.
+        events.setFixedCellHeight(events.getFontMetrics(events.getFont()).getHeight() + 2);
+        events.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, summary((EventStream.Event) value),
+                        index, isSelected, cellHasFocus);
+            }
+        });
+        events.addListSelectionListener(new ListSelectionListener() {
+            public void valueChanged(ListSelectionEvent evt) {
+                EventStream.Event event = events.getSelectedValue();
+                if (event != null) {
+                    detail.setText(event.getData());
+                    detail.setCaretPosition(0);
+                }
+            }
+        });
+        detail.setEditable(false);
+        detail.setRows(4);
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                new JScrollPane(events), new JScrollPane(detail));
+        split.setResizeWeight(0.8);
+        add(split, BorderLayout.CENTER);
+
+        timer = new Timer(REFRESH_INTERVAL, new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                refresh();
+            }
+        });
+    }
+
+    /**
+     * Starts following the stream of the given request on the executor.
+     * Must be called on the event dispatch thread.
+     */
+    public void start(Executor executor, RestClient client, RequestSpec request) {
+        stream = new EventStream(client, request, this);
+        rateTime = System.currentTimeMillis();
+        timer.start();
+        executor.execute(new Runnable() {
+            public void run() {
+                stream.run();
+            }
+        });
+    }
+
+    public void connected(Response response) {
+        synchronized (pending) {
+            connection = MessageFormat.format(bundle.getString("tail.connected"), response.getStatusLine());
+        }
+    }
+
+    public void event(EventStream.Event event) {
+        synchronized (pending) {
+            if (pending.size() == CAPACITY) {
+                // the list would drop it anyway.
+                pending.removeFirst();
+            }
+            pending.addLast(event);
+        }
+    }
+
+    public void disconnected(Exception cause, long retry) {
+        String text = (cause != null) ? cause.toString() : bundle.getString("tail.ended");
+        synchronized (pending) {
+            connection = MessageFormat.format(bundle.getString(retry < 0 ? "tail.over" : "tail.reconnecting"),
+                    text, retry / 1000.0);
+        }
+    }
+
+    private void refresh() {
+        EventStream.Event[] batch;
+        String text;
+        synchronized (pending) {
+            batch = pending.toArray(new EventStream.Event[pending.size()]);
+            pending.clear();
+            text = connection;
+        }
+        if (batch.length > 0) {
+            model.addAll(batch);
+            if (follow.isSelected()) {
+                events.ensureIndexIsVisible(model.getSize() - 1);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - rateTime >= RATE_INTERVAL) {
+            long count = stream.getEventCount();
+            rate = (count - rateCount) * 1000.0 / (now - rateTime);
+            rateCount = count;
+            rateTime = now;
+        }
+        String lastId = stream.getLastEventId();
+        status.setText(MessageFormat.format(bundle.getString("tail.status"), stream.getEventCount(), rate,
+                stream.getConnectionCount(), lastId != null ? lastId : "-")
+                + (text != null ? text : ""));
+        if (stream.isStopped() && batch.length == 0) {
+            timer.stop();
+            stopButton.setEnabled(false);
+        }
+    }
+
+    private String summary(EventStream.Event event) {
+        StringBuilder sb = new StringBuilder(timeFormat.format(new Date(event.getTime())));
+        if (event.getType() != null) {
+            sb.append(" [").append(event.getType()).append(']');
+        }
+        if (event.getId() != null) {
+            sb.append(" #").append(event.getId());
+        }
+        String data = event.getData();
+        sb.append(' ').append(data.length() > 500 ? data.substring(0, 500) : data);
+        for (int i = 0; i < sb.length(); i++) {
+            if (sb.charAt(i) == '\n') {
+                sb.setCharAt(i, ' ');
+            }
+        }
+        return sb.toString();
+    }
+
+    private void stop() {
+        if (stream != null) {
+            stream.stop();
+        }
+    }
+
+    private void close() {
+        stop();
+        timer.stop();
+        Container parent = getParent();
+        if (parent != null) {
+            parent.remove(this);
+            parent.validate();
+            parent.repaint();
+        }
+    }
+
+    /**
+     * The last {@link #CAPACITY} events, in a ring buffer.
+     */
+    private static class EventListModel extends AbstractListModel<EventStream.Event> {
+
+        private final EventStream.Event[] ring = new EventStream.Event[CAPACITY];
+        private int first;
+        private int size;
+
+        public int getSize() {
+            return size;
+        }
+
+        public EventStream.Event getElementAt(int index) {
+            return ring[(first + index) % CAPACITY];
+        }
+
+        void addAll(EventStream.Event[] batch) {
+            int dropped = Math.max(0, size + batch.length - CAPACITY);
+            int from = Math.max(0, batch.length - CAPACITY);
+            int removed = Math.min(dropped, size);
+            for (int i = from; i < batch.length; i++) {
+                ring[(first + size) % CAPACITY] = batch[i];
+                if (size < CAPACITY) {
+                    size++;
+                } else {
+                    first = (first + 1) % CAPACITY;
+                }
+            }
+            if (removed > 0) {
+                fireIntervalRemoved(this, 0, removed - 1);
+            }
+            int added = batch.length - from;
+            fireIntervalAdded(this, size - added, size - 1);
+        }
+
+        void clear() {
+            int n = size;
+            first = 0;
+            size = 0;
+            Arrays.fill(ring, null);
+            if (n > 0) {
+                fireIntervalRemoved(this, 0, n - 1);
+            }
+        }
+    }
+
+    // Variables declaration
+    private JLabel status;
+    private JButton stopButton;
+    private JButton clearButton;
+    private JButton closeButton;
+    private JCheckBox follow;
+    private EventListModel model;
+    private JList<EventStream.Event> events;
+    private JTextArea detail;
+    private Timer timer;
+    private ResourceBundle bundle;
+    private EventStream stream;
+    private final ArrayDeque<EventStream.Event> pending = new ArrayDeque<EventStream.Event>();
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+    private String connection;
+    private long rateTime;
+    private long rateCount;
+    private double rate;
+    // End of variables declaration
+}
@@ -0,0 +1,237 @@
+package com.apuex.restclient;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the same request repeatedly from a number of concurrent workers
+ * through {@link RestClient#send(RequestSpec, RequestMonitor)}, i.e. the
+ * same path used by {@link MainFrame}, and records the latency of each
+ * request in a {@link LatencyHistogram}.
+ * <p>
+ * The test stops when the request count or the duration is reached,
+ * whichever comes first, or when {@link #cancel()} is called. Requests may
+ * be paced to a target rate, which is shared by all workers. Paced
+ * requests have their latency measured from the time they were scheduled
+ * to be sent rather than the time they were sent, so that requests held
+ * back by a stalled server count the time they waited, rather than being
+ * omitted ("coordinated omission"); the time from the actual send is
+ * recorded apart, as the service time.
+ *
+ * @author wangxy
+ */
+public class LoadTest {
+
+    private final RestClient client;
+    private final RequestSpec request;
+    private final int concurrency;
+    private final long totalRequests;
+    private final long durationMillis;
+    private final long intervalNanos;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LatencyHistogram serviceTimes = new LatencyHistogram();
+    private final ConcurrentHashMap<String, AtomicLong> outcomes = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong nextSendNanos = new AtomicLong();
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile boolean cancelled;
+
+    /**
+     * @param client         The client to send with.
+     * @param request        The request to send.
+     * @param concurrency    Number of concurrent workers.
+     * @param totalRequests  Number of requests to send, 0 meaning unbounded.
+     * @param durationMillis Duration of the test, 0 meaning unbounded.
+     * @param targetRps      Requests per second to pace to, 0 meaning as
+     *                       fast as possible.
+     */
+    public LoadTest(RestClient client, RequestSpec request, int concurrency,
+                    long totalRequests, long durationMillis, double targetRps) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency < 1");
+        }
+        if (totalRequests <= 0 && durationMillis <= 0) {
+            throw new IllegalArgumentException("Either a request count or a duration is required.");
+        }
+        this.client = client;
+        this.request = request;
+        this.concurrency = concurrency;
+        this.totalRequests = totalRequests;
+        this.durationMillis = durationMillis;
+        this.intervalNanos = (targetRps > 0) ? (long) (1e9 / targetRps) : 0;
+    }
+
+    /**
+     * Runs the test on the calling thread and the worker threads it starts,
+     * returning once all workers have finished.
+     */
+    public void run() throws InterruptedException {
+        startNanos = System.nanoTime();
+        nextSendNanos.set(startNanos);
+        final long deadline = (durationMillis > 0)
+                ? startNanos + durationMillis * 1000000L : Long.MAX_VALUE;
+        final CountDownLatch finished = new CountDownLatch(concurrency);
+        Thread[] workers = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        work(deadline);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }, "load-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        } finally {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void work(long deadline) {
+        while (!cancelled) {
+            if (totalRequests > 0 && started.incrementAndGet() > totalRequests) {
+                return;
+            }
+            long slot = 0;
+            if (intervalNanos > 0) {
+                slot = nextSendNanos.getAndAdd(intervalNanos);
+                long wait;
+                while ((wait = slot - System.nanoTime()) > 0 && !cancelled) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            long begin = System.nanoTime();
+            if (begin >= deadline || cancelled) {
+                return;
+            }
+            RequestMonitor monitor = new RequestMonitor();
+            String outcome;
+            try {
+                client.send(request, monitor);
+                int code = monitor.getResponseCode();
+                outcome = Integer.toString(code);
+                if (code >= 400) {
+                    errors.incrementAndGet();
+                }
+            } catch (Exception e) {
+                outcome = e.getClass().getSimpleName();
+                errors.incrementAndGet();
+            }
+            long end = System.nanoTime();
+            serviceTimes.record((end - begin) / 1000L);
+            histogram.record((end - ((intervalNanos > 0) ? slot : begin)) / 1000L);
+            count(outcome);
+        }
+    }
+
+    private void count(String outcome) {
+        AtomicLong counter = outcomes.get(outcome);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = outcomes.putIfAbsent(outcome, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * @return The latencies in microseconds, from the time each request was
+     * scheduled to be sent if paced, or else from the time it was sent.
+     */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * @return The latencies in microseconds from the time each request was
+     * actually sent, which are those of {@link #getHistogram()} unless
+     * paced.
+     */
+    public LatencyHistogram getServiceTimes() {
+        return serviceTimes;
+    }
+
+    public long getCompleted() {
+        return histogram.getTotalCount();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return Requests completed per second so far.
+     */
+    public double getThroughput() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = (endNanos == 0) ? System.nanoTime() : endNanos;
+        return (end > start) ? getCompleted() * 1e9 / (end - start) : 0;
+    }
+
+    /**
+     * @return Number of responses per status code, and of failed requests
+     * per exception type.
+     */
+    public Map<String, Long> getOutcomes() {
+        TreeMap<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> e : outcomes.entrySet()) {
+            result.put(e.getKey(), e.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * @return A plain text report of the results so far. May be called
+     * while the test is running.
+     */
+    public String formatReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("requests:   %d (%d errors)%n", getCompleted(), getErrors()));
+        sb.append(String.format("throughput: %.1f requests/s%n", getThroughput()));
+        formatLatency(sb, "latency:   ", histogram);
+        if (intervalNanos > 0) {
+            // the latency above counts from the scheduled send.
+            formatLatency(sb, "service:   ", serviceTimes);
+        }
+        sb.append(String.format("responses:%n"));
+        for (Map.Entry<String, Long> e : getOutcomes().entrySet()) {
+            sb.append(String.format("  %-22s %d%n", e.getKey(), e.getValue()));
+        }
+        return sb.toString();
+    }
+
+    private static void formatLatency(StringBuilder sb, String title, LatencyHistogram histogram) {
+        sb.append(String.format("%s min %.3f ms, mean %.3f ms, max %.3f ms%n", title,
+                histogram.getMinValue() / 1000.0, histogram.getMean() / 1000.0,
+                histogram.getMaxValue() / 1000.0));
+        double[] percentiles = {50, 90, 99, 99.9};
+        for (double p : percentiles) {
+            sb.append(String.format("  p%-6s   %.3f ms%n", p == (long) p ? Long.toString((long) p) : Double.toString(p),
+                    histogram.getValueAtPercentile(p) / 1000.0));
+        }
+    }
+}
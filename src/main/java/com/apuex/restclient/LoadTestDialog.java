@@ -0,0 +1,169 @@
+package com.apuex.restclient;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ResourceBundle;
+
+/**
+ * Runs a {@link LoadTest} for the request composed in {@link MainFrame}
+ * and shows its report while it runs.
+ *
+ * @author wangxy
+ */
+public class LoadTestDialog extends JDialog {
+
+    private static final int REFRESH_INTERVAL = 500;
+
+    public LoadTestDialog(Frame owner, ResourceBundle bundle, RequestSpec request) {
+        super(owner, false);
+        this.bundle = bundle;
+        this.request = request;
+        initComponents();
+    }
+
+    private void initComponents() {
+        GridBagConstraints gridBagConstraints;
+
+        concurrency = new JSpinner(new SpinnerNumberModel(10, 1, 10000, 1));
+        totalRequests = new JSpinner(new SpinnerNumberModel(1000, 0, Integer.MAX_VALUE, 100));
+        duration = new JSpinner(new SpinnerNumberModel(0, 0, 86400, 10));
+        targetRps = new JSpinner(new SpinnerNumberModel(0, 0, 1000000, 10));
+        startButton = new JButton();
+        report = new JTextArea();
+
+        setTitle(bundle.getString("load.test") + " - " + request);
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent evt) {
+                stop();
+            }
+        });
+        getContentPane().setLayout(new GridBagLayout());
+
+        addField(0, "load.concurrency", concurrency);
+        addField(1, "load.requests", totalRequests);
+        addField(2, "load.duration", duration);
+        addField(3, "load.rps", targetRps);
+
+        startButton.setText(bundle.getString("load.start"));
+        startButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                startButtonActionPerformed(evt);
+            }
+        });
+        gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 4;
+        gridBagConstraints.anchor = GridBagConstraints.EAST;
+        gridBagConstraints.insets = new Insets(2, 2, 2, 2);
+        getContentPane().add(startButton, gridBagConstraints);
+
+        report.setEditable(false);
+        report.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        report.setColumns(50);
+        report.setRows(16);
+        gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 5;
+        gridBagConstraints.gridwidth = GridBagConstraints.REMAINDER;
+        gridBagConstraints.fill = GridBagConstraints.BOTH;
+        gridBagConstraints.weightx = 1.0;
+        gridBagConstraints.weighty = 1.0;
+        gridBagConstraints.insets = new Insets(2, 2, 2, 2);
+        getContentPane().add(new JScrollPane(report), gridBagConstraints);
+
+        timer = new Timer(REFRESH_INTERVAL, new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                updateReport();
+            }
+        });
+        pack();
+        setLocationRelativeTo(getOwner());
+    }
+
+    private void addField(int row, String key, JComponent field) {
+        GridBagConstraints gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = row;
+        gridBagConstraints.anchor = GridBagConstraints.EAST;
+        gridBagConstraints.insets = new Insets(2, 2, 2, 2);
+        getContentPane().add(new JLabel(bundle.getString(key)), gridBagConstraints);
+
+        gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = row;
+        gridBagConstraints.fill = GridBagConstraints.HORIZONTAL;
+        gridBagConstraints.weightx = 1.0;
+        gridBagConstraints.insets = new Insets(2, 2, 2, 2);
+        getContentPane().add(field, gridBagConstraints);
+    }
+
+    private void startButtonActionPerformed(ActionEvent evt) {
+        if (loadTest != null) {
+            stop();
+            return;
+        }
+        int workers = ((Number) concurrency.getValue()).intValue();
+        try {
+            loadTest = new LoadTest(new RestClient(workers), request, workers,
+                    ((Number) totalRequests.getValue()).longValue(),
+                    ((Number) duration.getValue()).longValue() * 1000L,
+                    ((Number) targetRps.getValue()).doubleValue());
+        } catch (IllegalArgumentException e) {
+            report.setText(e.getMessage());
+            return;
+        }
+        final LoadTest running = loadTest;
+        startButton.setText(bundle.getString("load.stop"));
+        timer.start();
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                running.run();
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                timer.stop();
+                report.setText(running.formatReport());
+                if (loadTest == running) {
+                    loadTest = null;
+                    startButton.setText(bundle.getString("load.start"));
+                }
+            }
+        }.execute();
+    }
+
+    private void stop() {
+        LoadTest running = loadTest;
+        if (running != null) {
+            running.cancel();
+        }
+    }
+
+    private void updateReport() {
+        LoadTest running = loadTest;
+        if (running != null) {
+            report.setText(running.formatReport());
+        }
+    }
+
+    // Variables declaration
+    private JSpinner concurrency;
+    private JSpinner totalRequests;
+    private JSpinner duration;
+    private JSpinner targetRps;
+    private JButton startButton;
+    private JTextArea report;
+    private Timer timer;
+    private ResourceBundle bundle;
+    private RequestSpec request;
+    private LoadTest loadTest;
+    // End of variables declaration
+}
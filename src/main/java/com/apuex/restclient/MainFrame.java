@@ -1,27 +1,57 @@
 package com.apuex.restclient;
 
+import javax.management.JMException;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowStateListener;
-import java.io.BufferedReader;
-import java.io.StringReader;
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author wangxy
  */
 public class MainFrame extends JFrame {
 
+    /**
+     * Idle connections kept alive per destination, enough for the requests
+     * of a load test of moderate concurrency to reuse their connections.
+     */
+    private static final int KEEP_ALIVE_CONNECTIONS = 100;
+
     /**
      * Creates new form MainFrame
      */
     public MainFrame() {
         bundle = ResourceBundle.getBundle("Bundle");
         initComponents();
+        client.setMetrics(metrics);
+        try {
+            // only creates the directory; the log is read once searched.
+            history = new History();
+        } catch (IOException ex) {
+            java.util.logging.Logger.getLogger(MainFrame.class.getName()).log(java.util.logging.Level.WARNING, null, ex);
+            historyButton.setEnabled(false);
+        }
+        try {
+            metrics.register(RequestMetrics.DEFAULT_NAME);
+        } catch (JMException ex) {
+            // another frame has registered its metrics already.
+            java.util.logging.Logger.getLogger(MainFrame.class.getName()).log(java.util.logging.Level.WARNING, null, ex);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -43,9 +73,22 @@ public class MainFrame extends JFrame {
         bodyPane = new JScrollPane();
         body = new JTextArea();
         sendButton = new JButton();
+        loadTestButton = new JButton();
+        watchButton = new JButton();
+        tailButton = new JButton();
+        historyButton = new JButton();
+        compareButton = new JButton();
+        attachButton = new JButton();
+        clearAttachmentsButton = new JButton();
+        attachmentsLabel = new JLabel();
+        downloadToFile = new JCheckBox();
+        useCache = new JCheckBox();
+        formatResponse = new JCheckBox();
+        retryRequests = new JCheckBox();
+        hedgeRequests = new JCheckBox();
+        recordExchanges = new JCheckBox();
         labelResponse = new JLabel();
-        responsePane = new JScrollPane();
-        response = new JTextArea();
+        responses = new JTabbedPane();
 
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         setTitle(bundle.getString("app"));
@@ -113,7 +156,7 @@ public class MainFrame extends JFrame {
         gridBagConstraints.insets = new Insets(2, 2, 2, 2);
         getContentPane().add(labelContentType, gridBagConstraints);
 
-        contentType.setModel(new DefaultComboBoxModel(new String[]{"application/json", "application/xml", "text/html", "text/plain"}));
+        contentType.setModel(new DefaultComboBoxModel(new String[]{"application/json", "application/xml", "text/html", "text/plain", RequestSpec.MULTIPART_FORM_DATA}));
         contentType.setPreferredSize(new Dimension(160, 23));
         gridBagConstraints = new GridBagConstraints();
         gridBagConstraints.gridx = 6;
@@ -193,6 +236,84 @@ public class MainFrame extends JFrame {
         gridBagConstraints.insets = new Insets(2, 2, 2, 2);
         getContentPane().add(bodyPane, gridBagConstraints);
 
+        JPanel attachPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
+        attachButton.setMnemonic('F');
+        attachButton.setText(bundle.getString("attach.files"));
+        attachButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                attachButtonActionPerformed(evt);
+            }
+        });
+        attachPanel.add(attachButton);
+
+        clearAttachmentsButton.setText(bundle.getString("clear.files"));
+        clearAttachmentsButton.setEnabled(false);
+        clearAttachmentsButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                setAttachments(new ArrayList<File>());
+            }
+        });
+        attachPanel.add(clearAttachmentsButton);
+        attachPanel.add(attachmentsLabel);
+
+        downloadToFile.setMnemonic('D');
+        downloadToFile.setText(bundle.getString("download.to.file"));
+        attachPanel.add(downloadToFile);
+
+        useCache.setMnemonic('E');
+        useCache.setText(bundle.getString("use.cache"));
+        useCache.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                useCacheActionPerformed(evt);
+            }
+        });
+        attachPanel.add(useCache);
+
+        formatResponse.setMnemonic('P');
+        formatResponse.setText(bundle.getString("format.response"));
+        formatResponse.setSelected(true);
+        attachPanel.add(formatResponse);
+
+        ActionListener retryListener = new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                retryActionPerformed(evt);
+            }
+        };
+        retryRequests.setMnemonic('T');
+        retryRequests.setText(bundle.getString("retry.requests"));
+        retryRequests.addActionListener(retryListener);
+        attachPanel.add(retryRequests);
+
+        hedgeRequests.setMnemonic('G');
+        hedgeRequests.setText(bundle.getString("hedge.requests"));
+        hedgeRequests.addActionListener(retryListener);
+        attachPanel.add(hedgeRequests);
+
+        recordExchanges.setMnemonic('O');
+        recordExchanges.setText(bundle.getString("record.exchanges"));
+        recordExchanges.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                recordActionPerformed(evt);
+            }
+        });
+        attachPanel.add(recordExchanges);
+
+        compareButton.setMnemonic('K');
+        compareButton.setText(bundle.getString("compare.request"));
+        compareButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                compareButtonActionPerformed(evt);
+            }
+        });
+        attachPanel.add(compareButton);
+        gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 2;
+        gridBagConstraints.gridy = 8;
+        gridBagConstraints.gridwidth = 5;
+        gridBagConstraints.anchor = GridBagConstraints.WEST;
+        gridBagConstraints.insets = new Insets(2, 2, 2, 2);
+        getContentPane().add(attachPanel, gridBagConstraints);
+
         sendButton.setMnemonic('S');
         sendButton.setText(bundle.getString("send.request"));
         sendButton.addActionListener(new ActionListener() {
@@ -207,6 +328,62 @@ public class MainFrame extends JFrame {
         gridBagConstraints.insets = new Insets(2, 2, 2, 2);
         getContentPane().add(sendButton, gridBagConstraints);
 
+        loadTestButton.setMnemonic('L');
+        loadTestButton.setText(bundle.getString("load.test"));
+        loadTestButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                loadTestButtonActionPerformed(evt);
+            }
+        });
+        gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 8;
+        gridBagConstraints.gridy = 8;
+        gridBagConstraints.anchor = GridBagConstraints.EAST;
+        gridBagConstraints.insets = new Insets(2, 2, 2, 2);
+        getContentPane().add(loadTestButton, gridBagConstraints);
+
+        watchButton.setMnemonic('W');
+        watchButton.setText(bundle.getString("watch.request"));
+        watchButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                watchButtonActionPerformed(evt);
+            }
+        });
+        gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 9;
+        gridBagConstraints.gridy = 8;
+        gridBagConstraints.anchor = GridBagConstraints.EAST;
+        gridBagConstraints.insets = new Insets(2, 2, 2, 2);
+        getContentPane().add(watchButton, gridBagConstraints);
+
+        tailButton.setMnemonic('I');
+        tailButton.setText(bundle.getString("tail.request"));
+        tailButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                tailButtonActionPerformed(evt);
+            }
+        });
+        gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 7;
+        gridBagConstraints.gridy = 8;
+        gridBagConstraints.anchor = GridBagConstraints.EAST;
+        gridBagConstraints.insets = new Insets(2, 2, 2, 2);
+        getContentPane().add(tailButton, gridBagConstraints);
+
+        historyButton.setMnemonic('Y');
+        historyButton.setText(bundle.getString("history.request"));
+        historyButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                historyButtonActionPerformed(evt);
+            }
+        });
+        gridBagConstraints = new GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 8;
+        gridBagConstraints.anchor = GridBagConstraints.WEST;
+        gridBagConstraints.insets = new Insets(2, 2, 2, 2);
+        getContentPane().add(historyButton, gridBagConstraints);
+
         labelResponse.setDisplayedMnemonic('R');
         labelResponse.setText(bundle.getString("response.body"));
         gridBagConstraints = new GridBagConstraints();
@@ -215,10 +392,7 @@ public class MainFrame extends JFrame {
         gridBagConstraints.anchor = GridBagConstraints.NORTHEAST;
         getContentPane().add(labelResponse, gridBagConstraints);
 
-        response.setColumns(20);
-        response.setRows(10);
-        responsePane.setViewportView(response);
-
+        responses.setPreferredSize(new Dimension(350, 200));
         gridBagConstraints = new GridBagConstraints();
         gridBagConstraints.gridx = 2;
         gridBagConstraints.gridy = 10;
@@ -227,7 +401,7 @@ public class MainFrame extends JFrame {
         gridBagConstraints.anchor = GridBagConstraints.WEST;
         gridBagConstraints.weightx = 1.0;
         gridBagConstraints.weighty = 1.0;
-        getContentPane().add(responsePane, gridBagConstraints);
+        getContentPane().add(responses, gridBagConstraints);
 
         pack();
     }
@@ -237,42 +411,285 @@ public class MainFrame extends JFrame {
     }
 
     private void sendButtonActionPerformed(ActionEvent evt) {
-        // TODO add your handling code here:
-        HashMap<String, String> headersMap = new HashMap<String, String>();
-        BufferedReader br = new BufferedReader(new StringReader(headers.getText()));
-        try {
-            while (true) {
-                String line = br.readLine();
-                if (line == null) {
-                    break;
-                }
-                String[] header = line.split(":");
-                if (header.length == 2) {
-                    headersMap.put(header[0], header[1]);
-                } else {
-                    // invalid header.
-                    response.setText(bundle.getString("invalid.headers"));
+        File target = null;
+        boolean resume = false;
+        if (downloadToFile.isSelected()) {
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            target = chooser.getSelectedFile();
+            if (target.exists()) {
+                int answer = JOptionPane.showConfirmDialog(this,
+                        MessageFormat.format(bundle.getString("download.resume"), target),
+                        bundle.getString("app"), JOptionPane.YES_NO_CANCEL_OPTION);
+                if (answer == JOptionPane.CANCEL_OPTION || answer == JOptionPane.CLOSED_OPTION) {
+                    return;
                 }
+                resume = (answer == JOptionPane.YES_OPTION);
             }
+        }
+
+        final ResponsePanel panel = new ResponsePanel(bundle);
+        responses.addTab(method.getSelectedItem() + " " + url.getText(), panel);
+        responses.setSelectedComponent(panel);
+
+        // read the form on the EDT, send on the executor.
+        final RequestSpec request;
+        try {
+            request = composeRequest();
         } catch (Exception e) {
-            e.printStackTrace();
-            response.setText(e.toString());
+            panel.setMessage(e.getMessage());
             return;
         }
+        if (target == null) {
+            panel.send(executor, client, request, formatResponse.isSelected(), history);
+            return;
+        }
+        final File file = target;
+        final boolean append = resume;
+        panel.execute(executor, new Callable<String>() {
+            public String call() throws Exception {
+                String result = client.download(request, file, append, panel.getMonitor());
+                return result + MessageFormat.format(bundle.getString("download.saved"),
+                        file, file.length());
+            }
+        });
+    }
+
+    private void loadTestButtonActionPerformed(ActionEvent evt) {
+        RequestSpec request;
+        try {
+            request = composeRequest();
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), bundle.getString("app"),
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        new LoadTestDialog(this, bundle, request).setVisible(true);
+    }
 
+    private void watchButtonActionPerformed(ActionEvent evt) {
+        RequestSpec request;
         try {
-            response.setText(HttpRequest.send(url.getText(),
-                    method.getSelectedItem().toString(),
-                    contentType.getSelectedItem().toString(),
-                    acceptContentType.getSelectedItem().toString(),
-                    headersMap,
-                    body.getText()
-            ).toString());
+            request = composeRequest();
         } catch (Exception e) {
-            e.printStackTrace();
-            response.setText(e.toString());
+            JOptionPane.showMessageDialog(this, e.getMessage(), bundle.getString("app"),
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        Object answer = JOptionPane.showInputDialog(this, bundle.getString("watch.interval"),
+                bundle.getString("app"), JOptionPane.QUESTION_MESSAGE, null, null, "5");
+        if (answer == null) {
+            return;
+        }
+        long interval;
+        try {
+            interval = Math.round(Double.parseDouble(answer.toString().trim()) * 1000);
+        } catch (NumberFormatException e) {
+            interval = 0;
+        }
+        if (interval < 1) {
+            JOptionPane.showMessageDialog(this, MessageFormat.format(bundle.getString("watch.invalid"), answer),
+                    bundle.getString("app"), JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        PollingPanel panel = new PollingPanel(bundle);
+        responses.addTab(bundle.getString("watch.tab") + " " + request.getUrl(), panel);
+        responses.setSelectedComponent(panel);
+        panel.start(executor, client, request, interval);
+    }
+
+    private void tailButtonActionPerformed(ActionEvent evt) {
+        RequestSpec request;
+        try {
+            request = composeRequest();
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), bundle.getString("app"),
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        LiveTailPanel panel = new LiveTailPanel(bundle);
+        responses.addTab(bundle.getString("tail.tab") + " " + request.getUrl(), panel);
+        responses.setSelectedComponent(panel);
+        panel.start(executor, client, request);
+    }
+
+    private void historyButtonActionPerformed(ActionEvent evt) {
+        HistoryPanel panel = new HistoryPanel(bundle, history, new HistoryPanel.Listener() {
+            public void restore(RequestSpec request) {
+                restoreRequest(request);
+            }
+        });
+        responses.addTab(bundle.getString("history.tab"), panel);
+        responses.setSelectedComponent(panel);
+        panel.search();
+    }
+
+    /**
+     * Compares the bodies of two completed responses, by default the last
+     * two.
+     */
+    private void compareButtonActionPerformed(ActionEvent evt) {
+        List<ResponsePanel> panels = new ArrayList<ResponsePanel>();
+        List<String> titles = new ArrayList<String>();
+        List<Integer> numbers = new ArrayList<Integer>();
+        for (int i = 0; i < responses.getTabCount(); i++) {
+            Component tab = responses.getComponentAt(i);
+            if (tab instanceof ResponsePanel && ((ResponsePanel) tab).getBodyFile() != null) {
+                panels.add((ResponsePanel) tab);
+                titles.add((i + 1) + ". " + responses.getTitleAt(i));
+                numbers.add(i + 1);
+            }
+        }
+        if (panels.size() < 2) {
+            JOptionPane.showMessageDialog(this, bundle.getString("compare.none"), bundle.getString("app"),
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        JComboBox<String> first = new JComboBox<String>(titles.toArray(new String[0]));
+        first.setSelectedIndex(panels.size() - 2);
+        JComboBox<String> second = new JComboBox<String>(titles.toArray(new String[0]));
+        second.setSelectedIndex(panels.size() - 1);
+        JPanel choice = new JPanel(new GridLayout(2, 2, 4, 4));
+        choice.add(new JLabel(bundle.getString("compare.first")));
+        choice.add(first);
+        choice.add(new JLabel(bundle.getString("compare.second")));
+        choice.add(second);
+        if (JOptionPane.showConfirmDialog(this, choice, bundle.getString("app"),
+                JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        ResponsePanel a = panels.get(first.getSelectedIndex());
+        ResponsePanel b = panels.get(second.getSelectedIndex());
+        DiffPanel panel = new DiffPanel(bundle);
+        responses.addTab(MessageFormat.format(bundle.getString("diff.tab"),
+                numbers.get(first.getSelectedIndex()), numbers.get(second.getSelectedIndex())), panel);
+        responses.setSelectedComponent(panel);
+        panel.compare(a.getBodyFile(), a.getBodyCharset(), a.getBodyType(),
+                b.getBodyFile(), b.getBodyCharset(), b.getBodyType());
+    }
+
+    /**
+     * Fills the form with a request sent before.
+     */
+    private void restoreRequest(RequestSpec request) {
+        url.setText(request.getUrl());
+        method.setSelectedItem(request.getMethod());
+        contentType.setSelectedItem(request.getContentType());
+        acceptContentType.setSelectedItem(request.getAcceptContentType());
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> h : request.getHeaders().entrySet()) {
+            sb.append(h.getKey()).append(": ").append(h.getValue()).append('\n');
+        }
+        headers.setText(sb.toString());
+        body.setText(request.getBody());
+        setAttachments(request.getAttachments());
+    }
+
+    private void useCacheActionPerformed(ActionEvent evt) {
+        if (!useCache.isSelected()) {
+            client.setCache(null);
+            return;
+        }
+        try {
+            if (cache == null) {
+                cache = new HttpCache();
+            }
+            client.setCache(cache);
+        } catch (IOException e) {
+            useCache.setSelected(false);
+            JOptionPane.showMessageDialog(this, e.getMessage(), bundle.getString("app"),
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void retryActionPerformed(ActionEvent evt) {
+        if (!retryRequests.isSelected() && !hedgeRequests.isSelected()) {
+            client.setRetryPolicy(null);
+            return;
+        }
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(retryRequests.isSelected() ? RetryPolicy.DEFAULT_MAX_ATTEMPTS : 1);
+        policy.setHedge(hedgeRequests.isSelected());
+        client.setRetryPolicy(policy);
+    }
+
+    private void recordActionPerformed(ActionEvent evt) {
+        if (!recordExchanges.isSelected()) {
+            client.setRecorder(null);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setDialogTitle(bundle.getString("record.directory"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            recordExchanges.setSelected(false);
             return;
         }
+        try {
+            client.setRecorder(new ExchangeStore(chooser.getSelectedFile()));
+        } catch (IOException e) {
+            recordExchanges.setSelected(false);
+            JOptionPane.showMessageDialog(this, e.getMessage(), bundle.getString("app"),
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void attachButtonActionPerformed(ActionEvent evt) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setMultiSelectionEnabled(true);
+        if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            List<File> files = new ArrayList<File>(attachments);
+            files.addAll(Arrays.asList(chooser.getSelectedFiles()));
+            setAttachments(files);
+        }
+    }
+
+    private void setAttachments(List<File> files) {
+        attachments = files;
+        long size = 0;
+        for (File f : files) {
+            size += f.length();
+        }
+        attachmentsLabel.setText(files.isEmpty() ? ""
+                : MessageFormat.format(bundle.getString("attached.files"), files.size(), size));
+        clearAttachmentsButton.setEnabled(!files.isEmpty());
+        body.setEnabled(files.isEmpty());
+    }
+
+    /**
+     * @return The request currently composed in the form.
+     * @throws IllegalArgumentException The request headers are invalid.
+     */
+    private RequestSpec composeRequest() {
+        Map<String, String> headersMap;
+        try {
+            headersMap = RequestSpec.parseHeaders(headers.getText());
+        } catch (IllegalArgumentException e) {
+            // invalid header.
+            throw new IllegalArgumentException(bundle.getString("invalid.headers"), e);
+        }
+        return new RequestSpec(url.getText(),
+                method.getSelectedItem().toString(),
+                contentType.getSelectedItem().toString(),
+                acceptContentType.getSelectedItem().toString(),
+                headersMap,
+                body.getText(),
+                attachments
+        );
+    }
+
+    private static ExecutorService newExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "request-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
     }
 
     /**
@@ -298,6 +715,7 @@ public class MainFrame extends JFrame {
         } catch (UnsupportedLookAndFeelException ex) {
             java.util.logging.Logger.getLogger(MainFrame.class.getName()).log(java.util.logging.Level.SEVERE, null, ex);
         }
+        RestClient.configureKeepAlive(KEEP_ALIVE_CONNECTIONS);
         /*
          * Create and display the form
          */
@@ -324,10 +742,29 @@ public class MainFrame extends JFrame {
     private JLabel labelResponse;
     private JLabel labelUrl;
     private JComboBox method;
-    private JTextArea response;
-    private JScrollPane responsePane;
+    private JTabbedPane responses;
     private JButton sendButton;
+    private JButton loadTestButton;
+    private JButton watchButton;
+    private JButton tailButton;
+    private JButton historyButton;
+    private JButton compareButton;
+    private JButton attachButton;
+    private JButton clearAttachmentsButton;
+    private JLabel attachmentsLabel;
+    private JCheckBox downloadToFile;
+    private JCheckBox useCache;
+    private JCheckBox formatResponse;
+    private JCheckBox retryRequests;
+    private JCheckBox hedgeRequests;
+    private JCheckBox recordExchanges;
+    private HttpCache cache;
+    private History history;
+    private List<File> attachments = new ArrayList<File>();
     private JTextField url;
     private ResourceBundle bundle;
+    private final ExecutorService executor = newExecutor();
+    private final RestClient client = new RestClient();
+    private final RequestMetrics metrics = new RequestMetrics();
     // End of variables declaration
 }
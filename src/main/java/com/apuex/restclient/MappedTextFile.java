@@ -0,0 +1,284 @@
+package com.apuex.restclient;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only, memory-mapped text file with a line index, which is built
+ * incrementally by {@link #buildIndex()} and may be queried while it is
+ * being built.
+ * <p>
+ * Only every {@link #INDEX_STRIDE}th line start is kept, so that the index
+ * of a file with many millions of lines stays small; other line starts are
+ * found by scanning forward from the nearest indexed one. Lines are
+ * separated by '\n', which holds for ASCII compatible encodings such as
+ * UTF-8.
+ * <p>
+ * A line longer than {@link #MAX_LINE_LENGTH} bytes, e.g. minified JSON,
+ * is split into several lines, as a viewer would wrap it, so that every
+ * line can be shown whole. Splits fall between UTF-8 characters.
+ *
+ * @author wangxy
+ */
+public class MappedTextFile implements Closeable {
+
+    /**
+     * The length in bytes, after which a line is split.
+     */
+    public static final int MAX_LINE_LENGTH = 4096;
+
+    private static final int REGION_BITS = 30;
+    private static final long REGION_SIZE = 1L << REGION_BITS;
+    private static final int INDEX_STRIDE = 64;
+
+    /**
+     * Number of bytes scanned between publishing index progress.
+     */
+    private static final int PUBLISH_INTERVAL = 1 << 20;
+
+    private final File file;
+    private final long length;
+    private final MappedByteBuffer[] regions;
+    private final RandomAccessFile raf;
+
+    private volatile long[] lineStarts = new long[1024];
+    private volatile int lineCount;
+    private volatile int maxLineLength;
+    private volatile boolean indexed;
+
+    public MappedTextFile(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            this.length = channel.size();
+            int count = (int) ((length + REGION_SIZE - 1) >>> REGION_BITS);
+            regions = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long position = i * REGION_SIZE;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(REGION_SIZE, length - position));
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        lineCount = (length == 0) ? 1 : 0;
+        indexed = (length == 0);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public byte get(long position) {
+        return regions[(int) (position >>> REGION_BITS)].get((int) (position & (REGION_SIZE - 1)));
+    }
+
+    /**
+     * Reads bytes into the given array.
+     *
+     * @return The number of bytes read, less than requested at the end of
+     * the file.
+     */
+    public int get(long position, byte[] dst, int off, int len) {
+        int n = (int) Math.min(len, length - position);
+        for (int i = 0; i < n; i++) {
+            dst[off + i] = get(position + i);
+        }
+        return n;
+    }
+
+    /**
+     * Scans the whole file for line starts. Meant to be run once, on a
+     * background thread; progress is visible to other threads while it
+     * runs.
+     *
+     * @throws InterruptedIOException The thread was interrupted.
+     */
+    public void buildIndex() throws InterruptedIOException {
+        long[] starts = lineStarts;
+        int count = 1;
+        int maxLength = 0;
+        long lineStart = 0;
+        for (long p = 0; p < length; p++) {
+            long next = -1;
+            if (get(p) == '\n') {
+                maxLength = (int) Math.max(maxLength, p - lineStart);
+                next = p + 1;
+            } else if (p - lineStart == MAX_LINE_LENGTH) {
+                next = split(p);
+                maxLength = (int) Math.max(maxLength, next - lineStart);
+            }
+            if (next != -1) {
+                lineStart = next;
+                if (count % INDEX_STRIDE == 0) {
+                    int block = count / INDEX_STRIDE;
+                    if (block == starts.length) {
+                        long[] grown = new long[starts.length * 2];
+                        System.arraycopy(starts, 0, grown, 0, starts.length);
+                        starts = grown;
+                        lineStarts = starts;
+                    }
+                    starts[block] = lineStart;
+                }
+                count++;
+            }
+            if ((p & (PUBLISH_INTERVAL - 1)) == 0) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Indexing interrupted.");
+                }
+                maxLineLength = maxLength;
+                lineCount = count;
+            }
+        }
+        maxLineLength = (int) Math.max(maxLength, length - lineStart);
+        lineCount = count;
+        indexed = true;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return Number of lines indexed so far.
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return Length in bytes of the longest line indexed so far.
+     */
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * @param line A line number less than {@link #getLineCount()}.
+     * @return The position of the first byte of the line.
+     */
+    public long getLineStart(int line) {
+        long position = lineStarts[line / INDEX_STRIDE];
+        for (int i = line % INDEX_STRIDE; i > 0; i--) {
+            position = getNextLineStart(position);
+        }
+        return position;
+    }
+
+    /**
+     * @param lineStart The position of the first byte of a line.
+     * @return The position of the '\n' ending the line, of the first byte of
+     * the next line if the line has been split, or the length of the file
+     * for the last line.
+     */
+    public long getLineEnd(long lineStart) {
+        long p = lineStart;
+        while (p < length && get(p) != '\n') {
+            if (p - lineStart == MAX_LINE_LENGTH) {
+                return split(p);
+            }
+            p++;
+        }
+        return p;
+    }
+
+    /**
+     * @param lineStart The position of the first byte of a line.
+     * @return The position of the first byte of the next line, which is
+     * after the end of the file for the last line.
+     */
+    public long getNextLineStart(long lineStart) {
+        long end = getLineEnd(lineStart);
+        return (end < length && get(end) != '\n') ? end : end + 1;
+    }
+
+    /**
+     * @param p The position {@link #MAX_LINE_LENGTH} bytes after the start of
+     *          a line, which is not a '\n'.
+     * @return The position to split the line at, which is the start of the
+     * UTF-8 character at p.
+     */
+    private long split(long p) {
+        long q = p;
+        // continuation bytes, of which a character has at most three.
+        while (q > p - 3 && (get(q) & 0xc0) == 0x80) {
+            q--;
+        }
+        return q;
+    }
+
+    /**
+     * @param position A position within the indexed part of the file.
+     * @return The number of the line containing the position.
+     */
+    public int getLineOf(long position) {
+        long[] starts = lineStarts;
+        int blocks = (lineCount + INDEX_STRIDE - 1) / INDEX_STRIDE;
+        int low = 0;
+        int high = blocks - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int line = low * INDEX_STRIDE;
+        for (long p = getNextLineStart(starts[low]); p <= position; p = getNextLineStart(p)) {
+            line++;
+        }
+        return line;
+    }
+
+    /**
+     * Searches for the given bytes.
+     *
+     * @param needle The bytes to find.
+     * @param from   The position to start from.
+     * @return The position of the first match, or -1 if none.
+     * @throws InterruptedIOException The thread was interrupted.
+     */
+    public long find(byte[] needle, long from) throws InterruptedIOException {
+        if (needle.length == 0) {
+            return -1;
+        }
+        byte first = needle[0];
+        long last = length - needle.length;
+        for (long p = Math.max(0, from); p <= last; p++) {
+            if ((p & (PUBLISH_INTERVAL - 1)) == 0 && Thread.interrupted()) {
+                throw new InterruptedIOException("Search interrupted.");
+            }
+            if (get(p) != first) {
+                continue;
+            }
+            int i = 1;
+            while (i < needle.length && get(p + i) == needle[i]) {
+                i++;
+            }
+            if (i == needle.length) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Closes the file. The mapping itself is released once it has been
+     * garbage collected.
+     */
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,433 @@
+package com.apuex.restclient;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local HTTP/1.1 server, which replays the exchanges of an
+ * {@link ExchangeStore}, e.g. as a reproducible target for load tests and
+ * benchmarks.
+ * <p>
+ * Each connection is served by a thread of its own over a blocking NIO
+ * channel and kept alive. Bodies are sent straight from their files with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * so that the kernel copies them to the socket without passing through
+ * the heap. Every response may be delayed by a fixed latency plus a random
+ * jitter, and its body sent at a limited bandwidth.
+ * <p>
+ * A request, for which no exchange has been recorded, is answered with
+ * 404 Not Found.
+ *
+ * @author wangxy
+ */
+public class MockServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 8089;
+
+    /**
+     * A limited bandwidth is kept by sending this many slices of a body per
+     * second.
+     */
+    private static final int SLICES_PER_SECOND = 20;
+
+    private static final int MAX_LINE_LENGTH = 65536;
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final ExchangeStore store;
+    private final ServerSocketChannel server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private volatile long latency;
+    private volatile long jitter;
+    private volatile long bandwidth;
+
+    /**
+     * Binds the server, which starts serving once {@link #start()} or
+     * {@link #run()} is called.
+     *
+     * @param store   The exchanges to replay.
+     * @param address The address to listen on; port 0 picks a free port.
+     */
+    public MockServer(ExchangeStore store, InetSocketAddress address) throws IOException {
+        this.store = store;
+        this.server = ServerSocketChannel.open();
+        server.socket().setReuseAddress(true);
+        server.bind(address, 1024);
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "mock-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * @param latency Milliseconds to wait before each response.
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public long getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @param jitter Milliseconds to wait at most, at random, in addition to
+     *               the latency.
+     */
+    public void setJitter(long jitter) {
+        this.jitter = jitter;
+    }
+
+    public long getBandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * @param bandwidth Bytes per second to send each body at, or 0 to send
+     *                  it as fast as possible.
+     */
+    public void setBandwidth(long bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * Accepts connections on a daemon thread.
+     */
+    public void start() {
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                MockServer.this.run();
+            }
+        }, "mock-accept");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Accepts connections on the calling thread until the server is closed.
+     */
+    public void run() {
+        try {
+            for (; ; ) {
+                final SocketChannel channel = server.accept();
+                executor.execute(new Runnable() {
+                    public void run() {
+                        serve(channel);
+                    }
+                });
+            }
+        } catch (ClosedChannelException e) {
+            // closed.
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes those open.
+     */
+    public void close() throws IOException {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    private void serve(SocketChannel channel) {
+        try {
+            channel.socket().setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            boolean keepAlive = true;
+            while (keepAlive) {
+                String requestLine = readLine(in);
+                while (requestLine != null && requestLine.isEmpty()) {
+                    requestLine = readLine(in);
+                }
+                if (requestLine == null) {
+                    break;
+                }
+                String[] parts = requestLine.split(" ");
+                if (parts.length != 3) {
+                    break;
+                }
+                String method = parts[0];
+                String connection = null;
+                String transferEncoding = null;
+                long contentLength = 0;
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon <= 0) {
+                        continue;
+                    }
+                    String name = line.substring(0, colon).trim();
+                    String value = line.substring(colon + 1).trim();
+                    if (name.equalsIgnoreCase("Connection")) {
+                        connection = value;
+                    } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                        transferEncoding = value;
+                    } else if (name.equalsIgnoreCase("Content-Length")) {
+                        contentLength = Long.parseLong(value);
+                    }
+                }
+                if (line == null) {
+                    break;
+                }
+                if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).contains("chunked")) {
+                    skipChunks(in);
+                } else {
+                    skipFully(in, contentLength);
+                }
+                keepAlive = parts[2].equals("HTTP/1.1") ? !"close".equalsIgnoreCase(connection)
+                        : "keep-alive".equalsIgnoreCase(connection);
+                requests.incrementAndGet();
+
+                ExchangeStore.Exchange exchange = store.find(method, parts[1]);
+                if (exchange == null && method.equals("HEAD")) {
+                    exchange = store.find("GET", parts[1]);
+                }
+                delay();
+                if (exchange == null) {
+                    byte[] body = ("No exchange recorded for " + method + " " + parts[1] + "\n")
+                            .getBytes(HttpRequest.DEFAULT_CHARSET);
+                    writeHead(channel, 404, "Not Found", null, body.length, keepAlive);
+                    write(channel, ByteBuffer.wrap(body));
+                } else {
+                    writeHead(channel, exchange.getStatus(), exchange.getReason(), exchange.getHeaders(),
+                            exchange.getLength(), keepAlive);
+                    if (exchange.getBody() != null && !method.equals("HEAD")) {
+                        writeBody(channel, exchange.getBody());
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            // the client has gone.
+        } catch (ClosedChannelException e) {
+            // closed by the client or the server.
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            // server closed.
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                /* Ignore me */
+            }
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long millis = latency;
+        long j = jitter;
+        if (j > 0) {
+            millis += ThreadLocalRandom.current().nextLong(j + 1);
+        }
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private void writeHead(SocketChannel channel, int status, String reason, Map<String, List<String>> headers,
+                           long length, boolean keepAlive) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> h : headers.entrySet()) {
+                for (String value : h.getValue()) {
+                    sb.append(h.getKey()).append(": ").append(value).append("\r\n");
+                }
+            }
+        } else {
+            sb.append("Content-Type: text/plain; charset=").append(HttpRequest.DEFAULT_CHARSET).append("\r\n");
+        }
+        sb.append("Content-Length: ").append(length).append("\r\n");
+        sb.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+        write(channel, ByteBuffer.wrap(sb.toString().getBytes(HttpRequest.DEFAULT_CHARSET)));
+    }
+
+    private void write(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            bytesSent.addAndGet(channel.write(buffer));
+        }
+    }
+
+    /**
+     * Sends a body from its file without copying it into the heap, in
+     * slices paced to the bandwidth if it is limited.
+     */
+    private void writeBody(SocketChannel channel, File body) throws IOException, InterruptedException {
+        FileChannel file = FileChannel.open(body.toPath(), StandardOpenOption.READ);
+        try {
+            long length = file.size();
+            long rate = bandwidth;
+            long slice = (rate > 0) ? Math.max(rate / SLICES_PER_SECOND, 1) : length;
+            long start = System.nanoTime();
+            long position = 0;
+            while (position < length) {
+                long n = file.transferTo(position, Math.min(slice, length - position), channel);
+                position += n;
+                bytesSent.addAndGet(n);
+                if (rate > 0) {
+                    long wait = start + position * 1000000000L / rate - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return A line of the request head without its line break, or null
+     * at the end of the stream.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int end = sb.length();
+                if (end > 0 && sb.charAt(end - 1) == '\r') {
+                    sb.setLength(end - 1);
+                }
+                return sb.toString();
+            }
+            if (sb.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Request line or header too long.");
+            }
+            sb.append((char) c);
+        }
+        return null;
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException("Unexpected end of request body.");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    private static void skipChunks(InputStream in) throws IOException {
+        for (; ; ) {
+            String size = readLine(in);
+            if (size == null) {
+                throw new EOFException("Unexpected end of request body.");
+            }
+            int extension = size.indexOf(';');
+            long n = Long.parseLong((extension == -1 ? size : size.substring(0, extension)).trim(), 16);
+            if (n == 0) {
+                // trailers, up to an empty line.
+                String trailer;
+                while ((trailer = readLine(in)) != null && !trailer.isEmpty()) {
+                    continue;
+                }
+                return;
+            }
+            skipFully(in, n);
+            if (!"".equals(readLine(in))) {
+                throw new IOException("Malformed chunk.");
+            }
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -cp rest-client.jar " + MockServer.class.getName()
+                + " [options] store-directory");
+        System.err.println("  -p, --port PORT        port to listen on, default " + DEFAULT_PORT);
+        System.err.println("  -l, --latency MILLIS   delay before each response");
+        System.err.println("  -j, --jitter MILLIS    random delay added to the latency, at most");
+        System.err.println("  -b, --bandwidth BYTES  bytes per second to send each body at");
+        System.exit(2);
+    }
+
+    /**
+     * Replays a store, which has been recorded with the client, until
+     * killed.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = DEFAULT_PORT;
+        long latency = 0;
+        long jitter = 0;
+        long bandwidth = 0;
+        String directory = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("-p".equals(arg) || "--port".equals(arg)) {
+                    port = Integer.parseInt(args[++i]);
+                } else if ("-l".equals(arg) || "--latency".equals(arg)) {
+                    latency = Long.parseLong(args[++i]);
+                } else if ("-j".equals(arg) || "--jitter".equals(arg)) {
+                    jitter = Long.parseLong(args[++i]);
+                } else if ("-b".equals(arg) || "--bandwidth".equals(arg)) {
+                    bandwidth = Long.parseLong(args[++i]);
+                } else if (directory == null && !arg.startsWith("-")) {
+                    directory = arg;
+                } else {
+                    usage();
+                }
+            }
+        } catch (RuntimeException e) {
+            // missing or invalid option value.
+            usage();
+        }
+        if (directory == null || latency < 0 || jitter < 0 || bandwidth < 0) {
+            usage();
+        }
+        ExchangeStore store = new ExchangeStore(new File(directory));
+        MockServer server = new MockServer(store, new InetSocketAddress(port));
+        server.setLatency(latency);
+        server.setJitter(jitter);
+        server.setBandwidth(bandwidth);
+        System.err.println("Replaying " + store.size() + " exchanges from " + directory
+                + " on port " + server.getPort());
+        server.run();
+    }
+}
@@ -0,0 +1,50 @@
+package com.apuex.restclient;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reports every chunk read to a {@link RequestMonitor}, which aborts
+ * the read once the request has been cancelled. A stream either counts the
+ * bytes received from the connection, or the bytes decoded from them.
+ *
+ * @author wangxy
+ */
+class MonitoredInputStream extends FilterInputStream {
+
+    private final RequestMonitor monitor;
+    private final boolean decoded;
+
+    MonitoredInputStream(InputStream in, RequestMonitor monitor, boolean decoded) {
+        super(in);
+        this.monitor = monitor;
+        this.decoded = decoded;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    private void count(long n) throws IOException {
+        if (decoded) {
+            monitor.decoded(n);
+        } else {
+            monitor.received(n);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.apuex.restclient;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Reports every chunk written to a {@link RequestMonitor}, which aborts
+ * the upload once the request has been cancelled.
+ *
+ * @author wangxy
+ */
+class MonitoredOutputStream extends FilterOutputStream {
+
+    private final RequestMonitor monitor;
+
+    MonitoredOutputStream(OutputStream out, RequestMonitor monitor) {
+        super(out);
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        monitor.sent(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        monitor.sent(len);
+        out.write(b, off, len);
+    }
+}
@@ -0,0 +1,340 @@
+package com.apuex.restclient;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Finds the differences between two sequences of ints, e.g. the lines of
+ * two files numbered so that equal lines get equal numbers, with the
+ * algorithm of E. Myers, "An O(ND) Difference Algorithm and Its
+ * Variations", in its linear space variant.
+ * <p>
+ * Like GNU diff, elements without any equal element in the other sequence
+ * are set aside first, as they cannot be part of a match, and the search
+ * for the middle snake gives up on an optimal split after
+ * {@link #TOO_EXPENSIVE} steps, taking the furthest point reached instead,
+ * so that very different inputs take time linear in their length rather
+ * than in the product of their length and number of differences, at the
+ * cost of a diff, which may be a little longer than the shortest one.
+ * <p>
+ * Differences are reported from first to last while the search goes on,
+ * each as soon as no later step can change it.
+ *
+ * @author wangxy
+ */
+public class Myers {
+
+    /**
+     * Receives the differences in order.
+     */
+    public interface Listener {
+
+        /**
+         * Elements [aStart, aEnd) of a are replaced by elements
+         * [bStart, bEnd) of b; either range may be empty.
+         */
+        void changed(int aStart, int aEnd, int bStart, int bEnd);
+    }
+
+    /**
+     * The number of steps after which the search for a middle snake gives
+     * up. The cost of a split grows with its square, and the number of
+     * splits with the number of differences.
+     */
+    private static final int TOO_EXPENSIVE = 64;
+
+    /**
+     * The number of snakes followed between checks for interruption.
+     */
+    private static final int CHECK_INTERVAL = 1 << 16;
+
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] changedA;
+    private final boolean[] changedB;
+
+    /**
+     * The elements of a and b, which have an equal element in the other
+     * sequence, and their indexes.
+     */
+    private int[] x;
+    private int[] y;
+    private int[] xIndex;
+    private int[] yIndex;
+    private int[] fd;
+    private int[] bd;
+    private int offset;
+    private int steps;
+
+    private Listener listener;
+    private int flushedA;
+    private int flushedB;
+
+    /**
+     * @param a The first sequence.
+     * @param b The second sequence.
+     */
+    public Myers(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        this.changedA = new boolean[a.length];
+        this.changedB = new boolean[b.length];
+    }
+
+    /**
+     * Reports the differences to the given listener, returning once all
+     * have been reported.
+     *
+     * @throws InterruptedIOException The thread was interrupted.
+     */
+    public void diff(Listener listener) throws InterruptedIOException {
+        this.listener = listener;
+        discard();
+        offset = y.length + 1;
+        fd = new int[x.length + y.length + 3];
+        bd = new int[x.length + y.length + 3];
+        compare(0, x.length, 0, y.length);
+        flush(a.length, b.length);
+        fd = null;
+        bd = null;
+    }
+
+    /**
+     * Marks the elements, which do not occur in the other sequence, as
+     * changed and keeps the others in {@link #x} and {@link #y}.
+     */
+    private void discard() {
+        int max = 0;
+        for (int v : a) {
+            max = Math.max(max, v);
+        }
+        for (int v : b) {
+            max = Math.max(max, v);
+        }
+        boolean[] inA = new boolean[max + 1];
+        boolean[] inB = new boolean[max + 1];
+        for (int v : a) {
+            inA[v] = true;
+        }
+        for (int v : b) {
+            inB[v] = true;
+        }
+        int n = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (inB[a[i]]) {
+                n++;
+            } else {
+                changedA[i] = true;
+            }
+        }
+        int m = 0;
+        for (int j = 0; j < b.length; j++) {
+            if (inA[b[j]]) {
+                m++;
+            } else {
+                changedB[j] = true;
+            }
+        }
+        x = new int[n];
+        xIndex = new int[n + 1];
+        for (int i = 0, k = 0; i < a.length; i++) {
+            if (!changedA[i]) {
+                xIndex[k] = i;
+                x[k++] = a[i];
+            }
+        }
+        xIndex[n] = a.length;
+        y = new int[m];
+        yIndex = new int[m + 1];
+        for (int j = 0, k = 0; j < b.length; j++) {
+            if (!changedB[j]) {
+                yIndex[k] = j;
+                y[k++] = b[j];
+            }
+        }
+        yIndex[m] = b.length;
+    }
+
+    /**
+     * Compares x[xOff, xLim) to y[yOff, yLim), marking the elements not
+     * matched as changed.
+     */
+    private void compare(int xOff, int xLim, int yOff, int yLim) throws InterruptedIOException {
+        for (; ; ) {
+            while (xOff < xLim && yOff < yLim && x[xOff] == y[yOff]) {
+                xOff++;
+                yOff++;
+            }
+            while (xLim > xOff && yLim > yOff && x[xLim - 1] == y[yLim - 1]) {
+                xLim--;
+                yLim--;
+            }
+            if (xOff == xLim || yOff == yLim) {
+                for (int i = xOff; i < xLim; i++) {
+                    changedA[xIndex[i]] = true;
+                }
+                for (int j = yOff; j < yLim; j++) {
+                    changedB[yIndex[j]] = true;
+                }
+                flush(xIndex[xLim], yIndex[yLim]);
+                return;
+            }
+            long split = split(xOff, xLim, yOff, yLim);
+            int xMid = (int) (split >>> 32);
+            int yMid = (int) split;
+            compare(xOff, xMid, yOff, yMid);
+            // the second half in this frame, so that the recursion stays shallow.
+            xOff = xMid;
+            yOff = yMid;
+        }
+    }
+
+    /**
+     * Finds the middle snake of x[xOff, xLim) and y[yOff, yLim), or a good
+     * split point if finding it is too expensive.
+     *
+     * @return The split point, x in the high and y in the low 32 bits.
+     */
+    private long split(int xOff, int xLim, int yOff, int yLim) throws InterruptedIOException {
+        int dMin = xOff - yLim;
+        int dMax = xLim - yOff;
+        int fMid = xOff - yOff;
+        int bMid = xLim - yLim;
+        int fMin = fMid;
+        int fMax = fMid;
+        int bMin = bMid;
+        int bMax = bMid;
+        boolean odd = ((fMid - bMid) & 1) != 0;
+        fd[offset + fMid] = xOff;
+        bd[offset + bMid] = xLim;
+        for (int c = 1; ; c++) {
+            if (fMin > dMin) {
+                fd[offset + --fMin - 1] = -1;
+            } else {
+                fMin++;
+            }
+            if (fMax < dMax) {
+                fd[offset + ++fMax + 1] = -1;
+            } else {
+                fMax--;
+            }
+            for (int d = fMax; d >= fMin; d -= 2) {
+                int tLo = fd[offset + d - 1];
+                int tHi = fd[offset + d + 1];
+                int px = (tLo >= tHi) ? tLo + 1 : tHi;
+                int py = px - d;
+                while (px < xLim && py < yLim && x[px] == y[py]) {
+                    px++;
+                    py++;
+                }
+                fd[offset + d] = px;
+                if (odd && bMin <= d && d <= bMax && bd[offset + d] <= px) {
+                    return ((long) px << 32) | (py & 0xffffffffL);
+                }
+            }
+            if (bMin > dMin) {
+                bd[offset + --bMin - 1] = Integer.MAX_VALUE;
+            } else {
+                bMin++;
+            }
+            if (bMax < dMax) {
+                bd[offset + ++bMax + 1] = Integer.MAX_VALUE;
+            } else {
+                bMax--;
+            }
+            for (int d = bMax; d >= bMin; d -= 2) {
+                int tLo = bd[offset + d - 1];
+                int tHi = bd[offset + d + 1];
+                int px = (tLo < tHi) ? tLo : tHi - 1;
+                int py = px - d;
+                while (px > xOff && py > yOff && x[px - 1] == y[py - 1]) {
+                    px--;
+                    py--;
+                }
+                bd[offset + d] = px;
+                if (!odd && fMin <= d && d <= fMax && px <= fd[offset + d]) {
+                    return ((long) px << 32) | (py & 0xffffffffL);
+                }
+            }
+            steps += c;
+            if (steps >= CHECK_INTERVAL) {
+                steps = 0;
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Diff interrupted.");
+                }
+            }
+            if (c >= TOO_EXPENSIVE) {
+                return splitHeuristically(xOff, xLim, yOff, yLim, fMin, fMax, bMin, bMax);
+            }
+        }
+    }
+
+    /**
+     * @return The furthest point reached forward or backward, whichever
+     * got further.
+     */
+    private long splitHeuristically(int xOff, int xLim, int yOff, int yLim,
+                                    int fMin, int fMax, int bMin, int bMax) {
+        int fxyBest = -1;
+        int fxBest = 0;
+        for (int d = fMax; d >= fMin; d -= 2) {
+            int px = Math.min(fd[offset + d], xLim);
+            int py = px - d;
+            if (yLim < py) {
+                px = yLim + d;
+                py = yLim;
+            }
+            if (fxyBest < px + py) {
+                fxyBest = px + py;
+                fxBest = px;
+            }
+        }
+        int bxyBest = Integer.MAX_VALUE;
+        int bxBest = 0;
+        for (int d = bMax; d >= bMin; d -= 2) {
+            int px = Math.max(xOff, bd[offset + d]);
+            int py = px - d;
+            if (py < yOff) {
+                px = yOff + d;
+                py = yOff;
+            }
+            if (px + py < bxyBest) {
+                bxyBest = px + py;
+                bxBest = px;
+            }
+        }
+        if ((xLim + yLim) - bxyBest < fxyBest - (xOff + yOff)) {
+            return ((long) fxBest << 32) | ((fxyBest - fxBest) & 0xffffffffL);
+        }
+        return ((long) bxBest << 32) | ((bxyBest - bxBest) & 0xffffffffL);
+    }
+
+    /**
+     * Reports the changes before the given indexes of a and b, which are
+     * final, except a change reaching up to them, which may still grow.
+     */
+    private void flush(int aLimit, int bLimit) {
+        int i = flushedA;
+        int j = flushedB;
+        for (; ; ) {
+            while (i < aLimit && j < bLimit && !changedA[i] && !changedB[j]) {
+                i++;
+                j++;
+            }
+            int aStart = i;
+            int bStart = j;
+            while (i < aLimit && changedA[i]) {
+                i++;
+            }
+            while (j < bLimit && changedB[j]) {
+                j++;
+            }
+            boolean complete = (i < aLimit || aLimit == a.length) && (j < bLimit || bLimit == b.length);
+            if (i == aStart && j == bStart || !complete) {
+                flushedA = aStart;
+                flushedB = bStart;
+                return;
+            }
+            listener.changed(aStart, i, bStart, j);
+        }
+    }
+}
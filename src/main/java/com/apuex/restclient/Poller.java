@@ -0,0 +1,285 @@
+package com.apuex.restclient;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a request over and over on a schedule, and tells whether its
+ * response has changed since the last run.
+ * <p>
+ * All pollers share a single scheduler thread, which only hands each run
+ * to an executor. A run, which is due while the previous one is still in
+ * flight, is skipped rather than queued, so that a slow endpoint is never
+ * polled by more than one request at a time. Response bodies are hashed
+ * chunk by chunk as they arrive; only the first {@link #PREVIEW_LIMIT}
+ * bytes are kept, and only decoded for display once the hash has changed.
+ *
+ * @author wangxy
+ */
+public class Poller {
+
+    /**
+     * Receives the result of each run, on the thread of the executor.
+     */
+    public interface Listener {
+
+        /**
+         * @param sample  The outcome of the run.
+         * @param content The status line, headers and body if they have
+         *                changed since the last run, or the error if the
+         *                run failed differently than the last one, and null
+         *                otherwise.
+         */
+        void polled(Sample sample, String content);
+    }
+
+    /**
+     * The outcome of a single run.
+     */
+    public static class Sample {
+
+        private final long time;
+        private final long millis;
+        private final int status;
+        private final boolean changed;
+        private final boolean failed;
+
+        Sample(long time, long millis, int status, boolean changed, boolean failed) {
+            this.time = time;
+            this.millis = millis;
+            this.status = status;
+            this.changed = changed;
+            this.failed = failed;
+        }
+
+        /**
+         * @return The time the run started, in milliseconds since the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return The status code, or -1 if the run failed.
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        public boolean isChanged() {
+            return changed;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+    }
+
+    /**
+     * The number of body bytes kept for display.
+     */
+    public static final int PREVIEW_LIMIT = 256 << 10;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "poll");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private final RestClient client;
+    private final RequestSpec request;
+    private final long interval;
+    private final Executor executor;
+    private final Listener listener;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    /**
+     * Reused by the runs, which never overlap.
+     */
+    private final ByteArrayOutputStream preview = new ByteArrayOutputStream();
+    private final byte[] copy = new byte[8192];
+    private byte[] lastHash;
+    private volatile RequestMonitor monitor;
+    private volatile ScheduledFuture<?> schedule;
+
+    /**
+     * @param client   The client to send the request with.
+     * @param request  The request to send.
+     * @param interval Milliseconds between the starts of two runs.
+     * @param executor The executor to send the request on.
+     * @param listener The listener to report runs to.
+     */
+    public Poller(RestClient client, RequestSpec request, long interval,
+                  Executor executor, Listener listener) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval < 1");
+        }
+        this.client = client;
+        this.request = request;
+        this.interval = interval;
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    public RequestSpec getRequest() {
+        return request;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return The number of runs completed.
+     */
+    public long getRuns() {
+        return runs.get();
+    }
+
+    /**
+     * @return The number of runs, whose response differed from the one
+     * before, the first run included.
+     */
+    public long getChanges() {
+        return changes.get();
+    }
+
+    /**
+     * @return The number of runs skipped, since the previous run was still
+     * in flight.
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Starts polling at once. Does nothing if already started.
+     */
+    public synchronized void start() {
+        if (schedule == null) {
+            schedule = SCHEDULER.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    due();
+                }
+            }, 0, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops polling and cancels the run in flight, if any.
+     */
+    public synchronized void stop() {
+        if (schedule != null) {
+            schedule.cancel(false);
+            schedule = null;
+        }
+        RequestMonitor m = monitor;
+        if (m != null) {
+            m.cancel();
+        }
+    }
+
+    public boolean isStarted() {
+        return schedule != null;
+    }
+
+    /**
+     * Called on the scheduler thread, which must never block.
+     */
+    private void due() {
+        if (!running.compareAndSet(false, true)) {
+            skipped.incrementAndGet();
+            return;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    if (isStarted()) {
+                        poll();
+                    }
+                } finally {
+                    running.set(false);
+                }
+            }
+        });
+    }
+
+    private void poll() {
+        final MessageDigest digest = Digests.sha256();
+        long time = System.currentTimeMillis();
+        RequestMonitor m = new RequestMonitor();
+        monitor = m;
+        preview.reset();
+        String headers = null;
+        String content = null;
+        Charset charset = null;
+        long length = 0;
+        boolean failed = false;
+        int status = -1;
+        try {
+            Response response = client.open(request, m);
+            try {
+                status = response.getStatus();
+                digest.update((byte) (status >> 8));
+                digest.update((byte) status);
+                headers = response.formatHeaders();
+                charset = HttpRequest.toCharset(response.getCharset());
+                length = response.forEachChunk(new Response.ChunkHandler() {
+                    public void chunk(ByteBuffer chunk) {
+                        ByteBuffer kept = chunk.duplicate();
+                        while (kept.hasRemaining() && preview.size() < PREVIEW_LIMIT) {
+                            int n = Math.min(Math.min(kept.remaining(), copy.length), PREVIEW_LIMIT - preview.size());
+                            kept.get(copy, 0, n);
+                            preview.write(copy, 0, n);
+                        }
+                        digest.update(chunk);
+                    }
+                });
+            } finally {
+                response.close();
+            }
+        } catch (Exception e) {
+            if (m.isCancelled()) {
+                return;
+            }
+            failed = true;
+            content = e.toString();
+            digest.update(content.getBytes(Charset.forName(HttpRequest.DEFAULT_CHARSET)));
+        } finally {
+            monitor = null;
+        }
+        byte[] hash = digest.digest();
+        boolean changed = !Arrays.equals(hash, lastHash);
+        lastHash = hash;
+        runs.incrementAndGet();
+        if (changed) {
+            changes.incrementAndGet();
+            if (!failed) {
+                content = headers + new String(preview.toByteArray(), charset)
+                        + (length > PREVIEW_LIMIT ? "\n..." : "");
+            }
+        }
+        listener.polled(new Sample(time, m.getElapsedMillis(), status, changed, failed),
+                changed ? content : null);
+    }
+}
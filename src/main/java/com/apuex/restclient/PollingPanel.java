@@ -0,0 +1,206 @@
+package com.apuex.restclient;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Highlighter;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.InterruptedIOException;
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.Executor;
+
+/**
+ * Watches an endpoint with a {@link Poller}. The response is only shown
+ * again once it has changed, with the lines, which have been added or
+ * changed since the last response shown, marked. The latency of every run is plotted below.
+ *
+ * @author wangxy
+ */
+public class PollingPanel extends JPanel implements Poller.Listener {
+
+    private static final Color CHANGED_LINE = new Color(0xfff0b0);
+
+    public PollingPanel(ResourceBundle bundle) {
+        this.bundle = bundle;
+        initComponents();
+    }
+
+    private void initComponents() {
+        status = new JLabel();
+        stopButton = new JButton();
+        closeButton = new JButton();
+        responsePane = new JScrollPane();
+        response = new JTextArea();
+        plot = new LatencyPlot();
+
+        setLayout(new BorderLayout());
+
+        JPanel toolBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 2));
+        toolBar.add(status);
+
+        stopButton.setText(bundle.getString("poll.stop"));
+        stopButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                toggle();
+            }
+        });
+        toolBar.add(stopButton);
+
+        closeButton.setText(bundle.getString("close.response"));
+        closeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                close();
+            }
+        });
+        toolBar.add(closeButton);
+        add(toolBar, BorderLayout.NORTH);
+
+        response.setColumns(20);
+        response.setRows(10);
+        responsePane.setViewportView(response);
+        add(responsePane, BorderLayout.CENTER);
+
+        plot.setBorder(BorderFactory.createEmptyBorder(2, 4, 2, 4));
+        add(plot, BorderLayout.SOUTH);
+    }
+
+    /**
+     * Starts polling the request. Must be called on the event dispatch
+     * thread.
+     *
+     * @param interval Milliseconds between the starts of two runs.
+     */
+    public void start(Executor executor, RestClient client, RequestSpec request, long interval) {
+        poller = new Poller(client, request, interval, executor, this);
+        poller.start();
+        updateStatus(null);
+    }
+
+    public void polled(final Poller.Sample sample, final String content) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                plot.add(sample);
+                if (content != null) {
+                    show(content);
+                }
+                updateStatus(sample);
+            }
+        });
+    }
+
+    /**
+     * Shows the given response and marks the lines, which have been added
+     * or changed since the response shown before. The lines are aligned by
+     * {@link Myers} first, so that a line inserted or removed does not mark
+     * every line after it.
+     */
+    private void show(String content) {
+        String previous = response.getText();
+        response.getHighlighter().removeAllHighlights();
+        response.setText(content);
+        response.setCaretPosition(0);
+        if (previous.isEmpty()) {
+            return;
+        }
+        String[] lines = content.split("\n", -1);
+        // equal lines get equal numbers.
+        Map<String, Integer> numbers = new HashMap<String, Integer>();
+        int[] x = number(previous.split("\n", -1), numbers);
+        int[] y = number(lines, numbers);
+        final int[] starts = new int[lines.length + 1];
+        for (int i = 0; i < lines.length; i++) {
+            starts[i + 1] = starts[i] + lines[i].length() + 1;
+        }
+        final int length = content.length();
+        final Highlighter highlighter = response.getHighlighter();
+        final Highlighter.HighlightPainter painter = new DefaultHighlighter.DefaultHighlightPainter(CHANGED_LINE);
+        try {
+            new Myers(x, y).diff(new Myers.Listener() {
+                public void changed(int aStart, int aEnd, int bStart, int bEnd) {
+                    if (bStart == bEnd) {
+                        // lines removed only.
+                        return;
+                    }
+                    try {
+                        highlighter.addHighlight(starts[bStart], Math.min(starts[bEnd], length), painter);
+                    } catch (BadLocationException e) {
+                        // the text has just been set.
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+        } catch (InterruptedIOException e) {
+            // leaves the rest unmarked.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int[] number(String[] lines, Map<String, Integer> numbers) {
+        int[] x = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            Integer number = numbers.get(lines[i]);
+            if (number == null) {
+                number = numbers.size();
+                numbers.put(lines[i], number);
+            }
+            x[i] = number;
+        }
+        return x;
+    }
+
+    private void toggle() {
+        if (poller.isStarted()) {
+            poller.stop();
+            stopButton.setText(bundle.getString("poll.resume"));
+        } else {
+            poller.start();
+            stopButton.setText(bundle.getString("poll.stop"));
+        }
+    }
+
+    private void close() {
+        if (poller != null) {
+            poller.stop();
+        }
+        Container parent = getParent();
+        if (parent != null) {
+            parent.remove(this);
+            parent.validate();
+            parent.repaint();
+        }
+    }
+
+    private void updateStatus(Poller.Sample sample) {
+        String text = MessageFormat.format(bundle.getString("poll.status"), poller.getInterval() / 1000.0,
+                poller.getRuns(), poller.getChanges(), poller.getSkipped());
+        if (sample != null) {
+            text += MessageFormat.format(bundle.getString(sample.isFailed() ? "poll.failed" : "poll.last"),
+                    sample.getStatus(), sample.getMillis());
+            if (sample.isChanged()) {
+                changedAt = new Date(sample.getTime());
+            }
+        }
+        if (changedAt != null) {
+            text += MessageFormat.format(bundle.getString("poll.changed"), changedAt);
+        }
+        status.setText(text);
+    }
+
+    // Variables declaration
+    private JLabel status;
+    private JButton stopButton;
+    private JButton closeButton;
+    private JScrollPane responsePane;
+    private JTextArea response;
+    private LatencyPlot plot;
+    private ResourceBundle bundle;
+    private Poller poller;
+    private Date changedAt;
+    // End of variables declaration
+}
@@ -0,0 +1,237 @@
+package com.apuex.restclient;
+
+import java.io.*;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.UUID;
+
+import static com.apuex.restclient.HttpRequest.DEFAULT_CHARSET;
+
+/**
+ * The body of a request. Bodies are written straight to the connection, so
+ * file contents are streamed from disk instead of being held in memory. A
+ * body of known length is sent in fixed-length streaming mode, any other
+ * body in chunked mode.
+ *
+ * @author wangxy
+ */
+public abstract class RequestBody {
+
+    /**
+     * Buffer size for copying files to the connection.
+     */
+    private static final int FILE_BUFFER_SIZE = 65536;
+
+    /**
+     * @param text    The text to send.
+     * @param charset The character encoding of the text.
+     * @return A body sending the given text.
+     */
+    public static RequestBody of(String text, String charset) throws UnsupportedEncodingException {
+        return new TextBody(text.getBytes(charset), charset);
+    }
+
+    /**
+     * @param file The file to send.
+     * @return A body sending the contents of the given file as is.
+     */
+    public static RequestBody of(File file) {
+        return new FileBody(file);
+    }
+
+    /**
+     * @param files The files to send.
+     * @return A multipart/form-data body with one "file" part per file.
+     */
+    public static RequestBody multipart(List<File> files) {
+        return new MultipartBody(files);
+    }
+
+    /**
+     * @param contentType The content type chosen for the request.
+     * @return The value of the Content-Type header for this body.
+     */
+    public abstract String getContentType(String contentType);
+
+    /**
+     * @return The length of the body in bytes, or -1 if not known in
+     * advance.
+     */
+    public abstract long getContentLength();
+
+    /**
+     * Writes the body. The stream is neither flushed nor closed.
+     *
+     * @param out The stream to write to.
+     * @throws IOException An I/O error occurred.
+     */
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Opens the body for reading, for clients that pull the body instead
+     * of having it written to them. Files are opened as they are reached.
+     *
+     * @return A new stream over the body, which the caller must close.
+     * @throws IOException An I/O error occurred.
+     */
+    public abstract InputStream openStream() throws IOException;
+
+    private static long lengthOf(File file) {
+        // pipes and devices report a length of 0.
+        return file.isFile() ? file.length() : -1;
+    }
+
+    private static void copy(File file, OutputStream out) throws IOException {
+        HttpRequest.copy(new FileInputStream(file), out, false, new byte[FILE_BUFFER_SIZE]);
+    }
+
+    private static class TextBody extends RequestBody {
+
+        private final byte[] bytes;
+        private final String charset;
+
+        TextBody(byte[] bytes, String charset) {
+            this.bytes = bytes;
+            this.charset = charset;
+        }
+
+        @Override
+        public String getContentType(String contentType) {
+            return String.format("%s; charset=%s", contentType, charset);
+        }
+
+        @Override
+        public long getContentLength() {
+            return bytes.length;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(bytes);
+        }
+
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    private static class FileBody extends RequestBody {
+
+        private final File file;
+
+        FileBody(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public String getContentType(String contentType) {
+            return contentType;
+        }
+
+        @Override
+        public long getContentLength() {
+            return lengthOf(file);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            copy(file, out);
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return new FileInputStream(file);
+        }
+    }
+
+    private static class MultipartBody extends RequestBody {
+
+        private static final String CRLF = "\r\n";
+
+        private final List<File> files;
+        private final String boundary = "----rest-client-" + UUID.randomUUID();
+
+        MultipartBody(List<File> files) {
+            this.files = Collections.unmodifiableList(new ArrayList<File>(files));
+        }
+
+        @Override
+        public String getContentType(String contentType) {
+            return "multipart/form-data; boundary=" + boundary;
+        }
+
+        @Override
+        public long getContentLength() {
+            try {
+                long length = 0;
+                for (File file : files) {
+                    long fileLength = lengthOf(file);
+                    if (fileLength < 0) {
+                        return -1;
+                    }
+                    length += partHeader(file).length + fileLength + CRLF.length();
+                }
+                return length + trailer().length;
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            for (File file : files) {
+                out.write(partHeader(file));
+                copy(file, out);
+                out.write(CRLF.getBytes(DEFAULT_CHARSET));
+            }
+            out.write(trailer());
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            final List<Object> parts = new ArrayList<Object>();
+            for (File file : files) {
+                parts.add(partHeader(file));
+                parts.add(file);
+                parts.add(CRLF.getBytes(DEFAULT_CHARSET));
+            }
+            parts.add(trailer());
+            return new SequenceInputStream(new Enumeration<InputStream>() {
+                private int next;
+
+                public boolean hasMoreElements() {
+                    return next < parts.size();
+                }
+
+                public InputStream nextElement() {
+                    Object part = parts.get(next++);
+                    if (part instanceof byte[]) {
+                        return new ByteArrayInputStream((byte[]) part);
+                    }
+                    try {
+                        return new FileInputStream((File) part);
+                    } catch (FileNotFoundException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+
+        private byte[] partHeader(File file) throws UnsupportedEncodingException {
+            String type = URLConnection.guessContentTypeFromName(file.getName());
+            return ("--" + boundary + CRLF
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\""
+                    + file.getName().replace("\"", "%22") + "\"" + CRLF
+                    + "Content-Type: " + (type == null ? "application/octet-stream" : type) + CRLF
+                    + CRLF).getBytes(DEFAULT_CHARSET);
+        }
+
+        private byte[] trailer() throws UnsupportedEncodingException {
+            return ("--" + boundary + "--" + CRLF).getBytes(DEFAULT_CHARSET);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.apuex.restclient;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates the timings of the requests sent by a {@link RestClient}, once
+ * set with {@link RestClient#setMetrics(RequestMetrics)}, and exports them
+ * as an MXBean.
+ * <p>
+ * Latencies are kept in a ring of {@link LatencyHistogram}s, one per
+ * {@link #SLICE_MILLIS} slice of time, so that the rolling window moves on
+ * without ever forgetting all of its values at once.
+ *
+ * @author wangxy
+ */
+public class RequestMetrics implements RequestMetricsMXBean {
+
+    public static final String DEFAULT_NAME = "com.apuex.restclient:type=RequestMetrics";
+
+    private static final long SLICE_MILLIS = 10000L;
+    private static final int SLICE_COUNT = 6;
+    private static final String TOTAL = "TOTAL";
+    private static final RequestTiming.Phase[] PHASES = RequestTiming.Phase.values();
+
+    private final Slice[] slices = new Slice[SLICE_COUNT];
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    public RequestMetrics() {
+        for (int i = 0; i < SLICE_COUNT; i++) {
+            slices[i] = new Slice();
+        }
+    }
+
+    /**
+     * Registers this instance with the platform MBean server.
+     *
+     * @param name The object name to register under.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * @param monitor The monitor of a completed request.
+     * @param failed  Whether the request failed with an exception.
+     */
+    public void record(RequestMonitor monitor, boolean failed) {
+        requestCount.incrementAndGet();
+        if (failed) {
+            errorCount.incrementAndGet();
+        }
+        bytesSent.addAndGet(monitor.getBytesSent());
+        bytesReceived.addAndGet(monitor.getBytesReceived());
+
+        RequestTiming timing = monitor.getTiming();
+        long epoch = System.currentTimeMillis() / SLICE_MILLIS;
+        Slice slice = slices[(int) (epoch % SLICE_COUNT)];
+        synchronized (slice) {
+            if (slice.epoch != epoch) {
+                slice.reset();
+                slice.epoch = epoch;
+            }
+            for (RequestTiming.Phase phase : PHASES) {
+                slice.histograms[phase.ordinal()].record(timing.getNanos(phase) / 1000L);
+            }
+            slice.histograms[PHASES.length].record(timing.getTotalNanos() / 1000L);
+            if (timing.isMarked(RequestTiming.Phase.WAIT)) {
+                slice.headers.record(timing.getOffsetNanos(RequestTiming.Phase.TRANSFER) / 1000L);
+            }
+        }
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public int getWindowSeconds() {
+        return (int) (SLICE_COUNT * SLICE_MILLIS / 1000L);
+    }
+
+    public long getWindowRequestCount() {
+        return window()[PHASES.length].getTotalCount();
+    }
+
+    public Map<String, Double> getMeanMillis() {
+        LatencyHistogram[] window = window();
+        Map<String, Double> result = new LinkedHashMap<String, Double>();
+        for (int i = 0; i < window.length; i++) {
+            result.put(nameOf(i), window[i].getMean() / 1000.0);
+        }
+        return result;
+    }
+
+    public Map<String, Double> getP50Millis() {
+        return percentile(50.0);
+    }
+
+    public Map<String, Double> getP95Millis() {
+        return percentile(95.0);
+    }
+
+    public Map<String, Double> getP99Millis() {
+        return percentile(99.0);
+    }
+
+    public Map<String, Double> getMaxMillis() {
+        return percentile(100.0);
+    }
+
+    /**
+     * @return The time to the response headers, from {@code QUEUED} through
+     * {@code WAIT}, at the given percentile over the current window in
+     * milliseconds, or -1 if fewer than {@code minCount} responses have
+     * been recorded in it. Unlike the total, it does not grow with the size
+     * of the body.
+     */
+    double getHeadersMillis(double percentile, long minCount) {
+        LatencyHistogram headers = new LatencyHistogram();
+        long epoch = System.currentTimeMillis() / SLICE_MILLIS;
+        for (Slice slice : slices) {
+            synchronized (slice) {
+                if (epoch - slice.epoch < SLICE_COUNT) {
+                    headers.add(slice.headers);
+                }
+            }
+        }
+        return (headers.getTotalCount() >= minCount) ? headers.getValueAtPercentile(percentile) / 1000.0 : -1;
+    }
+
+    public void reset() {
+        for (Slice slice : slices) {
+            synchronized (slice) {
+                slice.reset();
+            }
+        }
+        requestCount.set(0);
+        errorCount.set(0);
+        bytesSent.set(0);
+        bytesReceived.set(0);
+    }
+
+    private Map<String, Double> percentile(double percentile) {
+        LatencyHistogram[] window = window();
+        Map<String, Double> result = new LinkedHashMap<String, Double>();
+        for (int i = 0; i < window.length; i++) {
+            result.put(nameOf(i), window[i].getValueAtPercentile(percentile) / 1000.0);
+        }
+        return result;
+    }
+
+    /**
+     * @return The histograms of the phases and the total, merged over the
+     * slices of the current window.
+     */
+    private LatencyHistogram[] window() {
+        LatencyHistogram[] merged = newHistograms();
+        long epoch = System.currentTimeMillis() / SLICE_MILLIS;
+        for (Slice slice : slices) {
+            synchronized (slice) {
+                if (epoch - slice.epoch < SLICE_COUNT) {
+                    for (int i = 0; i < merged.length; i++) {
+                        merged[i].add(slice.histograms[i]);
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static String nameOf(int index) {
+        return (index < PHASES.length) ? PHASES[index].name() : TOTAL;
+    }
+
+    private static LatencyHistogram[] newHistograms() {
+        LatencyHistogram[] histograms = new LatencyHistogram[PHASES.length + 1];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    private static class Slice {
+        final LatencyHistogram[] histograms = newHistograms();
+        final LatencyHistogram headers = new LatencyHistogram();
+        long epoch = -SLICE_COUNT;
+
+        void reset() {
+            for (LatencyHistogram h : histograms) {
+                h.reset();
+            }
+            headers.reset();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.apuex.restclient;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link RequestMetrics}. Latencies are rolling
+ * aggregates over the last {@link #getWindowSeconds()} seconds, keyed by
+ * the name of a {@link RequestTiming.Phase} or "TOTAL".
+ *
+ * @author wangxy
+ */
+public interface RequestMetricsMXBean {
+
+    long getRequestCount();
+
+    long getErrorCount();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    int getWindowSeconds();
+
+    long getWindowRequestCount();
+
+    Map<String, Double> getMeanMillis();
+
+    Map<String, Double> getP50Millis();
+
+    Map<String, Double> getP95Millis();
+
+    Map<String, Double> getP99Millis();
+
+    Map<String, Double> getMaxMillis();
+
+    void reset();
+}
@@ -0,0 +1,309 @@
+package com.apuex.restclient;
+
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the progress of a single in-flight request and allows it to be
+ * cancelled from another thread.
+ * <p>
+ * A monitor is created by the caller, handed to
+ * {@link HttpRequest#send(String, String, String, String, java.util.Map, String, RequestMonitor)}
+ * and may then be polled (e.g. from a Swing timer) while the request runs
+ * on a background thread.
+ * <p>
+ * A request, which is retried or hedged under a {@link RetryPolicy}, is
+ * sent under a monitor of its own per attempt. Those report their
+ * progress to this monitor as well, which takes over the timing and status
+ * of the attempt, whose response is returned.
+ *
+ * @author wangxy
+ */
+public class RequestMonitor {
+
+    private final long startNanos = System.nanoTime();
+    private final RequestMonitor parent;
+    private final List<RequestMonitor> attempts = new CopyOnWriteArrayList<RequestMonitor>();
+    private final AtomicInteger attemptCount = new AtomicInteger();
+    private volatile RequestTiming timing = new RequestTiming(startNanos);
+    private volatile RequestMonitor adopted;
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesDecoded = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private volatile long bytesToSend = -1;
+    private volatile long endNanos;
+    private volatile int responseCode = -1;
+    private volatile String contentType;
+    private volatile HttpCache.Status cacheStatus;
+    private volatile HttpURLConnection connection;
+    private volatile Future<?> future;
+    private volatile boolean cancelled;
+    private volatile boolean abandoned;
+
+    public RequestMonitor() {
+        this(null);
+    }
+
+    private RequestMonitor(RequestMonitor parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Cancels the request. The underlying connection is disconnected on a
+     * separate daemon thread, since {@link HttpURLConnection#disconnect()}
+     * may block while another thread is reading from it.
+     */
+    public void cancel() {
+        cancelled = true;
+        disconnect(connection);
+        Future<?> f = future;
+        if (f != null) {
+            f.cancel(true);
+        }
+        for (RequestMonitor attempt : attempts) {
+            attempt.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels an attempt, which has lost to a hedged copy of it. Its
+     * failure is not a failure of the request, and it is not recorded.
+     */
+    void abandon() {
+        abandoned = true;
+        cancel();
+    }
+
+    boolean isAbandoned() {
+        return abandoned;
+    }
+
+    public boolean isDone() {
+        return endNanos != 0;
+    }
+
+    /**
+     * @return Milliseconds since the monitor was created, or the total
+     * duration of the request once it has completed.
+     */
+    public long getElapsedMillis() {
+        long end = endNanos;
+        return ((end == 0 ? System.nanoTime() : end) - startNanos) / 1000000L;
+    }
+
+    /**
+     * @return The number of times the request has been sent, hedged copies
+     * included.
+     */
+    public int getAttempts() {
+        return Math.max(1, attemptCount.get());
+    }
+
+    /**
+     * @return The time spent in each phase of the request, or of its last
+     * attempt if it has been retried.
+     */
+    public RequestTiming getTiming() {
+        return timing;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return Length of the request body, or -1 if it has no body or its
+     * length is not known in advance.
+     */
+    public long getBytesToSend() {
+        return bytesToSend;
+    }
+
+    /**
+     * @return Number of response body bytes after content decoding, or 0
+     * if the client does not decode responses.
+     */
+    public long getBytesDecoded() {
+        return bytesDecoded.get();
+    }
+
+    /**
+     * @return The HTTP status code, or -1 while no response has been
+     * received.
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * @return The Content-Type of the response, or null if not known.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return How the response was obtained, or null if the client has no
+     * cache or the request is not cacheable.
+     */
+    public HttpCache.Status getCacheStatus() {
+        return cacheStatus;
+    }
+
+    void attach(HttpURLConnection c) throws InterruptedIOException {
+        connection = c;
+        if (cancelled) {
+            disconnect(c);
+            throw new InterruptedIOException("Request cancelled.");
+        }
+    }
+
+    /**
+     * Attaches the pending result of an asynchronous request, which is
+     * cancelled along with the request.
+     */
+    void attach(Future<?> f) {
+        future = f;
+        if (cancelled) {
+            f.cancel(true);
+        }
+    }
+
+    /**
+     * @return A monitor for another attempt at the request, which is
+     * cancelled along with this one.
+     * @throws InterruptedIOException The request has been cancelled.
+     */
+    RequestMonitor newAttempt() throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Request cancelled.");
+        }
+        RequestMonitor attempt = new RequestMonitor(this);
+        attempts.add(attempt);
+        attemptCount.incrementAndGet();
+        if (cancelled) {
+            attempt.cancel();
+        }
+        return attempt;
+    }
+
+    /**
+     * Takes over the timing and status of the given attempt, whose result
+     * is the result of the request. The request is done once the attempt
+     * is done.
+     */
+    void adopt(RequestMonitor attempt) {
+        timing = attempt.timing;
+        responseCode = attempt.responseCode;
+        contentType = attempt.contentType;
+        cacheStatus = attempt.cacheStatus;
+        adopted = attempt;
+        if (attempt.isDone()) {
+            finished();
+        }
+    }
+
+    /**
+     * Completes a request, whose attempts have all failed, with the timing
+     * and status of the last one.
+     */
+    void failed() {
+        int n = attempts.size();
+        if (n > 0) {
+            adopt(attempts.get(n - 1));
+        } else {
+            done();
+        }
+    }
+
+    void received(long n) throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Request cancelled.");
+        }
+        bytesReceived.addAndGet(n);
+        if (parent != null) {
+            parent.bytesReceived.addAndGet(n);
+        }
+    }
+
+    void sending(long length) {
+        bytesToSend = length;
+        if (parent != null) {
+            parent.bytesToSend = length;
+        }
+    }
+
+    void sent(long n) throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Request cancelled.");
+        }
+        bytesSent.addAndGet(n);
+        if (parent != null) {
+            parent.bytesSent.addAndGet(n);
+        }
+    }
+
+    void decoded(long n) throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Request cancelled.");
+        }
+        bytesDecoded.addAndGet(n);
+        if (parent != null) {
+            parent.bytesDecoded.addAndGet(n);
+        }
+    }
+
+    void responded(int code, String type) {
+        responseCode = code;
+        contentType = type;
+        if (parent != null) {
+            parent.responded(code, type);
+        }
+    }
+
+    void cached(HttpCache.Status status) {
+        cacheStatus = status;
+    }
+
+    void done() {
+        if (timing.isMarked(RequestTiming.Phase.WAIT)) {
+            timing.mark(RequestTiming.Phase.TRANSFER);
+        }
+        finished();
+        if (parent != null && parent.adopted == this) {
+            parent.finished();
+        }
+    }
+
+    private void finished() {
+        endNanos = System.nanoTime();
+        connection = null;
+        future = null;
+    }
+
+    private static void disconnect(final HttpURLConnection c) {
+        if (c == null) {
+            return;
+        }
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                c.disconnect();
+            }
+        }, "disconnect");
+        t.setDaemon(true);
+        t.start();
+    }
+}
@@ -0,0 +1,168 @@
+package com.apuex.restclient;
+
+import java.io.*;
+import java.util.*;
+
+import static com.apuex.restclient.HttpRequest.DEFAULT_CHARSET;
+
+/**
+ * An immutable description of a request, as composed in {@link MainFrame}.
+ * It may be sent any number of times, e.g. by a {@link LoadTest}.
+ *
+ * @author wangxy
+ */
+public class RequestSpec {
+
+    public static final String MULTIPART_FORM_DATA = "multipart/form-data";
+
+    private final String url;
+    private final String method;
+    private final String contentType;
+    private final String acceptContentType;
+    private final Map<String, String> headers;
+    private final String body;
+    private final List<File> attachments;
+
+    public RequestSpec(
+            String url,
+            String method,
+            String contentType,
+            String acceptContentType,
+            Map<String, String> headers,
+            String body
+    ) {
+        this(url, method, contentType, acceptContentType, headers, body,
+                Collections.<File>emptyList());
+    }
+
+    /**
+     * @param attachments Files to send instead of the body text. A single
+     *                    file is sent as is, several files, or any file
+     *                    with a content type of {@link #MULTIPART_FORM_DATA},
+     *                    as multipart/form-data.
+     */
+    public RequestSpec(
+            String url,
+            String method,
+            String contentType,
+            String acceptContentType,
+            Map<String, String> headers,
+            String body,
+            List<File> attachments
+    ) {
+        this.url = url;
+        this.method = method;
+        this.contentType = contentType;
+        this.acceptContentType = acceptContentType;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<String, String>(headers));
+        this.body = body;
+        this.attachments = Collections.unmodifiableList(new ArrayList<File>(attachments));
+    }
+
+    /**
+     * @param extra Headers to add, which replace those of the same name.
+     * @return A copy of this request with the given headers added.
+     */
+    public RequestSpec withHeaders(Map<String, String> extra) {
+        Map<String, String> merged = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            boolean replaced = false;
+            for (String name : extra.keySet()) {
+                replaced = replaced || name.equalsIgnoreCase(h.getKey());
+            }
+            if (!replaced) {
+                merged.put(h.getKey(), h.getValue());
+            }
+        }
+        merged.putAll(extra);
+        return new RequestSpec(url, method, contentType, acceptContentType, merged, body, attachments);
+    }
+
+    /**
+     * Parses request headers given as "Name: value" lines. Blank lines are
+     * skipped.
+     *
+     * @param text The header lines.
+     * @return The headers, in the order given.
+     * @throws IllegalArgumentException A line is not a valid header.
+     */
+    public static Map<String, String> parseHeaders(String text) {
+        LinkedHashMap<String, String> headers = new LinkedHashMap<String, String>();
+        BufferedReader br = new BufferedReader(new StringReader(text));
+        try {
+            while (true) {
+                String line = br.readLine();
+                if (line == null) {
+                    break;
+                }
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] header = line.split(":", 2);
+                if (header.length != 2) {
+                    throw new IllegalArgumentException("Invalid header: " + line);
+                }
+                headers.put(header[0].trim(), header[1].trim());
+            }
+        } catch (IOException e) {
+            // never thrown by a StringReader.
+            throw new IllegalStateException(e);
+        }
+        return headers;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getAcceptContentType() {
+        return acceptContentType;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public List<File> getAttachments() {
+        return attachments;
+    }
+
+    /**
+     * @return Whether the request method sends a body.
+     */
+    public boolean hasBody() {
+        return "POST".equals(method) || "PUT".equals(method);
+    }
+
+    /**
+     * @return The body to send, streaming the attachments if any.
+     * @throws UnsupportedEncodingException The default charset is not
+     *                                      supported.
+     */
+    public RequestBody getRequestBody() throws UnsupportedEncodingException {
+        if (attachments.isEmpty()) {
+            return RequestBody.of(body, DEFAULT_CHARSET);
+        }
+        if (attachments.size() == 1 && !MULTIPART_FORM_DATA.equals(contentType)) {
+            return RequestBody.of(attachments.get(0));
+        }
+        return RequestBody.multipart(attachments);
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url;
+    }
+}
@@ -0,0 +1,117 @@
+package com.apuex.restclient;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The time a request spent in each of its phases. Phases are marked by
+ * {@link RestClient} as they end and may be read from another thread
+ * while the request runs.
+ * <p>
+ * A phase, which was skipped, has a duration of 0: a reused keep-alive
+ * connection needs no TCP connect and no TLS handshake, and a response
+ * served from the cache has no phases at all.
+ *
+ * @author wangxy
+ */
+public class RequestTiming {
+
+    public enum Phase {
+        /**
+         * Waiting for a free connection of the route.
+         */
+        QUEUED,
+        /**
+         * Resolving the host name.
+         */
+        DNS,
+        /**
+         * Establishing the TCP connection.
+         */
+        CONNECT,
+        /**
+         * The TLS handshake.
+         */
+        TLS,
+        /**
+         * Writing the request headers and body.
+         */
+        SEND,
+        /**
+         * Waiting for the response headers, i.e. the time to first byte.
+         */
+        WAIT,
+        /**
+         * Reading the response body.
+         */
+        TRANSFER
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long startNanos;
+    private final AtomicLongArray ends = new AtomicLongArray(PHASES.length);
+
+    public RequestTiming() {
+        this(System.nanoTime());
+    }
+
+    RequestTiming(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    void mark(Phase phase) {
+        ends.set(phase.ordinal(), System.nanoTime());
+    }
+
+    boolean isMarked(Phase phase) {
+        return ends.get(phase.ordinal()) != 0;
+    }
+
+    /**
+     * @return Nanoseconds from the start of the request to the start of the
+     * given phase.
+     */
+    public long getOffsetNanos(Phase phase) {
+        for (int i = phase.ordinal() - 1; i >= 0; i--) {
+            long end = ends.get(i);
+            if (end != 0) {
+                return end - startNanos;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return Duration of the given phase in nanoseconds, or 0 if it has
+     * been skipped or has not ended yet.
+     */
+    public long getNanos(Phase phase) {
+        long end = ends.get(phase.ordinal());
+        return (end == 0) ? 0 : end - startNanos - getOffsetNanos(phase);
+    }
+
+    /**
+     * @return Nanoseconds from the start of the request to the end of the
+     * last phase, which has ended.
+     */
+    public long getTotalNanos() {
+        for (int i = PHASES.length - 1; i >= 0; i--) {
+            long end = ends.get(i);
+            if (end != 0) {
+                return end - startNanos;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : PHASES) {
+            sb.append(phase.name().toLowerCase(Locale.ROOT)).append('=')
+                    .append(String.format(Locale.ROOT, "%.3fms", getNanos(phase) / 1e6)).append(' ');
+        }
+        return sb.append(String.format(Locale.ROOT, "total=%.3fms", getTotalNanos() / 1e6)).toString();
+    }
+}
@@ -0,0 +1,292 @@
+package com.apuex.restclient;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A response, as returned by {@link RestClient#open(RequestSpec, RequestMonitor)}.
+ * The status and headers are available at once, while the body is read
+ * from the connection only as the caller consumes it, so that bodies of
+ * any size are processed in constant memory.
+ * <p>
+ * The body may be consumed once, as an {@link InputStream}, in
+ * {@link ByteBuffer} chunks, or as a String. A response must be closed,
+ * which reads what is left of the body, so that the connection is reused.
+ * It is closed implicitly once its body has been read to the end.
+ *
+ * @author wangxy
+ */
+public class Response implements Closeable {
+
+    /**
+     * Receives the body of a response chunk by chunk.
+     */
+    public interface ChunkHandler {
+
+        /**
+         * @param chunk The next chunk of the body. It is only valid during
+         *              the call, since its buffer is reused.
+         * @throws IOException Aborts reading the body.
+         */
+        void chunk(ByteBuffer chunk) throws IOException;
+    }
+
+    /**
+     * Notified once a response is closed.
+     */
+    interface Listener {
+
+        /**
+         * @param failed Whether reading the body failed.
+         */
+        void closed(Response response, boolean failed);
+    }
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final String statusLine;
+    private final int status;
+    private final Map<String, List<String>> headers;
+    private final InputStream body;
+    private final Listener listener;
+    private boolean consumed;
+    private boolean failed;
+    private boolean closed;
+
+    /**
+     * @param statusLine The status line, e.g. "HTTP/1.1 200 OK".
+     * @param status     The status code.
+     * @param headers    The headers, keyed case insensitively.
+     * @param body       The body, or null if there is none.
+     * @param listener   Notified once the response is closed, or null.
+     */
+    Response(String statusLine, int status, Map<String, List<String>> headers,
+             InputStream body, Listener listener) {
+        this.statusLine = statusLine;
+        this.status = status;
+        this.headers = headers;
+        this.body = (body != null) ? body : new ByteArrayInputStream(new byte[0]);
+        this.listener = listener;
+    }
+
+    /**
+     * @return The headers of the given connection, keyed case insensitively.
+     * The status line, which the connection keeps under the null key, is
+     * left out; it is passed to the constructor separately.
+     */
+    static Map<String, List<String>> headersOf(HttpURLConnection connection) {
+        Map<String, List<String>> headers = newHeaders();
+        for (Map.Entry<String, List<String>> e : connection.getHeaderFields().entrySet()) {
+            if (e.getKey() == null) {
+                continue;
+            }
+            List<String> values = headers.get(e.getKey());
+            if (values == null) {
+                headers.put(e.getKey(), new ArrayList<String>(e.getValue()));
+            } else {
+                values.addAll(e.getValue());
+            }
+        }
+        for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+            e.setValue(Collections.unmodifiableList(e.getValue()));
+        }
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * @return An empty map, which compares header names case insensitively.
+     */
+    static Map<String, List<String>> newHeaders() {
+        return new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    /**
+     * @return The status line and headers, one per line and followed by an
+     * empty line, as shown in the response view.
+     */
+    static String format(String statusLine, Map<String, List<String>> headers) {
+        StringBuilder sb = new StringBuilder();
+        if (statusLine != null) {
+            sb.append('[').append(statusLine).append("]\n");
+        }
+        for (Map.Entry<String, List<String>> e : headers.entrySet()) {
+            sb.append(e.getKey()).append(" = ").append(e.getValue()).append('\n');
+        }
+        return sb.append("\n\n").toString();
+    }
+
+    public String getStatusLine() {
+        return statusLine;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return All headers, keyed case insensitively.
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return All values of the given header, which may be empty.
+     */
+    public List<String> getHeaders(String name) {
+        List<String> values = headers.get(name);
+        return (values != null) ? values : Collections.<String>emptyList();
+    }
+
+    /**
+     * @return The first value of the given header, or null if there is
+     * none.
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return (values != null && !values.isEmpty()) ? values.get(0) : null;
+    }
+
+    public String getContentType() {
+        return getHeader("Content-Type");
+    }
+
+    /**
+     * @return The character set of the body, as declared by its
+     * Content-Type, or {@link HttpRequest#DEFAULT_CHARSET}.
+     */
+    public String getCharset() {
+        return HttpRequest.getCharset(getContentType());
+    }
+
+    /**
+     * @return The status line and headers, formatted for display.
+     */
+    public String formatHeaders() {
+        return format(statusLine, headers);
+    }
+
+    /**
+     * @return The decoded body. Closing the stream closes the response.
+     * @throws IllegalStateException The body has been consumed already.
+     */
+    public InputStream getBody() {
+        consume();
+        return new FilterInputStream(body) {
+            @Override
+            public int read() throws IOException {
+                try {
+                    int b = super.read();
+                    if (b == -1) {
+                        Response.this.close();
+                    }
+                    return b;
+                } catch (IOException e) {
+                    failed = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    int n = super.read(b, off, len);
+                    if (n == -1) {
+                        Response.this.close();
+                    }
+                    return n;
+                } catch (IOException e) {
+                    failed = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public void close() {
+                Response.this.close();
+            }
+        };
+    }
+
+    /**
+     * Reads the body to the end, passing it to the given handler chunk by
+     * chunk, and closes the response.
+     *
+     * @return The length of the decoded body.
+     * @throws IllegalStateException The body has been consumed already.
+     */
+    public long forEachChunk(ChunkHandler handler) throws IOException {
+        InputStream in = getBody();
+        try {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            ByteBuffer chunk = ByteBuffer.wrap(buffer);
+            long total = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                if (n > 0) {
+                    chunk.clear().limit(n);
+                    handler.chunk(chunk.asReadOnlyBuffer());
+                    total += n;
+                }
+            }
+            return total;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies the body to the given stream, which is flushed but not closed,
+     * and closes the response.
+     *
+     * @return The length of the decoded body.
+     */
+    public long transferTo(OutputStream out) throws IOException {
+        return HttpRequest.copy(getBody(), out, false);
+    }
+
+    /**
+     * Reads the whole body into memory, decoded with {@link #getCharset()},
+     * and closes the response.
+     */
+    public String asString() throws IOException {
+        return HttpRequest.asString(getBody(), getCharset());
+    }
+
+    /**
+     * Reads what is left of the body, so that the connection may be reused,
+     * and releases it. Does nothing if already closed.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            HttpRequest.copy(body, null, false);
+        } catch (IOException e) {
+            failed = failed || consumed;
+        }
+        if (listener != null) {
+            listener.closed(this, failed);
+        }
+    }
+
+    private synchronized void consume() {
+        if (consumed) {
+            throw new IllegalStateException("The body has been consumed already.");
+        }
+        if (closed) {
+            throw new IllegalStateException("The response has been closed.");
+        }
+        consumed = true;
+    }
+}
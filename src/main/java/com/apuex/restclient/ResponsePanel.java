@@ -0,0 +1,449 @@
+package com.apuex.restclient;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Shows the response of a single request, which is executed on a
+ * background thread. While the request is in flight the elapsed time and
+ * number of bytes received are updated periodically, and the request may
+ * be cancelled. The time spent in each phase of the request is shown in a
+ * {@link TimingWaterfall} below the response.
+ * <p>
+ * JSON and XML bodies may be pretty-printed by a {@link FormattingWriter}
+ * as they are received, and are then highlighted in the background by a
+ * {@link SyntaxHighlighter}.
+ *
+ * @author wangxy
+ */
+public class ResponsePanel extends JPanel {
+
+    private static final int REFRESH_INTERVAL = 200;
+
+    /**
+     * Bodies larger than this are shown in a {@link TextFileViewer} instead
+     * of the text area.
+     */
+    private static final long TEXT_AREA_LIMIT = 1 << 20;
+
+    /**
+     * Formatted text beyond this number of characters is not highlighted.
+     */
+    private static final long HIGHLIGHT_LIMIT = 256 << 10;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    public ResponsePanel(ResourceBundle bundle) {
+        this.bundle = bundle;
+        this.monitor = new RequestMonitor();
+        initComponents();
+    }
+
+    private void initComponents() {
+        status = new JLabel();
+        cancelButton = new JButton();
+        closeButton = new JButton();
+        responsePane = new JScrollPane();
+        response = new JTextPane() {
+            @Override
+            public boolean getScrollableTracksViewportWidth() {
+                // do not wrap lines, like a text area.
+                Component parent = getParent();
+                return parent == null || getUI().getPreferredSize(this).width <= parent.getWidth();
+            }
+        };
+
+        setLayout(new BorderLayout());
+
+        JPanel toolBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 2));
+        toolBar.add(status);
+
+        cancelButton.setText(bundle.getString("cancel.request"));
+        cancelButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                cancel();
+            }
+        });
+        toolBar.add(cancelButton);
+
+        closeButton.setText(bundle.getString("close.response"));
+        closeButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                close();
+            }
+        });
+        toolBar.add(closeButton);
+        add(toolBar, BorderLayout.NORTH);
+
+        responsePane.setViewportView(response);
+        add(responsePane, BorderLayout.CENTER);
+
+        waterfall = new TimingWaterfall(monitor, bundle);
+        waterfall.setBorder(BorderFactory.createEmptyBorder(2, 4, 2, 4));
+        add(waterfall, BorderLayout.SOUTH);
+
+        timer = new Timer(REFRESH_INTERVAL, new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                updateStatus();
+            }
+        });
+    }
+
+    public RequestMonitor getMonitor() {
+        return monitor;
+    }
+
+    /**
+     * Sends the request on the given executor. The response body is spooled
+     * to a temporary file; large bodies are then displayed straight from
+     * that file, without loading them into the heap. The file is kept until
+     * the panel is closed, so that the body may be compared to another.
+     *
+     * @param format  Whether to pretty-print JSON and XML bodies, which are
+     *                told by the Content-Type of the response or, if there is
+     *                none, the accepted content type of the request.
+     * @param history The history to record the exchange into, or null.
+     */
+    public void send(Executor executor, final RestClient client, final RequestSpec request,
+                     final boolean format, final History history) {
+        execute(executor, new Callable<String>() {
+            public String call() throws Exception {
+                File spool = File.createTempFile("response", ".tmp");
+                spool.deleteOnExit();
+                boolean keep = false;
+                try {
+                    String headerSection;
+                    Charset charset;
+                    String type;
+                    OutputStream out = new FileOutputStream(spool);
+                    try {
+                        Response response = client.open(request, monitor);
+                        try {
+                            InputStream body = (history != null)
+                                    ? history.record(request, response, monitor) : response.getBody();
+                            headerSection = response.formatHeaders();
+                            charset = HttpRequest.toCharset(response.getCharset());
+                            type = (response.getContentType() != null)
+                                    ? response.getContentType() : request.getAcceptContentType();
+                            SyntaxHighlighter tokens = new SyntaxHighlighter(HIGHLIGHT_LIMIT);
+                            FormattingWriter formatter = format ? FormattingWriter.create(type,
+                                    new BufferedWriter(new OutputStreamWriter(out, charset)), tokens) : null;
+                            if (formatter == null) {
+                                HttpRequest.copy(body, out, false);
+                            } else {
+                                Reader in = new InputStreamReader(body, charset);
+                                char[] buffer = new char[BUFFER_SIZE];
+                                int n;
+                                while ((n = in.read(buffer)) != -1) {
+                                    formatter.write(buffer, 0, n);
+                                }
+                                formatter.close();
+                                highlighter = tokens;
+                            }
+                        } finally {
+                            response.close();
+                        }
+                    } finally {
+                        out.close();
+                    }
+                    String text;
+                    if (spool.length() <= TEXT_AREA_LIMIT) {
+                        bodyOffset = headerSection.length();
+                        text = headerSection + HttpRequest.asString(new FileInputStream(spool), charset.name());
+                    } else {
+                        highlighter = null;
+                        largeBodyCharset = charset;
+                        largeBody = new MappedTextFile(spool);
+                        text = headerSection;
+                    }
+                    bodyCharset = charset;
+                    bodyType = type;
+                    bodyFile = spool;
+                    keep = true;
+                    return text;
+                } finally {
+                    if (!keep) {
+                        spool.delete();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the request on the given executor and displays its result once
+     * completed. Must be called on the event dispatch thread.
+     *
+     * @param executor The executor to run the request on.
+     * @param request  The request, which should report its progress to
+     *                 {@link #getMonitor()}.
+     */
+    public void execute(Executor executor, final Callable<String> request) {
+        worker = new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() throws Exception {
+                return request.call();
+            }
+
+            @Override
+            protected void done() {
+                timer.stop();
+                cancelButton.setEnabled(false);
+                updateStatus();
+                try {
+                    response.setText(get());
+                    response.setCaretPosition(0);
+                    if (highlighter != null) {
+                        highlighter.apply(response.getStyledDocument(), bodyOffset);
+                    }
+                    if (largeBody != null) {
+                        showLargeBody();
+                    }
+                } catch (CancellationException e) {
+                    // status already tells.
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    if (!monitor.isCancelled()) {
+                        e.getCause().printStackTrace();
+                        response.setText(e.getCause().toString());
+                    }
+                }
+            }
+        };
+        updateStatus();
+        timer.start();
+        executor.execute(worker);
+    }
+
+    private void showLargeBody() {
+        viewer = new TextFileViewer(largeBody, largeBodyCharset);
+        final JLabel indexStatus = new JLabel();
+        final JTextField line = new JTextField(8);
+        final JTextField find = new JTextField(16);
+
+        JPanel viewerToolBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 2));
+        viewerToolBar.add(new JLabel(bundle.getString("viewer.line")));
+        viewerToolBar.add(line);
+        ActionListener goToLine = new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                try {
+                    int n = Integer.parseInt(line.getText().trim()) - 1;
+                    viewer.scrollToLine(Math.max(0, Math.min(n, largeBody.getLineCount() - 1)));
+                } catch (NumberFormatException e) {
+                    line.selectAll();
+                }
+            }
+        };
+        line.addActionListener(goToLine);
+        JButton goButton = new JButton(bundle.getString("viewer.go"));
+        goButton.addActionListener(goToLine);
+        viewerToolBar.add(goButton);
+
+        viewerToolBar.add(new JLabel(bundle.getString("viewer.find")));
+        viewerToolBar.add(find);
+        ActionListener findNext = new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                findNext(find.getText(), indexStatus);
+            }
+        };
+        find.addActionListener(findNext);
+        JButton findButton = new JButton(bundle.getString("viewer.find.next"));
+        findButton.addActionListener(findNext);
+        viewerToolBar.add(findButton);
+        viewerToolBar.add(indexStatus);
+
+        JPanel viewerPanel = new JPanel(new BorderLayout());
+        viewerPanel.add(viewerToolBar, BorderLayout.NORTH);
+        viewerPanel.add(new JScrollPane(viewer), BorderLayout.CENTER);
+
+        remove(responsePane);
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, responsePane, viewerPanel);
+        split.setResizeWeight(0.2);
+        add(split, BorderLayout.CENTER);
+        revalidate();
+
+        indexer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    largeBody.buildIndex();
+                } catch (InterruptedIOException e) {
+                    // panel closed.
+                }
+            }
+        }, "index");
+        indexer.setDaemon(true);
+        indexer.start();
+        indexTimer = new Timer(REFRESH_INTERVAL, null);
+        indexTimer.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent evt) {
+                boolean done = largeBody.isIndexed();
+                indexStatus.setText(MessageFormat.format(bundle.getString(
+                        done ? "viewer.indexed" : "viewer.indexing"),
+                        largeBody.getLineCount(), largeBody.length()));
+                viewer.refresh();
+                if (done) {
+                    indexTimer.stop();
+                }
+            }
+        });
+        indexTimer.start();
+    }
+
+    private void findNext(String text, final JLabel findStatus) {
+        if (text.isEmpty()) {
+            return;
+        }
+        final byte[] needle = text.getBytes(largeBodyCharset);
+        final long from = viewer.getSelectionEnd() < 0 ? 0 : viewer.getSelectionEnd();
+        new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws Exception {
+                return largeBody.find(needle, from);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    long position = get();
+                    if (position < 0) {
+                        findStatus.setText(bundle.getString("viewer.not.found"));
+                    } else {
+                        viewer.select(position, position + needle.length);
+                    }
+                } catch (Exception e) {
+                    findStatus.setText(e.toString());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * @return The file the body of the response was spooled to, or null
+     * unless the response was sent by {@link #send} and completed.
+     */
+    public File getBodyFile() {
+        return bodyFile;
+    }
+
+    public Charset getBodyCharset() {
+        return bodyCharset;
+    }
+
+    /**
+     * @return The content type of the body, or null if unknown.
+     */
+    public String getBodyType() {
+        return bodyType;
+    }
+
+    public void setMessage(String message) {
+        response.setText(message);
+    }
+
+    public void cancel() {
+        monitor.cancel();
+        if (worker != null) {
+            worker.cancel(true);
+        }
+    }
+
+    private void close() {
+        cancel();
+        timer.stop();
+        if (highlighter != null) {
+            highlighter.stop();
+        }
+        if (indexer != null) {
+            indexer.interrupt();
+            indexTimer.stop();
+        }
+        if (largeBody != null) {
+            try {
+                largeBody.close();
+            } catch (IOException e) {
+                /* Ignore me */
+            }
+        }
+        if (bodyFile != null) {
+            bodyFile.delete();
+        }
+        Container parent = getParent();
+        if (parent != null) {
+            parent.remove(this);
+            parent.validate();
+            parent.repaint();
+        }
+    }
+
+    private void updateStatus() {
+        String key;
+        if (monitor.isCancelled()) {
+            key = "status.cancelled";
+        } else if (worker != null && worker.isDone()) {
+            key = "status.done";
+        } else {
+            key = "status.running";
+        }
+        String text = MessageFormat.format(bundle.getString(key),
+                monitor.getElapsedMillis(), monitor.getBytesReceived());
+        long toSend = monitor.getBytesToSend();
+        if (toSend >= 0) {
+            text += MessageFormat.format(bundle.getString("status.sent"), monitor.getBytesSent(), toSend);
+        } else if (monitor.getBytesSent() > 0) {
+            text += MessageFormat.format(bundle.getString("status.sent.chunked"), monitor.getBytesSent());
+        }
+        long decoded = monitor.getBytesDecoded();
+        if (decoded > 0 && decoded != monitor.getBytesReceived()) {
+            text += MessageFormat.format(bundle.getString("status.decoded"), decoded);
+        }
+        if (monitor.getAttempts() > 1) {
+            text += MessageFormat.format(bundle.getString("status.attempts"), monitor.getAttempts());
+        }
+        HttpCache.Status cacheStatus = monitor.getCacheStatus();
+        if (cacheStatus != null) {
+            text += bundle.getString("status.cache." + cacheStatus.name().toLowerCase(Locale.ROOT));
+        }
+        long elapsed = monitor.getElapsedMillis();
+        if (elapsed > 0 && monitor.getBytesReceived() > 0) {
+            text += MessageFormat.format(bundle.getString("status.throughput"),
+                    monitor.getBytesReceived() / 1.024 / elapsed);
+        }
+        status.setText(text);
+        waterfall.repaint();
+    }
+
+    // Variables declaration
+    private JLabel status;
+    private JButton cancelButton;
+    private JButton closeButton;
+    private JScrollPane responsePane;
+    private JTextPane response;
+    private TimingWaterfall waterfall;
+    private Timer timer;
+    private ResourceBundle bundle;
+    private RequestMonitor monitor;
+    private SwingWorker<String, Void> worker;
+    private volatile SyntaxHighlighter highlighter;
+    private volatile int bodyOffset;
+    private volatile MappedTextFile largeBody;
+    private volatile Charset largeBodyCharset;
+    private volatile File bodyFile;
+    private volatile Charset bodyCharset;
+    private volatile String bodyType;
+    private TextFileViewer viewer;
+    private Thread indexer;
+    private Timer indexTimer;
+    // End of variables declaration
+}
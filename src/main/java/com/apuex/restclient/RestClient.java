@@ -0,0 +1,919 @@
+package com.apuex.restclient;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.apuex.restclient.HttpRequest.DEFAULT_CHARSET;
+
+/**
+ * A reusable HTTP client. Instances are thread safe and are meant to be
+ * shared, so that requests to the same host reuse warm keep-alive
+ * connections instead of paying the TCP and TLS handshakes again.
+ * <p>
+ * Sockets are pooled by the keep-alive cache of {@link HttpURLConnection},
+ * which only hands a connection back to the pool once its response has
+ * been read to the end. This client therefore always drains and closes
+ * response streams, including error streams, and never disconnects a
+ * connection that completed normally. The number of concurrent requests
+ * per route (scheme, host and port) is bounded by
+ * {@link #getMaxConnectionsPerRoute()}; callers beyond that limit wait for
+ * a connection to be released.
+ * <p>
+ * GET responses are cached once a {@link HttpCache} has been set with
+ * {@link #setCache(HttpCache)}. The time spent in each phase of a request
+ * is recorded in the {@link RequestTiming} of its monitor and aggregated
+ * by the {@link RequestMetrics} set with {@link #setMetrics(RequestMetrics)}.
+ * Idempotent requests are retried and hedged as told by the
+ * {@link RetryPolicy} set with {@link #setRetryPolicy(RetryPolicy)}.
+ * Responses are recorded, for a {@link MockServer} to replay, into the
+ * {@link ExchangeStore} set with {@link #setRecorder(ExchangeStore)}.
+ *
+ * @author wangxy
+ */
+public class RestClient {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    public static final int DEFAULT_READ_TIMEOUT = 60000;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000L;
+
+    /**
+     * System property, which sizes the keep-alive cache of
+     * {@link HttpURLConnection} per destination. It is read once, when the
+     * first connection is pooled; see {@link #configureKeepAlive(int)}.
+     */
+    private static final String MAX_CONNECTIONS_PROPERTY = "http.maxConnections";
+
+    /**
+     * Buffer size for writing downloads to disk.
+     */
+    private static final int TRANSFER_BUFFER_SIZE = 65536;
+
+    /**
+     * Retry delays are slept in steps of this many milliseconds at most, so
+     * that a cancelled request stops waiting soon.
+     */
+    private static final long CANCEL_CHECK_INTERVAL = 100L;
+
+    private static final RestClient DEFAULT_CLIENT = new RestClient();
+
+    /**
+     * Runs the copies of hedged requests. Its threads mostly wait for the
+     * response headers, so the pool is not bounded; the connections per
+     * route are.
+     */
+    private static final ExecutorService HEDGE_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "hedge-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+    private final int maxConnectionsPerRoute;
+    private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private volatile boolean followRedirects = true;
+    private volatile boolean decompress = true;
+    private volatile HttpCache cache;
+    private volatile RequestMetrics metrics;
+    private volatile RetryPolicy retryPolicy;
+    private volatile ExchangeStore recorder;
+    private volatile long lastEviction = System.currentTimeMillis();
+
+    public RestClient() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    /**
+     * @param maxConnectionsPerRoute The maximum number of connections, which
+     *                               are in use or kept alive per route.
+     */
+    public RestClient(int maxConnectionsPerRoute) {
+        if (maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerRoute < 1");
+        }
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    /**
+     * Sizes the keep-alive cache of {@link HttpURLConnection}, which is
+     * shared by all clients of the process, unless it was sized on the
+     * command line. Meant to be called once, at startup: the size is read
+     * when the first connection is pooled, and later calls have no effect.
+     *
+     * @param maxConnections The number of idle connections kept alive per
+     *                       destination, e.g. the largest number of
+     *                       concurrent requests per route expected.
+     */
+    public static void configureKeepAlive(int maxConnections) {
+        if (System.getProperty(MAX_CONNECTIONS_PROPERTY) == null) {
+            System.setProperty(MAX_CONNECTIONS_PROPERTY, Integer.toString(maxConnections));
+        }
+    }
+
+    /**
+     * @return The client shared by the static methods of {@link HttpRequest}.
+     */
+    public static RestClient getDefault() {
+        return DEFAULT_CLIENT;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @param connectTimeout Timeout in milliseconds for establishing a
+     *                       connection, 0 meaning infinite.
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * @param readTimeout Timeout in milliseconds for a single read from the
+     *                    connection, 0 meaning infinite.
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout Milliseconds after which the bookkeeping of a route
+     *                    without requests is evicted.
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public boolean isFollowRedirects() {
+        return followRedirects;
+    }
+
+    public void setFollowRedirects(boolean followRedirects) {
+        this.followRedirects = followRedirects;
+    }
+
+    public boolean isDecompress() {
+        return decompress;
+    }
+
+    /**
+     * @param decompress Whether to ask for gzip or deflate compressed
+     *                   responses and decode them while they are read.
+     */
+    public void setDecompress(boolean decompress) {
+        this.decompress = decompress;
+    }
+
+    public HttpCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param cache The cache for GET responses, or null to disable caching.
+     */
+    public void setCache(HttpCache cache) {
+        this.cache = cache;
+    }
+
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics The metrics to record completed requests to, or null.
+     */
+    public void setMetrics(RequestMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @param retryPolicy The policy to retry and hedge idempotent requests
+     *                    by, or null to send every request once.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public ExchangeStore getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * @param recorder The store to record the responses received from the
+     *                 network into, for a {@link MockServer} to replay, or
+     *                 null to record nothing.
+     */
+    public void setRecorder(ExchangeStore recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * @return The number of routes currently tracked by this client.
+     */
+    public int getRouteCount() {
+        return routes.size();
+    }
+
+    /**
+     * Sends the request and returns the response headers followed by the
+     * response body, reporting progress to the given monitor. Use
+     * {@link #open(RequestSpec, RequestMonitor)} to process the status,
+     * headers and body separately. The request
+     * is aborted with an {@link InterruptedIOException} once
+     * {@link RequestMonitor#cancel()} has been called.
+     */
+    public String send(
+            String requestUrl,
+            String method,
+            String contentType,
+            String acceptContentType,
+            Map<String, String> headers,
+            String body,
+            RequestMonitor monitor
+    ) throws Exception {
+        return send(new RequestSpec(requestUrl, method, contentType,
+                acceptContentType, headers, body), monitor);
+    }
+
+    /**
+     * Sends the given request.
+     *
+     * @see #send(String, String, String, String, Map, String, RequestMonitor)
+     */
+    public String send(RequestSpec request, RequestMonitor monitor) throws Exception {
+        Response response = open(request, monitor);
+        try {
+            return response.formatHeaders() + response.asString();
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Sends the given request and copies the decoded response body, of
+     * successful and error responses alike, to the given stream.
+     *
+     * @param request The request to send.
+     * @param body    The stream to copy the body to, or null to discard it.
+     *                It is flushed, but not closed.
+     * @param monitor The monitor to report progress to.
+     * @return The response headers.
+     */
+    public String send(RequestSpec request, OutputStream body, RequestMonitor monitor) throws Exception {
+        Response response = open(request, monitor);
+        try {
+            String headerSection = response.formatHeaders();
+            response.transferTo(body);
+            return headerSection;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Sends the given request and returns the response as soon as its
+     * headers have been received. The body is read from the connection as
+     * the caller consumes it, and the connection counts against the limit
+     * of its route until the response is closed.
+     * <p>
+     * Under a {@link RetryPolicy}, the response returned is that of the
+     * last attempt, and {@link RequestMonitor#getAttempts()} tells how many
+     * were made.
+     *
+     * @param request The request to send.
+     * @param monitor The monitor to report progress to.
+     * @return The response, which the caller must close.
+     */
+    public Response open(RequestSpec request, RequestMonitor monitor) throws Exception {
+        RetryPolicy policy = this.retryPolicy;
+        if (policy != null && policy.isRetryable(request.getMethod())) {
+            return retry(request, policy, monitor);
+        }
+        return openOnce(request, monitor);
+    }
+
+    private Response retry(RequestSpec request, RetryPolicy policy, RequestMonitor monitor) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            Attempt sent = null;
+            long delay;
+            try {
+                sent = policy.isHedge() ? hedge(request, policy, monitor)
+                        : new Attempt(request, monitor.newAttempt()).call();
+            } catch (Exception e) {
+                if (monitor.isCancelled() || attempt >= policy.getMaxAttempts() || !isRetryable(e)) {
+                    monitor.failed();
+                    throw e;
+                }
+            }
+            if (sent == null) {
+                delay = policy.backoff(attempt);
+            } else {
+                Response response = sent.response;
+                if (attempt >= policy.getMaxAttempts()
+                        || !policy.getRetryOnStatus().contains(response.getStatus())) {
+                    monitor.adopt(sent.monitor);
+                    return response;
+                }
+                delay = policy.retryAfter(response.getHeader("Retry-After"));
+                if (delay > policy.getMaxDelay()) {
+                    // the server asks for more patience than we have.
+                    monitor.adopt(sent.monitor);
+                    return response;
+                }
+                if (delay < 0) {
+                    delay = policy.backoff(attempt);
+                }
+                response.close();
+            }
+            long until = System.currentTimeMillis() + delay;
+            for (long left = delay; left > 0; left = until - System.currentTimeMillis()) {
+                if (monitor.isCancelled()) {
+                    break;
+                }
+                try {
+                    Thread.sleep(Math.min(left, CANCEL_CHECK_INTERVAL));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    monitor.failed();
+                    throw new InterruptedIOException("Request interrupted.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the request, and a copy of it if no response has arrived after
+     * the hedge delay of the policy.
+     *
+     * @return The attempt, which has responded first.
+     */
+    private Attempt hedge(RequestSpec request, RetryPolicy policy, RequestMonitor monitor) throws Exception {
+        CompletionService<Attempt> completion = new ExecutorCompletionService<Attempt>(HEDGE_EXECUTOR);
+        List<Attempt> attempts = new ArrayList<Attempt>(2);
+        Attempt first = new Attempt(request, monitor.newAttempt());
+        attempts.add(first);
+        first.monitor.attach(completion.submit(first));
+        Attempt winner = null;
+        try {
+            Future<Attempt> next = completion.poll(policy.hedgeDelay(metrics), TimeUnit.MILLISECONDS);
+            if (next == null) {
+                Attempt second = new Attempt(request, monitor.newAttempt());
+                attempts.add(second);
+                second.monitor.attach(completion.submit(second));
+            }
+            Exception failure = null;
+            for (int pending = attempts.size(); pending > 0; pending--) {
+                if (next == null) {
+                    next = completion.take();
+                }
+                try {
+                    winner = next.get();
+                    return winner;
+                } catch (ExecutionException e) {
+                    failure = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                } catch (CancellationException e) {
+                    failure = new InterruptedIOException("Request cancelled.");
+                }
+                next = null;
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request interrupted.");
+        } finally {
+            for (Attempt attempt : attempts) {
+                if (attempt != winner) {
+                    attempt.abandon();
+                }
+            }
+        }
+    }
+
+    private static boolean isRetryable(Exception e) {
+        return e instanceof IOException && !(e instanceof MalformedURLException);
+    }
+
+    private Response openOnce(RequestSpec request, RequestMonitor monitor) throws Exception {
+        boolean opened = false;
+        try {
+            Response response = respond(request, monitor);
+            opened = true;
+            return response;
+        } finally {
+            if (!opened) {
+                finish(monitor, true);
+            }
+        }
+    }
+
+    private Response respond(RequestSpec request, RequestMonitor monitor) throws Exception {
+        URL url = toUrl(request);
+        HttpCache cache = this.cache;
+        String cacheKey = (cache != null) ? cacheKey(request) : null;
+        HttpCache.Entry cached = (cacheKey != null) ? cache.get(cacheKey) : null;
+        if (cached != null && cached.isFresh() && !hasDirective(request, "no-cache")) {
+            InputStream in = cache.openBody(cached);
+            if (in != null) {
+                monitor.cached(HttpCache.Status.HIT);
+                return fromCache(cached, in, monitor);
+            }
+        }
+        Route route = acquire(url);
+        boolean opened = false;
+        try {
+            HttpURLConnection connection = connect(url, request, (cached != null)
+                    ? cached.getValidators() : Collections.<String, String>emptyMap(), monitor);
+            try {
+                if (cached != null && connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    drain(openResponse(connection, false, monitor));
+                    InputStream in = cache.openBody(cached);
+                    if (in != null) {
+                        cache.revalidated(cacheKey, cached, connection);
+                        monitor.cached(HttpCache.Status.REVALIDATED);
+                        return fromCache(cached, in, monitor);
+                    }
+                    // evicted meanwhile, so the body is requested again, unconditionally.
+                    cache.remove(cacheKey, cached);
+                    connection = connect(url, request, Collections.<String, String>emptyMap(), monitor);
+                }
+                Map<String, List<String>> headers = Response.headersOf(connection);
+                InputStream in = openResponse(connection, decompress, monitor);
+                if (cacheKey != null) {
+                    monitor.cached(HttpCache.Status.MISS);
+                    if (in != null) {
+                        in = cache.store(cacheKey, connection, headers, decompress, in);
+                    }
+                }
+                ExchangeStore recorder = this.recorder;
+                if (recorder != null) {
+                    in = recorder.record(request, connection.getHeaderField(0), connection.getResponseCode(),
+                            headers, decompress, in);
+                }
+                Response response = new Response(connection.getHeaderField(0), connection.getResponseCode(),
+                        headers, in, new Release(route, monitor));
+                opened = true;
+                return response;
+            } catch (IOException e) {
+                // read what is left, so the connection may still be reused.
+                drain(connection.getErrorStream());
+                throw e;
+            }
+        } finally {
+            if (!opened) {
+                route.release();
+            }
+        }
+    }
+
+    private Response fromCache(HttpCache.Entry cached, InputStream in, RequestMonitor monitor) {
+        monitor.responded(HttpURLConnection.HTTP_OK, cached.getContentType());
+        return new Response("HTTP/1.1 200 OK", HttpURLConnection.HTTP_OK, cached.getHeaders(), in,
+                new Release(null, monitor));
+    }
+
+    /**
+     * Sends the given request and writes a successful response body to a
+     * file through a {@link FileChannel}, so that the body is never held in
+     * memory. Error responses are returned like by
+     * {@link #send(RequestSpec, RequestMonitor)} instead.
+     * <p>
+     * When resuming, only the bytes missing from the file are requested
+     * with a Range header. If the server ignores the range, the file is
+     * overwritten with the full body. The body is requested without content
+     * coding, since ranges refer to the encoded body.
+     *
+     * @param request The request to send.
+     * @param target  The file to write.
+     * @param resume  Whether to append to an existing, partially downloaded
+     *                file.
+     * @param monitor The monitor to report progress to.
+     * @return The response headers, followed by an error response body.
+     */
+    public String download(RequestSpec request, File target, boolean resume,
+                           RequestMonitor monitor) throws Exception {
+        boolean failed = true;
+        try {
+            String result = fetch(request, target, resume, monitor);
+            failed = false;
+            return result;
+        } finally {
+            finish(monitor, failed);
+        }
+    }
+
+    private String fetch(RequestSpec request, File target, boolean resume,
+                         RequestMonitor monitor) throws Exception {
+        URL url = toUrl(request);
+        Route route = acquire(url);
+        try {
+            long offset = (resume && target.isFile()) ? target.length() : 0;
+            Map<String, String> extraHeaders = new LinkedHashMap<String, String>();
+            extraHeaders.put("Accept-Encoding", "identity");
+            if (offset > 0) {
+                extraHeaders.put("Range", "bytes=" + offset + "-");
+            }
+            HttpURLConnection connection = connect(url, request, extraHeaders, monitor);
+            try {
+                int responseCode = connection.getResponseCode();
+                String headerSection = Response.format(connection.getHeaderField(0),
+                        Response.headersOf(connection));
+                InputStream in = openResponse(connection, false, monitor);
+                if (in == null) {
+                    return headerSection;
+                }
+                if (responseCode == 416 && offset > 0) {
+                    // nothing left to download.
+                    drain(in);
+                    return headerSection;
+                }
+                if (responseCode < 200 || responseCode >= 300) {
+                    String charset = HttpRequest.getCharset(connection.getHeaderField("Content-Type"));
+                    return headerSection + HttpRequest.asString(in, HttpRequest.toCharset(charset).name());
+                }
+                boolean append = (responseCode == 206);
+                if (append) {
+                    String range = connection.getHeaderField("Content-Range");
+                    if (range == null || !range.startsWith("bytes " + offset + "-")) {
+                        drain(in);
+                        throw new IOException("Unexpected Content-Range: " + range);
+                    }
+                }
+                FileChannel out = FileChannel.open(target.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    transfer(in, out);
+                } finally {
+                    out.close();
+                }
+                return headerSection;
+            } catch (IOException e) {
+                drain(connection.getErrorStream());
+                throw e;
+            }
+        } finally {
+            route.release();
+        }
+    }
+
+    private void finish(RequestMonitor monitor, boolean failed) {
+        monitor.done();
+        RequestMetrics metrics = this.metrics;
+        // an abandoned attempt was cut short, its latency tells nothing.
+        if (metrics != null && !monitor.isAbandoned()) {
+            metrics.record(monitor, failed);
+        }
+    }
+
+    /**
+     * @return The key of a request in the cache, or null if its response
+     * must not be taken from or stored in the cache.
+     */
+    private String cacheKey(RequestSpec request) {
+        if (!"GET".equals(request.getMethod()) || hasDirective(request, "no-store")) {
+            return null;
+        }
+        Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(request.getHeaders());
+        if (headers.containsKey("If-None-Match") || headers.containsKey("If-Modified-Since")
+                || headers.containsKey("Range")) {
+            // the caller asked for a conditional or partial response.
+            return null;
+        }
+        return request.getUrl() + "\n" + request.getAcceptContentType() + "\n" + decompress + "\n" + headers;
+    }
+
+    private static boolean hasDirective(RequestSpec request, String directive) {
+        for (Map.Entry<String, String> h : request.getHeaders().entrySet()) {
+            if (h.getKey().equalsIgnoreCase("Cache-Control")
+                    && h.getValue().toLowerCase(Locale.ROOT).contains(directive)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static URL toUrl(RequestSpec request) throws MalformedURLException {
+        return new URL(request.getUrl().replaceAll(" ", "%20"));
+    }
+
+    /**
+     * Opens a connection, sends the request line, headers and body, and
+     * waits for the response status.
+     *
+     * @param extraHeaders Headers, which take precedence over those of the
+     *                     request.
+     */
+    private HttpURLConnection connect(
+            URL url,
+            RequestSpec request,
+            Map<String, String> extraHeaders,
+            RequestMonitor monitor
+    ) throws IOException {
+        RequestTiming timing = monitor.getTiming();
+        timing.mark(RequestTiming.Phase.QUEUED);
+        try {
+            // the address is cached by InetAddress for the connection itself.
+            InetAddress.getAllByName(url.getHost());
+        } catch (UnknownHostException e) {
+            // reported by the connection.
+        }
+        timing.mark(RequestTiming.Phase.DNS);
+
+        HttpURLConnection connection = (HttpURLConnection) url
+                .openConnection();
+        monitor.attach(connection);
+        boolean https = (connection instanceof HttpsURLConnection);
+        if (https) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(TimingSocketFactory.getInstance());
+        }
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setInstanceFollowRedirects(followRedirects);
+
+        RequestBody body = request.hasBody() ? request.getRequestBody() : null;
+        String contentType = (body != null)
+                ? body.getContentType(request.getContentType())
+                : String.format("%s; charset=%s", request.getContentType(), DEFAULT_CHARSET);
+        connection.setRequestProperty("Accept-Content", request.getAcceptContentType());
+        connection.setRequestProperty("Accept-Charset", DEFAULT_CHARSET);
+        connection.setRequestProperty("Content-Type", contentType);
+
+        if (decompress) {
+            connection.setRequestProperty("Accept-Encoding", HttpRequest.ACCEPT_ENCODING);
+        }
+        for (Map.Entry<String, String> h : request.getHeaders().entrySet()) {
+            connection.setRequestProperty(h.getKey(), h.getValue());
+        }
+        for (Map.Entry<String, String> h : extraHeaders.entrySet()) {
+            connection.setRequestProperty(h.getKey(), h.getValue());
+        }
+
+        // default is "GET".
+        connection.setRequestMethod(request.getMethod());
+        try {
+            if (body != null) {
+                connection.setDoOutput(true);
+                long length = body.getContentLength();
+                if (length >= 0) {
+                    connection.setFixedLengthStreamingMode(length);
+                } else {
+                    connection.setChunkedStreamingMode(0);
+                }
+                monitor.sending(length);
+            }
+            TimingSocketFactory.CURRENT.set(timing);
+            try {
+                connection.connect();
+            } finally {
+                TimingSocketFactory.CURRENT.remove();
+            }
+            // a reused connection needs neither a TCP connect nor a handshake.
+            timing.mark(https && timing.isMarked(RequestTiming.Phase.CONNECT)
+                    ? RequestTiming.Phase.TLS : RequestTiming.Phase.CONNECT);
+            if (body != null) {
+                OutputStream os = new MonitoredOutputStream(connection.getOutputStream(), monitor);
+                body.writeTo(os);
+                os.close();
+            }
+            timing.mark(RequestTiming.Phase.SEND);
+            monitor.responded(connection.getResponseCode(), connection.getContentType());
+            timing.mark(RequestTiming.Phase.WAIT);
+            return connection;
+        } catch (IOException e) {
+            drain(connection.getErrorStream());
+            throw e;
+        }
+    }
+
+    /**
+     * @return The monitored response body, or null if there is none.
+     */
+    private static InputStream openResponse(HttpURLConnection connection,
+                                            boolean decode,
+                                            RequestMonitor monitor) throws IOException {
+        InputStream in = (connection.getResponseCode() >= 400)
+                ? connection.getErrorStream()
+                : connection.getInputStream();
+        if (in == null) {
+            return null;
+        }
+        in = new MonitoredInputStream(in, monitor, false);
+        if (decode) {
+            in = new MonitoredInputStream(HttpRequest.decode(in,
+                    connection.getHeaderField("Content-Encoding")), monitor, true);
+        }
+        return in;
+    }
+
+    private static void transfer(InputStream in, FileChannel out) throws IOException {
+        ReadableByteChannel src = Channels.newChannel(in);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
+            while (src.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            src.close();
+        }
+    }
+
+    private static void drain(InputStream in) {
+        if (in != null) {
+            try {
+                HttpRequest.copy(in, null, false);
+            } catch (IOException e) {
+                /* Ignore me */
+            }
+        }
+    }
+
+    private Route acquire(URL url) throws InterruptedException {
+        evictIdleRoutes();
+        String key = url.getProtocol() + "://" + url.getHost() + ":"
+                + (url.getPort() == -1 ? url.getDefaultPort() : url.getPort());
+        for (; ; ) {
+            Route route = routes.get(key);
+            if (route == null) {
+                Route created = new Route(maxConnectionsPerRoute);
+                route = routes.putIfAbsent(key, created);
+                if (route == null) {
+                    route = created;
+                }
+            }
+            route.acquire();
+            if (routes.get(key) == route) {
+                return route;
+            }
+            // evicted concurrently, retry with a fresh route.
+            route.release();
+        }
+    }
+
+    private void evictIdleRoutes() {
+        long now = System.currentTimeMillis();
+        if (now - lastEviction < idleTimeout) {
+            return;
+        }
+        lastEviction = now;
+        for (Iterator<Route> i = routes.values().iterator(); i.hasNext(); ) {
+            if (i.next().isIdleSince(now - idleTimeout)) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases the route of a response, once it has been closed, and
+     * completes its request.
+     */
+    private class Release implements Response.Listener {
+
+        private final Route route;
+        private final RequestMonitor monitor;
+
+        Release(Route route, RequestMonitor monitor) {
+            this.route = route;
+            this.monitor = monitor;
+        }
+
+        public void closed(Response response, boolean failed) {
+            if (route != null) {
+                route.release();
+            }
+            finish(monitor, failed);
+        }
+    }
+
+    /**
+     * A single attempt at a request, which may be given up once another
+     * one has responded.
+     */
+    private class Attempt implements Callable<Attempt> {
+
+        private final RequestSpec request;
+        private final RequestMonitor monitor;
+        private Response response;
+        private boolean abandoned;
+
+        Attempt(RequestSpec request, RequestMonitor monitor) {
+            this.request = request;
+            this.monitor = monitor;
+        }
+
+        public Attempt call() throws Exception {
+            Response r = openOnce(request, monitor);
+            synchronized (this) {
+                if (!abandoned) {
+                    response = r;
+                    return this;
+                }
+            }
+            r.close();
+            throw new InterruptedIOException("Request abandoned.");
+        }
+
+        /**
+         * Cancels the attempt and closes its response, if any.
+         */
+        void abandon() {
+            Response r;
+            synchronized (this) {
+                abandoned = true;
+                r = response;
+                response = null;
+            }
+            monitor.abandon();
+            if (r != null) {
+                r.close();
+            }
+        }
+    }
+
+    /**
+     * Connection bookkeeping for a single scheme, host and port.
+     */
+    private static class Route {
+
+        private final Semaphore permits;
+        private final int maxPermits;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Route(int maxPermits) {
+            this.maxPermits = maxPermits;
+            this.permits = new Semaphore(maxPermits, true);
+        }
+
+        void acquire() throws InterruptedException {
+            permits.acquire();
+            lastUsed = System.currentTimeMillis();
+        }
+
+        void release() {
+            lastUsed = System.currentTimeMillis();
+            permits.release();
+        }
+
+        boolean isIdleSince(long time) {
+            return lastUsed < time && permits.availablePermits() == maxPermits;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.apuex.restclient;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When and how often a {@link RestClient} repeats a request, once set with
+ * {@link RestClient#setRetryPolicy(RetryPolicy)}. Only idempotent methods
+ * are ever repeated.
+ * <p>
+ * A request is retried if it fails with an I/O error, or if the response
+ * status is one of {@link #getRetryOnStatus()}. Before each retry the
+ * client waits for an exponentially growing, randomly jittered delay, or
+ * for as long as the Retry-After header of the response asks.
+ * <p>
+ * With hedging enabled, a second copy of a request is sent if no response
+ * has arrived after the 95th percentile of recent times to the response
+ * headers, and the first response to arrive is kept. The other copy is
+ * cancelled and not recorded in the {@link RequestMetrics}.
+ *
+ * @author wangxy
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_INITIAL_DELAY = 200L;
+    public static final long DEFAULT_MAX_DELAY = 10000L;
+    public static final long DEFAULT_HEDGE_DELAY = 1000L;
+
+    /**
+     * The percentile of recent times to the response headers after which
+     * a request is hedged.
+     */
+    public static final double HEDGE_PERCENTILE = 95.0;
+
+    /**
+     * The number of recent requests needed before the hedge delay follows
+     * their times to the response headers rather than
+     * {@link #getHedgeDelay()}.
+     */
+    private static final long MIN_HEDGE_SAMPLES = 20;
+
+    /**
+     * The hedge delay is never shorter than this, so that a burst of fast
+     * responses does not double the load.
+     */
+    private static final long MIN_HEDGE_DELAY = 10L;
+
+    private static final Set<String> IDEMPOTENT_METHODS = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList("GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE")));
+
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile long initialDelay = DEFAULT_INITIAL_DELAY;
+    private volatile long maxDelay = DEFAULT_MAX_DELAY;
+    private volatile Set<Integer> retryOnStatus = Collections.unmodifiableSet(
+            new HashSet<Integer>(Arrays.asList(429, 502, 503, 504)));
+    private volatile boolean honorRetryAfter = true;
+    private volatile boolean hedge;
+    private volatile long hedgeDelay = DEFAULT_HEDGE_DELAY;
+
+    /**
+     * @return The number of times a request is sent at most, the first
+     * included. Hedged copies do not count.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts < 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return Milliseconds the delay before the first retry is jittered
+     * around. It doubles with every further retry.
+     */
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    public void setInitialDelay(long initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+
+    /**
+     * @return Milliseconds to wait at most before a retry. A response,
+     * whose Retry-After asks for longer, is returned instead of retried.
+     */
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public void setMaxDelay(long maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @return The status codes, which are retried.
+     */
+    public Set<Integer> getRetryOnStatus() {
+        return retryOnStatus;
+    }
+
+    public void setRetryOnStatus(Set<Integer> retryOnStatus) {
+        this.retryOnStatus = Collections.unmodifiableSet(new HashSet<Integer>(retryOnStatus));
+    }
+
+    public boolean isHonorRetryAfter() {
+        return honorRetryAfter;
+    }
+
+    public void setHonorRetryAfter(boolean honorRetryAfter) {
+        this.honorRetryAfter = honorRetryAfter;
+    }
+
+    public boolean isHedge() {
+        return hedge;
+    }
+
+    public void setHedge(boolean hedge) {
+        this.hedge = hedge;
+    }
+
+    /**
+     * @return Milliseconds after which a request is hedged, as long as too
+     * few responses have been recorded to tell their percentile.
+     */
+    public long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    public void setHedgeDelay(long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    /**
+     * @return Whether the given method may be sent more than once.
+     */
+    public boolean isRetryable(String method) {
+        return IDEMPOTENT_METHODS.contains(method);
+    }
+
+    /**
+     * @param attempt The number of attempts made so far, starting at 1.
+     * @return Milliseconds to wait before the next attempt, drawn at random
+     * up to an exponentially growing bound ("full jitter"), so that clients
+     * failing together do not retry together.
+     */
+    public long backoff(int attempt) {
+        long bound = initialDelay << Math.min(attempt - 1, 30);
+        if (bound <= 0 || bound > maxDelay) {
+            bound = maxDelay;
+        }
+        return (bound > 0) ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+    }
+
+    /**
+     * @param retryAfter The value of a Retry-After header, in seconds or as
+     *                   an HTTP date, or null.
+     * @return Milliseconds to wait as asked by the header,
+     * {@link Long#MAX_VALUE} if that is more than a long holds, or -1 if
+     * there is none, it is not valid or it is not honored.
+     */
+    public long retryAfter(String retryAfter) {
+        if (!honorRetryAfter || retryAfter == null) {
+            return -1;
+        }
+        String value = retryAfter.trim();
+        // delay-seconds are digits only, without a sign.
+        boolean digits = !value.isEmpty();
+        for (int i = 0; digits && i < value.length(); i++) {
+            digits = value.charAt(i) >= '0' && value.charAt(i) <= '9';
+        }
+        if (digits) {
+            try {
+                long seconds = Long.parseLong(value);
+                return (seconds > Long.MAX_VALUE / 1000L) ? Long.MAX_VALUE : seconds * 1000L;
+            } catch (NumberFormatException e) {
+                // too large.
+                return Long.MAX_VALUE;
+            }
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        try {
+            return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param metrics The metrics of recent requests, or null.
+     * @return Milliseconds after which a request is hedged.
+     */
+    public long hedgeDelay(RequestMetrics metrics) {
+        double recent = (metrics != null) ? metrics.getHeadersMillis(HEDGE_PERCENTILE, MIN_HEDGE_SAMPLES) : -1;
+        return (recent >= 0) ? Math.max(MIN_HEDGE_DELAY, Math.round(recent)) : hedgeDelay;
+    }
+}
@@ -0,0 +1,125 @@
+package com.apuex.restclient;
+
+import javax.swing.*;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Collects the tokens reported by a {@link FormattingWriter} on a
+ * background thread, and colors them in a document on the event dispatch
+ * thread a batch at a time, so that the UI stays responsive while a large
+ * body is highlighted.
+ * <p>
+ * Only tokens within the first {@code limit} characters are kept, so that
+ * the memory used is bounded; text beyond is shown without colors.
+ *
+ * @author wangxy
+ */
+public class SyntaxHighlighter implements FormattingWriter.TokenListener {
+
+    /**
+     * Tokens colored per timer tick.
+     */
+    private static final int BATCH_SIZE = 2000;
+
+    private static final Map<FormattingWriter.Token, SimpleAttributeSet> STYLES
+            = new EnumMap<FormattingWriter.Token, SimpleAttributeSet>(FormattingWriter.Token.class);
+
+    static {
+        style(FormattingWriter.Token.KEY, new Color(0x871094));
+        style(FormattingWriter.Token.STRING, new Color(0x067D17));
+        style(FormattingWriter.Token.NUMBER, new Color(0x1750EB));
+        style(FormattingWriter.Token.LITERAL, new Color(0x0033B3));
+        style(FormattingWriter.Token.TAG, new Color(0x0033B3));
+        style(FormattingWriter.Token.ATTRIBUTE, new Color(0x174AD4));
+        style(FormattingWriter.Token.COMMENT, new Color(0x8C8C8C));
+    }
+
+    private final long limit;
+    private int[] starts = new int[256];
+    private int[] ends = new int[256];
+    private byte[] kinds = new byte[256];
+    private int count;
+    private Timer timer;
+
+    /**
+     * @param limit The number of characters to highlight at most.
+     */
+    public SyntaxHighlighter(long limit) {
+        this.limit = Math.min(limit, Integer.MAX_VALUE);
+    }
+
+    private static void style(FormattingWriter.Token token, Color color) {
+        SimpleAttributeSet attributes = new SimpleAttributeSet();
+        StyleConstants.setForeground(attributes, color);
+        STYLES.put(token, attributes);
+    }
+
+    public void token(FormattingWriter.Token token, long start, long end) {
+        if (end > limit) {
+            return;
+        }
+        if (count == starts.length) {
+            int size = count * 2;
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+            kinds = Arrays.copyOf(kinds, size);
+        }
+        starts[count] = (int) start;
+        ends[count] = (int) end;
+        kinds[count] = (byte) token.ordinal();
+        count++;
+    }
+
+    /**
+     * Starts coloring the tokens collected. Must be called on the event
+     * dispatch thread once all tokens have been reported.
+     *
+     * @param document The document holding the formatted text.
+     * @param offset   The offset of the formatted text in the document.
+     */
+    public void apply(final StyledDocument document, final int offset) {
+        stop();
+        final FormattingWriter.Token[] tokens = FormattingWriter.Token.values();
+        timer = new Timer(0, null);
+        timer.addActionListener(new ActionListener() {
+            private int next;
+
+            public void actionPerformed(ActionEvent evt) {
+                int last = Math.min(count, next + BATCH_SIZE);
+                int length = document.getLength();
+                for (; next < last; next++) {
+                    int start = offset + starts[next];
+                    if (offset + ends[next] > length) {
+                        // the text has been replaced.
+                        next = count;
+                        break;
+                    }
+                    document.setCharacterAttributes(start, ends[next] - starts[next],
+                            STYLES.get(tokens[kinds[next]]), false);
+                }
+                if (next >= count) {
+                    stop();
+                }
+            }
+        });
+        timer.start();
+    }
+
+    /**
+     * Stops coloring, e.g. because the document is discarded.
+     */
+    public void stop() {
+        if (timer != null) {
+            timer.stop();
+            timer = null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.apuex.restclient;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Copies a stream somewhere else while the caller reads it, e.g. a response
+ * body into a file. The copy is committed once the end of the stream has
+ * been reached, and aborted if the stream is closed or skipped before, as a
+ * skipped part would be missing from the copy.
+ *
+ * @author wangxy
+ */
+abstract class TeeInputStream extends FilterInputStream {
+
+    private final byte[] single = new byte[1];
+    private boolean copying = true;
+
+    TeeInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            end();
+        } else if (copying) {
+            single[0] = (byte) b;
+            copy(single, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n == -1) {
+            end();
+        } else if (n > 0 && copying) {
+            copy(b, off, n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        stop();
+        return in.skip(n);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            stop();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies bytes, which have been read.
+     *
+     * @return Whether to go on copying. If not, the copy is aborted.
+     */
+    abstract boolean write(byte[] b, int off, int len) throws IOException;
+
+    /**
+     * Called once, when the end of the stream has been reached.
+     */
+    abstract void commit() throws IOException;
+
+    /**
+     * Called once, when the stream has been closed or skipped before its
+     * end, or the copy has failed.
+     */
+    abstract void abort() throws IOException;
+
+    private void copy(byte[] b, int off, int len) throws IOException {
+        boolean more = false;
+        try {
+            more = write(b, off, len);
+        } finally {
+            if (!more) {
+                stop();
+            }
+        }
+    }
+
+    private void end() throws IOException {
+        if (copying) {
+            copying = false;
+            commit();
+        }
+    }
+
+    private void stop() throws IOException {
+        if (copying) {
+            copying = false;
+            abort();
+        }
+    }
+}
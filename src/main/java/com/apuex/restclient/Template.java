@@ -0,0 +1,122 @@
+package com.apuex.restclient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A text with {@code ${name}} placeholders, e.g. the url of a request to
+ * send once per row of a data file.
+ * <p>
+ * The text is parsed once, into a list of literal segments and variables.
+ * Variables are bound to indexes into a list of variable names shared by
+ * all templates of a run, so that expanding a template for a row only
+ * looks up values by index. {@code $${} stands for a literal {@code ${}.
+ *
+ * @author wangxy
+ */
+public class Template {
+
+    private final String text;
+    private final List<String> variables;
+    /**
+     * Literal segments, each followed by the variable at the same index in
+     * {@link #indexes}, if any.
+     */
+    private final String[] literals;
+    private final int[] indexes;
+    private final int length;
+
+    private Template(String text, List<String> variables, String[] literals, int[] indexes) {
+        this.text = text;
+        this.variables = variables;
+        this.literals = literals;
+        this.indexes = indexes;
+        int n = 0;
+        for (String literal : literals) {
+            n += literal.length();
+        }
+        this.length = n;
+    }
+
+    /**
+     * Parses a template.
+     *
+     * @param text      The template text.
+     * @param variables The names of the variables known so far, to which
+     *                  the variables of the template are added unless known.
+     * @return The template.
+     * @throws IllegalArgumentException A placeholder is not closed or its
+     *                                  name is empty.
+     */
+    public static Template compile(String text, List<String> variables) {
+        List<String> literals = new ArrayList<String>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            if (text.startsWith("$${", i)) {
+                literal.append("${");
+                i += 3;
+            } else if (text.startsWith("${", i)) {
+                int end = text.indexOf('}', i + 2);
+                if (end == -1) {
+                    throw new IllegalArgumentException("Unclosed ${ in " + text);
+                }
+                String name = text.substring(i + 2, end).trim();
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Empty ${} in " + text);
+                }
+                int index = variables.indexOf(name);
+                if (index == -1) {
+                    index = variables.size();
+                    variables.add(name);
+                }
+                literals.add(literal.toString());
+                indexes.add(index);
+                literal.setLength(0);
+                i = end + 1;
+            } else {
+                literal.append(text.charAt(i++));
+            }
+        }
+        literals.add(literal.toString());
+        int[] bound = new int[indexes.size()];
+        for (int j = 0; j < bound.length; j++) {
+            bound[j] = indexes.get(j);
+        }
+        return new Template(text, variables, literals.toArray(new String[literals.size()]), bound);
+    }
+
+    /**
+     * @return Whether the template has no variables.
+     */
+    public boolean isConstant() {
+        return indexes.length == 0;
+    }
+
+    /**
+     * @param values The values of the variables, by index.
+     * @return The text with the placeholders replaced by their values.
+     * @throws IllegalArgumentException A variable has no value.
+     */
+    public String expand(String[] values) {
+        if (indexes.length == 0) {
+            return literals[0];
+        }
+        StringBuilder sb = new StringBuilder(length + 16 * indexes.length);
+        for (int i = 0; i < indexes.length; i++) {
+            sb.append(literals[i]);
+            String value = (indexes[i] < values.length) ? values[indexes[i]] : null;
+            if (value == null) {
+                throw new IllegalArgumentException("No value for " + variables.get(indexes[i]));
+            }
+            sb.append(value);
+        }
+        return sb.append(literals[indexes.length]).toString();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,152 @@
+package com.apuex.restclient;
+
+import javax.swing.*;
+import java.awt.*;
+import java.nio.charset.Charset;
+
+/**
+ * Displays a {@link MappedTextFile}, painting only the lines visible in its
+ * viewport, so that files of hundreds of megabytes scroll as smoothly as
+ * small ones. Meant to be placed in a {@link JScrollPane}.
+ *
+ * @author wangxy
+ */
+public class TextFileViewer extends JComponent implements Scrollable {
+
+    private final MappedTextFile text;
+    private final Charset charset;
+    private final byte[] lineBuffer = new byte[MappedTextFile.MAX_LINE_LENGTH];
+    private long selectionStart = -1;
+    private long selectionEnd = -1;
+
+    public TextFileViewer(MappedTextFile text, Charset charset) {
+        this.text = text;
+        this.charset = charset;
+        setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        setBackground(Color.WHITE);
+        setOpaque(true);
+    }
+
+    public MappedTextFile getText() {
+        return text;
+    }
+
+    /**
+     * Highlights the given range, which may continue on the next line where
+     * a long line has been split, and scrolls its start into view.
+     */
+    public void select(long start, long end) {
+        selectionStart = start;
+        selectionEnd = end;
+        int line = text.getLineOf(start);
+        long lineStart = text.getLineStart(line);
+        int n = text.get(lineStart, lineBuffer, 0, (int) Math.min(start - lineStart, lineBuffer.length));
+        int x = getFontMetrics(getFont()).stringWidth(new String(lineBuffer, 0, n, charset));
+        scrollTo(line, x);
+        repaint();
+    }
+
+    public long getSelectionEnd() {
+        return selectionEnd;
+    }
+
+    /**
+     * @param line A zero based line number.
+     */
+    public void scrollToLine(int line) {
+        scrollTo(line, -1);
+    }
+
+    /**
+     * Centers the given line, and the given x coordinate unless it is -1.
+     */
+    private void scrollTo(int line, int x) {
+        int lineHeight = getLineHeight();
+        Rectangle visible = getVisibleRect();
+        long y = (long) line * lineHeight - visible.height / 2;
+        scrollRectToVisible(new Rectangle((x < 0) ? visible.x : Math.max(0, x - visible.width / 2),
+                (int) Math.max(0, Math.min(y, Integer.MAX_VALUE - visible.height)),
+                Math.max(visible.width, 1), visible.height));
+    }
+
+    /**
+     * Updates the size to the number of lines indexed so far.
+     */
+    public void refresh() {
+        revalidate();
+        repaint();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        FontMetrics fm = getFontMetrics(getFont());
+        Insets insets = getInsets();
+        long height = (long) text.getLineCount() * fm.getHeight() + insets.top + insets.bottom;
+        int columns = text.getMaxLineLength() + 1;
+        return new Dimension(columns * fm.charWidth('m') + insets.left + insets.right,
+                (int) Math.min(height, Integer.MAX_VALUE));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        g.setFont(getFont());
+        FontMetrics fm = g.getFontMetrics();
+        int lineHeight = fm.getHeight();
+        int lineCount = text.getLineCount();
+        int first = Math.max(0, clip.y / lineHeight);
+        int last = Math.min(lineCount - 1, (clip.y + clip.height) / lineHeight);
+        if (first > last) {
+            return;
+        }
+        long position = text.getLineStart(first);
+        for (int line = first; line <= last; line++) {
+            long end = text.getLineEnd(position);
+            int n = text.get(position, lineBuffer, 0, (int) (end - position));
+            // lines painted lie within the clip, so that this fits an int.
+            int y = (int) Math.min((long) line * lineHeight, Integer.MAX_VALUE - lineHeight);
+            // the selection starts in this line, or continues from the one above.
+            if (selectionStart >= position && selectionStart <= end
+                    || selectionStart < position && selectionEnd > position) {
+                int from = (int) Math.max(0, Math.min(selectionStart - position, n));
+                int to = (int) Math.min(selectionEnd - position, n);
+                int x0 = fm.stringWidth(new String(lineBuffer, 0, from, charset));
+                int x1 = fm.stringWidth(new String(lineBuffer, 0, to, charset));
+                g.setColor(Color.YELLOW);
+                g.fillRect(x0, y, Math.max(x1 - x0, 2), lineHeight);
+            }
+            g.setColor(getForeground());
+            g.drawString(new String(lineBuffer, 0, n, charset), 0, y + fm.getAscent());
+            position = text.getNextLineStart(position);
+        }
+    }
+
+    private int getLineHeight() {
+        return getFontMetrics(getFont()).getHeight();
+    }
+
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(400, 20 * getLineHeight());
+    }
+
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL)
+                ? getLineHeight() : getFontMetrics(getFont()).charWidth('m');
+    }
+
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL)
+                ? Math.max(visibleRect.height - getLineHeight(), getLineHeight())
+                : visibleRect.width;
+    }
+
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
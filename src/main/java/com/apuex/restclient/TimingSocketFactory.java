@@ -0,0 +1,91 @@
+package com.apuex.restclient;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Wraps the default {@link SSLSocketFactory} to tell when the TCP
+ * connection of an HTTPS request has been established, which is when the
+ * TLS handshake begins.
+ * <p>
+ * Unconnected sockets are not supported, so that {@link HttpsURLConnection}
+ * connects a plain socket first and then layers TLS over it with
+ * {@link #createSocket(Socket, String, int, boolean)}. The timing of the
+ * request is passed in a thread local, since a single factory must be
+ * shared by all connections: the keep-alive cache only reuses connections
+ * created by the same factory.
+ *
+ * @author wangxy
+ */
+class TimingSocketFactory extends SSLSocketFactory {
+
+    static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<RequestTiming>();
+
+    private static class Holder {
+        static final TimingSocketFactory INSTANCE =
+                new TimingSocketFactory(HttpsURLConnection.getDefaultSSLSocketFactory());
+    }
+
+    private final SSLSocketFactory delegate;
+
+    private TimingSocketFactory(SSLSocketFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    static TimingSocketFactory getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+        connected();
+        return delegate.createSocket(s, host, port, autoClose);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return connected(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+            throws IOException {
+        return connected(delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return connected(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            throws IOException {
+        return connected(delegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    private static Socket connected(Socket s) {
+        connected();
+        return s;
+    }
+
+    private static void connected() {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.mark(RequestTiming.Phase.CONNECT);
+        }
+    }
+}
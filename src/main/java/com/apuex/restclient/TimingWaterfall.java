@@ -0,0 +1,85 @@
+package com.apuex.restclient;
+
+import javax.swing.*;
+import java.awt.*;
+import java.text.MessageFormat;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Paints the {@link RequestTiming} of a request as a waterfall: one bar per
+ * phase, offset by the time at which the phase began and scaled to the
+ * total duration of the request, followed by the bytes sent and received.
+ *
+ * @author wangxy
+ */
+public class TimingWaterfall extends JComponent {
+
+    private static final RequestTiming.Phase[] PHASES = RequestTiming.Phase.values();
+    private static final Color[] COLORS = {
+            new Color(0xb0b0b0), // QUEUED
+            new Color(0x3aa6a6), // DNS
+            new Color(0xf0a030), // CONNECT
+            new Color(0xc050c0), // TLS
+            new Color(0x4080e0), // SEND
+            new Color(0x40b040), // WAIT
+            new Color(0x2060c0)  // TRANSFER
+    };
+    private static final int LABEL_WIDTH = 90;
+    private static final int VALUE_WIDTH = 80;
+    private static final int GAP = 4;
+
+    private final RequestMonitor monitor;
+    private final ResourceBundle bundle;
+
+    public TimingWaterfall(RequestMonitor monitor, ResourceBundle bundle) {
+        this.monitor = monitor;
+        this.bundle = bundle;
+        setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        setBackground(Color.WHITE);
+        setOpaque(true);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        FontMetrics fm = getFontMetrics(getFont());
+        Insets insets = getInsets();
+        return new Dimension(LABEL_WIDTH + VALUE_WIDTH + 200 + insets.left + insets.right,
+                (PHASES.length + 1) * fm.getHeight() + insets.top + insets.bottom);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        g.setFont(getFont());
+        FontMetrics fm = g.getFontMetrics();
+        Insets insets = getInsets();
+        int lineHeight = fm.getHeight();
+        int x0 = insets.left + LABEL_WIDTH;
+        int width = Math.max(getWidth() - insets.right - VALUE_WIDTH - x0 - GAP, 1);
+
+        RequestTiming timing = monitor.getTiming();
+        long total = timing.getTotalNanos();
+        int y = insets.top;
+        for (RequestTiming.Phase phase : PHASES) {
+            long nanos = timing.getNanos(phase);
+            g.setColor(getForeground());
+            g.drawString(bundle.getString("timing." + phase.name().toLowerCase(Locale.ROOT)),
+                    insets.left, y + fm.getAscent());
+            if (nanos > 0 && total > 0) {
+                int from = (int) (timing.getOffsetNanos(phase) * width / total);
+                int length = Math.max((int) (nanos * width / total), 1);
+                g.setColor(COLORS[phase.ordinal()]);
+                g.fillRect(x0 + from, y + 2, length, lineHeight - 4);
+            }
+            g.setColor(getForeground());
+            g.drawString(String.format(Locale.ROOT, "%.3f ms", nanos / 1e6),
+                    x0 + width + GAP, y + fm.getAscent());
+            y += lineHeight;
+        }
+        g.drawString(MessageFormat.format(bundle.getString("timing.total"),
+                total / 1e6, monitor.getBytesSent(), monitor.getBytesReceived()),
+                insets.left, y + fm.getAscent());
+    }
+}
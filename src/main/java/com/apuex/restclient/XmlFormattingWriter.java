@@ -0,0 +1,233 @@
+package com.apuex.restclient;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Formats XML, one element per line, indented by nesting depth. Elements
+ * holding only text are kept on one line, and whitespace between elements
+ * is replaced by the indentation. Comments and CDATA sections are written
+ * as they are.
+ *
+ * @author wangxy
+ */
+class XmlFormattingWriter extends FormattingWriter {
+
+    private enum State {
+        TEXT, MARKUP, COMMENT, CDATA
+    }
+
+    /**
+     * Text longer than this is written before its end has been seen.
+     */
+    private static final int TEXT_LIMIT = 8192;
+
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder markup = new StringBuilder();
+    private State state = State.TEXT;
+    private int depth;
+    private char quote;
+    /**
+     * The last two characters of a comment or CDATA section.
+     */
+    private char last;
+    private char beforeLast;
+    /**
+     * Set after a start tag, as long as the element holds nothing but text.
+     */
+    private boolean afterStartTag;
+    private boolean textStarted;
+    private boolean started;
+
+    XmlFormattingWriter(Writer out, TokenListener listener) {
+        super(out, listener);
+    }
+
+    @Override
+    protected void format(char c) throws IOException {
+        if (c == '\r') {
+            return;
+        }
+        switch (state) {
+            case TEXT:
+                if (c == '<') {
+                    writeText(true);
+                    markup.append(c);
+                    quote = 0;
+                    state = State.MARKUP;
+                } else {
+                    text.append(c);
+                    if (text.length() >= TEXT_LIMIT) {
+                        writeText(false);
+                    }
+                }
+                break;
+            case MARKUP:
+                markup.append(c);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '>') {
+                    writeMarkup();
+                    state = State.TEXT;
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (markup.length() == 4 && markup.toString().equals("<!--")) {
+                    startLine();
+                    begin(Token.COMMENT);
+                    startSection(State.COMMENT);
+                    afterStartTag = false;
+                } else if (markup.length() == 9 && markup.toString().equals("<![CDATA[")) {
+                    if (!afterStartTag) {
+                        startLine();
+                    }
+                    begin(Token.STRING);
+                    startSection(State.CDATA);
+                }
+                break;
+            default:
+                emit(c);
+                if (c == '>' && beforeLast == last && last == (state == State.COMMENT ? '-' : ']')) {
+                    end();
+                    state = State.TEXT;
+                }
+                beforeLast = last;
+                last = c;
+        }
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        if (state == State.MARKUP) {
+            emit(markup, 0, markup.length());
+            markup.setLength(0);
+        }
+        writeText(true);
+    }
+
+    private void startSection(State section) throws IOException {
+        emit(markup, 0, markup.length());
+        markup.setLength(0);
+        last = 0;
+        beforeLast = 0;
+        state = section;
+    }
+
+    /**
+     * Writes the text read so far, without surrounding whitespace. Text
+     * after a start tag stays on its line.
+     *
+     * @param complete Whether the end of the text has been reached, or
+     *                 whitespace at its end is kept for later.
+     */
+    private void writeText(boolean complete) throws IOException {
+        int start = 0;
+        if (!textStarted) {
+            while (start < text.length() && Character.isWhitespace(text.charAt(start))) {
+                start++;
+            }
+        }
+        int end = text.length();
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (end > start) {
+            if (!textStarted && !afterStartTag) {
+                startLine();
+            }
+            emit(text, start, end);
+            textStarted = true;
+        }
+        if (complete || end == start) {
+            text.setLength(0);
+        } else {
+            text.delete(0, end);
+        }
+        if (complete) {
+            textStarted = false;
+        }
+    }
+
+    private void writeMarkup() throws IOException {
+        if (markup.length() > 1 && markup.charAt(1) == '/') {
+            if (depth > 0) {
+                depth--;
+            }
+            if (!afterStartTag) {
+                startLine();
+            }
+            writeTag();
+            afterStartTag = false;
+        } else if (markup.length() > 1 && (markup.charAt(1) == '?' || markup.charAt(1) == '!')) {
+            startLine();
+            begin(Token.COMMENT);
+            emit(markup, 0, markup.length());
+            end();
+            afterStartTag = false;
+        } else {
+            startLine();
+            writeTag();
+            afterStartTag = markup.charAt(markup.length() - 2) != '/';
+            if (afterStartTag) {
+                depth++;
+            }
+        }
+        markup.setLength(0);
+    }
+
+    /**
+     * Writes a start or end tag with its name, attribute names and values
+     * marked as tokens.
+     */
+    private void writeTag() throws IOException {
+        int length = markup.length();
+        int i = markup.charAt(1) == '/' ? 2 : 1;
+        while (i < length && !isNameEnd(markup.charAt(i))) {
+            i++;
+        }
+        begin(Token.TAG);
+        emit(markup, 0, i);
+        end();
+        while (i < length) {
+            char c = markup.charAt(i);
+            if (c == '>' || (c == '/' && i + 1 < length && markup.charAt(i + 1) == '>')) {
+                begin(Token.TAG);
+                emit(markup, i, length);
+                end();
+                return;
+            }
+            int j = i + 1;
+            if (c == '"' || c == '\'') {
+                while (j < length && markup.charAt(j) != c) {
+                    j++;
+                }
+                j = Math.min(j + 1, length);
+                begin(Token.STRING);
+                emit(markup, i, j);
+                end();
+            } else if (Character.isWhitespace(c) || c == '=') {
+                emit(c);
+            } else {
+                while (j < length && !isNameEnd(markup.charAt(j)) && markup.charAt(j) != '=') {
+                    j++;
+                }
+                begin(Token.ATTRIBUTE);
+                emit(markup, i, j);
+                end();
+            }
+            i = j;
+        }
+    }
+
+    private static boolean isNameEnd(char c) {
+        return c == '>' || c == '/' || Character.isWhitespace(c);
+    }
+
+    private void startLine() throws IOException {
+        if (started) {
+            newLine(depth);
+        }
+        started = true;
+    }
+}
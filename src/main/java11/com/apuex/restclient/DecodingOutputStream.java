@@ -0,0 +1,260 @@
+package com.apuex.restclient;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decodes a response body pushed to it in pieces as they arrive, like
+ * {@link HttpRequest#decode(java.io.InputStream, String)} does for a body
+ * pulled from a stream, and writes the decoded bytes to another stream,
+ * counting them as decoded.
+ * <p>
+ * The bytes of a gzip header or trailer, or the first two bytes of a
+ * deflate stream, which tell zlib wrapped from raw deflate data, are held
+ * back until complete; everything else is inflated as it is written.
+ *
+ * @author wangxy
+ */
+class DecodingOutputStream extends OutputStream {
+
+    private static final int IDENTITY = 0;
+    private static final int GZIP = 1;
+    private static final int DEFLATE = 2;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final int TRAILER_LENGTH = 8;
+
+    private final OutputStream out;
+    private final RequestMonitor monitor;
+    private final int coding;
+    private final byte[] buffer = new byte[8192];
+    private final CRC32 crc = new CRC32();
+    private Inflater inflater;
+    private byte[] held = new byte[64];
+    private int heldLength;
+    private int members;
+    /**
+     * Set once the encoded data has ended; anything after is ignored.
+     */
+    private boolean ended;
+
+    /**
+     * @param out             The stream to write the decoded bytes to. It is
+     *                        flushed by {@link #finish()}, but never closed.
+     * @param contentEncoding The Content-Encoding of the body, or null.
+     * @param monitor         The monitor to count the decoded bytes in.
+     */
+    DecodingOutputStream(OutputStream out, String contentEncoding, RequestMonitor monitor) {
+        this.out = out;
+        this.monitor = monitor;
+        String coding = (contentEncoding == null) ? "" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+        if ("gzip".equals(coding) || "x-gzip".equals(coding)) {
+            this.coding = GZIP;
+        } else if ("deflate".equals(coding)) {
+            this.coding = DEFLATE;
+        } else {
+            this.coding = IDENTITY;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (coding == IDENTITY) {
+            emit(b, off, len);
+            return;
+        }
+        while (len > 0 && !ended) {
+            if (inflater != null && !inflater.finished()) {
+                inflater.setInput(b, off, len);
+                inflate();
+                int rest = inflater.getRemaining();
+                off += len - rest;
+                len = rest;
+                if (inflater.finished() && coding == DEFLATE) {
+                    ended = true;
+                }
+                continue;
+            }
+            hold(b[off++]);
+            len--;
+            if (coding == DEFLATE) {
+                if (heldLength == 2) {
+                    startDeflate();
+                }
+            } else if (inflater == null) {
+                int headerLength = gzipHeaderLength();
+                if (headerLength == heldLength) {
+                    heldLength = 0;
+                    inflater = new Inflater(true);
+                    crc.reset();
+                }
+            } else if (heldLength == TRAILER_LENGTH) {
+                checkGzipTrailer();
+            }
+        }
+    }
+
+    /**
+     * Checks that the encoded data is complete and flushes the decoded
+     * bytes. An empty body is complete, like a response to HEAD, which has
+     * a Content-Encoding but no body.
+     *
+     * @throws EOFException The encoded data was cut short.
+     */
+    void finish() throws IOException {
+        if (coding == DEFLATE && heldLength == 1) {
+            // raw deflate data, which cannot be a single byte.
+            throw new EOFException("Unexpected end of ZLIB input stream");
+        }
+        if (coding == GZIP && inflater == null && heldLength > 0 && members == 0
+                || inflater != null && (!inflater.finished() || coding == GZIP)) {
+            throw new EOFException("Unexpected end of ZLIB input stream");
+        }
+        out.flush();
+    }
+
+    /**
+     * Releases the inflater. The stream written to is not closed.
+     */
+    @Override
+    public void close() {
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    private void startDeflate() throws IOException {
+        // "deflate" should be zlib wrapped, but some servers send it raw.
+        int b0 = held[0] & 0xff;
+        int b1 = held[1] & 0xff;
+        boolean zlib = (b0 & 0x0f) == 8 && ((b0 << 8) | b1) % 31 == 0;
+        inflater = new Inflater(!zlib);
+        heldLength = 0;
+        write(new byte[]{(byte) b0, (byte) b1}, 0, 2);
+    }
+
+    /**
+     * @return The length of the gzip header held, or -1 if it is not
+     * complete yet.
+     * @throws ZipException The body is not gzip data.
+     */
+    private int gzipHeaderLength() throws IOException {
+        if (heldLength < 2) {
+            return -1;
+        }
+        if ((held[0] & 0xff) != 0x1f || (held[1] & 0xff) != 0x8b) {
+            if (members > 0) {
+                // trailing garbage after a member, which GZIPInputStream ignores too.
+                ended = true;
+                return -1;
+            }
+            throw new ZipException("Not in GZIP format");
+        }
+        if (heldLength < 10) {
+            return -1;
+        }
+        if (held[2] != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = held[3] & 0xff;
+        int n = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (heldLength < n + 2) {
+                return -1;
+            }
+            n += 2 + ((held[n] & 0xff) | (held[n + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            n = skipZeroTerminated(n);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            n = skipZeroTerminated(n);
+        }
+        if ((flags & FHCRC) != 0 && n != -1) {
+            n += 2;
+        }
+        return (n != -1 && n <= heldLength) ? n : -1;
+    }
+
+    /**
+     * @return The index after the zero terminating the field at the given
+     * index, or -1 if it has not been held yet.
+     */
+    private int skipZeroTerminated(int n) {
+        if (n == -1) {
+            return -1;
+        }
+        for (int i = n; i < heldLength; i++) {
+            if (held[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private void checkGzipTrailer() throws IOException {
+        long crc32 = readInt(0);
+        long size = readInt(4);
+        if (crc32 != crc.getValue()) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        if (size != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        inflater.end();
+        inflater = null;
+        heldLength = 0;
+        members++;
+    }
+
+    private long readInt(int off) {
+        return (held[off] & 0xffL) | (held[off + 1] & 0xffL) << 8
+                | (held[off + 2] & 0xffL) << 16 | (held[off + 3] & 0xffL) << 24;
+    }
+
+    private void inflate() throws IOException {
+        try {
+            int n;
+            while ((n = inflater.inflate(buffer)) > 0) {
+                if (coding == GZIP) {
+                    crc.update(buffer, 0, n);
+                }
+                emit(buffer, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        if (inflater.needsDictionary()) {
+            throw new ZipException("Preset dictionary not supported");
+        }
+    }
+
+    private void hold(byte b) {
+        if (heldLength == held.length) {
+            byte[] grown = new byte[held.length * 2];
+            System.arraycopy(held, 0, grown, 0, heldLength);
+            held = grown;
+        }
+        held[heldLength++] = b;
+    }
+
+    private void emit(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        monitor.decoded(len);
+    }
+}
@@ -0,0 +1,278 @@
+package com.apuex.restclient;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.apuex.restclient.HttpRequest.DEFAULT_CHARSET;
+
+/**
+ * The {@link AsyncEngine#HTTP2} engine, built on {@link HttpClient}.
+ * Requests to the same host are multiplexed over a single HTTP/2
+ * connection where the server supports it, and fall back to HTTP/1.1
+ * otherwise. The client performs all I/O on a small pool of threads, sized
+ * to the number of processors, however many requests are in flight.
+ * <p>
+ * The client does not expose its connection handshakes, so the
+ * {@link RequestTiming} of a request only tells the time to first byte, as
+ * {@link RequestTiming.Phase#WAIT}, and the transfer time.
+ *
+ * @author wangxy
+ */
+public class HttpClientEngine implements AsyncEngine {
+
+    private final RestClient settings;
+    private final ExecutorService executor;
+    private final HttpClient client;
+
+    public HttpClientEngine(RestClient settings) {
+        this.settings = settings;
+        this.executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "http2-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .executor(executor)
+                .followRedirects(settings.isFollowRedirects()
+                        ? HttpClient.Redirect.NORMAL : HttpClient.Redirect.NEVER);
+        if (settings.getConnectTimeout() > 0) {
+            builder.connectTimeout(Duration.ofMillis(settings.getConnectTimeout()));
+        }
+        this.client = builder.build();
+    }
+
+    public CompletableFuture<String> send(RequestSpec request, OutputStream body, RequestMonitor monitor) {
+        final java.net.http.HttpRequest httpRequest;
+        try {
+            httpRequest = toHttpRequest(request, monitor);
+        } catch (IOException | IllegalArgumentException e) {
+            // e.g. a malformed URL or a header the client reserves for itself.
+            finish(monitor, true);
+            return CompletableFuture.failedFuture(e);
+        }
+        monitor.getTiming().mark(RequestTiming.Phase.QUEUED);
+        CompletableFuture<HttpResponse<Void>> pending = client.sendAsync(httpRequest, info -> {
+            monitor.responded(info.statusCode(), info.headers().firstValue("Content-Type").orElse(null));
+            monitor.getTiming().mark(RequestTiming.Phase.WAIT);
+            OutputStream out = body;
+            if (body != null && settings.isDecompress()) {
+                out = new DecodingOutputStream(body,
+                        info.headers().firstValue("Content-Encoding").orElse(null), monitor);
+            }
+            return new StreamingSubscriber(out, monitor);
+        });
+        monitor.attach(pending);
+        return pending.thenApply(HttpClientEngine::format)
+                .whenComplete((s, t) -> finish(monitor, t != null));
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private java.net.http.HttpRequest toHttpRequest(RequestSpec request, RequestMonitor monitor)
+            throws IOException {
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest
+                .newBuilder(URI.create(request.getUrl().replaceAll(" ", "%20")));
+        if (settings.getReadTimeout() > 0) {
+            builder.timeout(Duration.ofMillis(settings.getReadTimeout()));
+        }
+        RequestBody body = request.hasBody() ? request.getRequestBody() : null;
+        builder.header("Accept-Content", request.getAcceptContentType());
+        builder.header("Accept-Charset", DEFAULT_CHARSET);
+        builder.header("Content-Type", (body != null)
+                ? body.getContentType(request.getContentType())
+                : String.format("%s; charset=%s", request.getContentType(), DEFAULT_CHARSET));
+        if (settings.isDecompress()) {
+            builder.header("Accept-Encoding", HttpRequest.ACCEPT_ENCODING);
+        }
+        for (Map.Entry<String, String> h : request.getHeaders().entrySet()) {
+            builder.setHeader(h.getKey(), h.getValue());
+        }
+        if (body == null) {
+            return builder.method(request.getMethod(), java.net.http.HttpRequest.BodyPublishers.noBody())
+                    .build();
+        }
+        long length = body.getContentLength();
+        monitor.sending(length);
+        java.net.http.HttpRequest.BodyPublisher publisher = java.net.http.HttpRequest.BodyPublishers
+                .ofInputStream(() -> {
+                    try {
+                        return new SentInputStream(body.openStream(), monitor);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        if (length >= 0) {
+            publisher = java.net.http.HttpRequest.BodyPublishers.fromPublisher(publisher, length);
+        }
+        return builder.method(request.getMethod(), publisher).build();
+    }
+
+    /**
+     * @return The response headers.
+     */
+    private static String format(HttpResponse<Void> response) {
+        Map<String, List<String>> headers = Response.newHeaders();
+        headers.putAll(response.headers().map());
+        return Response.format((response.version() == HttpClient.Version.HTTP_2
+                ? "HTTP/2 " : "HTTP/1.1 ") + response.statusCode(), headers);
+    }
+
+    private void finish(RequestMonitor monitor, boolean failed) {
+        monitor.done();
+        RequestMetrics metrics = settings.getMetrics();
+        if (metrics != null) {
+            metrics.record(monitor, failed);
+        }
+    }
+
+    /**
+     * Counts the body bytes and writes them to a stream as they arrive, so
+     * that a body is never held in memory whole, and cancels the
+     * subscription once the request has been cancelled. Buffers are
+     * requested one at a time, so that a slow stream holds back the
+     * connection rather than filling the heap.
+     */
+    private static class StreamingSubscriber implements HttpResponse.BodySubscriber<Void> {
+
+        private final OutputStream out;
+        private final RequestMonitor monitor;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final byte[] buffer = new byte[8192];
+        private Flow.Subscription subscription;
+
+        /**
+         * @param out The stream to write the body to, or null to discard
+         *            it. It is flushed, but not closed.
+         */
+        StreamingSubscriber(OutputStream out, RequestMonitor monitor) {
+            this.out = out;
+            this.monitor = monitor;
+        }
+
+        public CompletionStage<Void> getBody() {
+            return done;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        public void onNext(List<ByteBuffer> item) {
+            if (done.isDone()) {
+                return;
+            }
+            try {
+                for (ByteBuffer b : item) {
+                    monitor.received(b.remaining());
+                    if (out != null) {
+                        write(b);
+                    }
+                }
+            } catch (IOException e) {
+                subscription.cancel();
+                fail(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        private void write(ByteBuffer b) throws IOException {
+            if (b.hasArray()) {
+                out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+                b.position(b.limit());
+                return;
+            }
+            while (b.hasRemaining()) {
+                int n = Math.min(b.remaining(), buffer.length);
+                b.get(buffer, 0, n);
+                out.write(buffer, 0, n);
+            }
+        }
+
+        public void onError(Throwable throwable) {
+            fail(throwable);
+        }
+
+        public void onComplete() {
+            if (done.isDone()) {
+                return;
+            }
+            try {
+                if (out instanceof DecodingOutputStream) {
+                    ((DecodingOutputStream) out).finish();
+                    ((DecodingOutputStream) out).close();
+                } else if (out != null) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            done.complete(null);
+        }
+
+        private void fail(Throwable throwable) {
+            if (out instanceof DecodingOutputStream) {
+                ((DecodingOutputStream) out).close();
+            }
+            done.completeExceptionally(throwable);
+        }
+    }
+
+    /**
+     * Counts the request body bytes as the client pulls them.
+     */
+    private static class SentInputStream extends FilterInputStream {
+
+        private final RequestMonitor monitor;
+
+        SentInputStream(InputStream in, RequestMonitor monitor) {
+            super(in);
+            this.monitor = monitor;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                monitor.sent(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                monitor.sent(n);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.apuex.restclient;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class BatchRunnerTest {
+
+    /**
+     * Completes requests at once, failing those whose url contains "fail".
+     */
+    private static class FakeEngine implements AsyncEngine {
+
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+
+        public CompletableFuture<String> send(RequestSpec request, OutputStream body, RequestMonitor monitor) {
+            sent.add(request.getUrl());
+            CompletableFuture<String> future = new CompletableFuture<String>();
+            if (request.getUrl().contains("fail")) {
+                future.completeExceptionally(new IOException("Connection refused"));
+            } else {
+                monitor.responded(200, "application/json");
+                future.complete("HTTP/1.1 200 OK");
+            }
+            return future;
+        }
+
+        public void close() {
+        }
+    }
+
+    private static List<BatchRunner.Item> read(String... lines) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return BatchRunner.read(new BufferedReader(new StringReader(sb.toString())));
+    }
+
+    /**
+     * @return The results by id.
+     */
+    private static Map<String, Map<?, ?>> results(StringWriter out) {
+        Map<String, Map<?, ?>> results = new HashMap<String, Map<?, ?>>();
+        for (String line : out.toString().split("\n")) {
+            Map<?, ?> result = (Map<?, ?>) Json.parse(line);
+            assertNull("Reported twice", results.put((String) result.get("id"), result));
+        }
+        return results;
+    }
+
+    @Test
+    public void sendsDependentsAfterTheirDependencies() throws Exception {
+        List<BatchRunner.Item> items = read(
+                "{\"id\": \"me\", \"url\": \"http://host/me\", \"dependsOn\": [\"login\"]}",
+                "{\"id\": \"login\", \"url\": \"http://host/login\"}");
+        FakeEngine engine = new FakeEngine();
+        StringWriter out = new StringWriter();
+        assertTrue(new BatchRunner(engine, 4, false, out).run(items));
+        assertEquals(Arrays.asList("http://host/login", "http://host/me"), engine.sent);
+        Map<String, Map<?, ?>> results = results(out);
+        assertEquals(Boolean.TRUE, results.get("me").get("ok"));
+        assertEquals(200L, results.get("me").get("status"));
+    }
+
+    @Test
+    public void skipsDependentsOfAFailedRequest() throws Exception {
+        List<BatchRunner.Item> items = read(
+                "{\"id\": \"login\", \"url\": \"http://fail/login\"}",
+                "{\"id\": \"other\", \"url\": \"http://host/other\"}",
+                "{\"id\": \"me\", \"url\": \"http://host/me\", \"dependsOn\": [\"login\", \"other\"]}",
+                "{\"id\": \"orders\", \"url\": \"http://host/orders\", \"dependsOn\": \"me\"}");
+        FakeEngine engine = new FakeEngine();
+        StringWriter out = new StringWriter();
+        assertFalse(new BatchRunner(engine, 1, false, out).run(items));
+        assertEquals(Arrays.asList("http://fail/login", "http://host/other"), engine.sent);
+        Map<String, Map<?, ?>> results = results(out);
+        assertEquals(4, results.size());
+        assertEquals(Boolean.FALSE, results.get("login").get("ok"));
+        assertNull(results.get("login").get("skipped"));
+        assertEquals(Boolean.TRUE, results.get("other").get("ok"));
+        assertEquals(Boolean.TRUE, results.get("me").get("skipped"));
+        assertEquals("Dependency login failed.", results.get("me").get("error"));
+        assertEquals(Boolean.TRUE, results.get("orders").get("skipped"));
+        assertEquals("Dependency me failed.", results.get("orders").get("error"));
+    }
+
+    @Test
+    public void runsAgain() throws Exception {
+        List<BatchRunner.Item> items = read(
+                "{\"id\": \"a\", \"url\": \"http://fail/a\"}",
+                "{\"id\": \"b\", \"url\": \"http://host/b\", \"dependsOn\": [\"a\"]}");
+        for (int i = 0; i < 2; i++) {
+            StringWriter out = new StringWriter();
+            assertFalse(new BatchRunner(new FakeEngine(), 2, false, out).run(items));
+            assertEquals(Boolean.TRUE, results(out).get("b").get("skipped"));
+        }
+    }
+
+    @Test
+    public void survivesManyRequestsFailingAtOnce() throws Exception {
+        // the dependents are queued at once when the root completes.
+        StringBuilder sb = new StringBuilder("{\"id\": \"root\", \"url\": \"http://host/root\"}\n");
+        for (int i = 0; i < 50000; i++) {
+            sb.append("{\"url\": \"http://fail/").append(i).append("\", \"dependsOn\": \"root\"}\n");
+        }
+        List<BatchRunner.Item> items = BatchRunner.read(new BufferedReader(new StringReader(sb.toString())));
+        StringWriter out = new StringWriter();
+        assertFalse(new BatchRunner(new FakeEngine(), 1, false, out).run(items));
+        assertEquals(items.size(), results(out).size());
+    }
+
+    @Test
+    public void rejectsCycles() throws Exception {
+        try {
+            read("{\"id\": \"a\", \"url\": \"http://host/a\"}",
+                    "{\"id\": \"b\", \"url\": \"http://host/b\", \"dependsOn\": [\"a\", \"d\"]}",
+                    "{\"id\": \"c\", \"url\": \"http://host/c\", \"dependsOn\": [\"b\"]}",
+                    "{\"id\": \"d\", \"url\": \"http://host/d\", \"dependsOn\": [\"c\"]}");
+            fail("Read a cycle");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Dependencies are cyclic.", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSelfDependency() throws Exception {
+        read("{\"id\": \"a\", \"url\": \"http://host/a\", \"dependsOn\": [\"a\"]}");
+    }
+
+    @Test
+    public void rejectsUnknownDependencies() throws Exception {
+        try {
+            read("{\"id\": \"a\", \"url\": \"http://host/a\"}",
+                    "{\"id\": \"b\", \"url\": \"http://host/b\", \"dependsOn\": [\"x\"]}");
+            fail("Read an unknown dependency");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Line 2: unknown dependency x", e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsDuplicateIds() throws Exception {
+        try {
+            read("{\"id\": \"a\", \"url\": \"http://host/a\"}",
+                    "",
+                    "{\"id\": \"a\", \"url\": \"http://host/b\"}");
+            fail("Read a duplicate id");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Line 3: duplicate id a", e.getMessage());
+        }
+    }
+}
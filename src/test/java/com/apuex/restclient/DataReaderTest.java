@@ -0,0 +1,139 @@
+package com.apuex.restclient;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class DataReaderTest {
+
+    private final List<File> files = new ArrayList<File>();
+    private DataReader reader;
+
+    @After
+    public void tearDown() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private DataReader open(String suffix, String content, String... variables) throws IOException {
+        File file = File.createTempFile("data", suffix);
+        files.add(file);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(HttpRequest.DEFAULT_CHARSET));
+        } finally {
+            out.close();
+        }
+        reader = DataReader.open(file.getPath(), Arrays.asList(variables));
+        return reader;
+    }
+
+    @Test
+    public void readsCsvColumnsByName() throws IOException {
+        DataReader in = open(".csv", "name,id,unused\r\nann,1,x\r\nbob,2,y\r\n", "id", "name");
+        assertArrayEquals(new String[]{"1", "ann"}, in.next());
+        assertEquals(1, in.getRow());
+        assertArrayEquals(new String[]{"2", "bob"}, in.next());
+        assertNull(in.next());
+    }
+
+    @Test
+    public void readsQuotedCsvFields() throws IOException {
+        DataReader in = open(".csv", "id,text\n"
+                + "1,\"a, b\"\n"
+                + "2,\"say \"\"hi\"\"\"\n"
+                + "3,\"two\r\nlines\"\n"
+                + "4,\"\"\n", "id", "text");
+        assertArrayEquals(new String[]{"1", "a, b"}, in.next());
+        assertArrayEquals(new String[]{"2", "say \"hi\""}, in.next());
+        assertArrayEquals(new String[]{"3", "two\r\nlines"}, in.next());
+        assertArrayEquals(new String[]{"4", ""}, in.next());
+        assertNull(in.next());
+    }
+
+    @Test
+    public void readsMissingCsvColumnsAsNull() throws IOException {
+        DataReader in = open(".csv", "id,name\n1\n2,\n", "id", "name");
+        assertArrayEquals(new String[]{"1", null}, in.next());
+        assertArrayEquals(new String[]{"2", ""}, in.next());
+        assertNull(in.next());
+    }
+
+    @Test
+    public void skipsEmptyCsvLinesAndByteOrderMark() throws IOException {
+        DataReader in = open(".csv", "\uFEFFid\n\n1\r\n\r\n2", "id");
+        assertArrayEquals(new String[]{"1"}, in.next());
+        assertArrayEquals(new String[]{"2"}, in.next());
+        assertNull(in.next());
+    }
+
+    @Test
+    public void rejectsCsvWithoutTheColumn() throws IOException {
+        try {
+            open(".csv", "id,name\n1,ann\n", "id", "email");
+            fail("Opened a file without the column");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No column email in [id, name]", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCsvWithoutHeader() throws IOException {
+        open(".csv", "", "id");
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsUnclosedQuotes() throws IOException {
+        DataReader in = open(".csv", "id\n\"1\n", "id");
+        in.next();
+    }
+
+    @Test
+    public void readsJsonLines() throws IOException {
+        DataReader in = open(".jsonl", "{\"id\": 1, \"name\": \"ann\", \"tags\": [\"a\"]}\n"
+                + "\n"
+                + "{\"name\": \"bob\", \"id\": null, \"extra\": true}\n", "id", "name", "tags");
+        assertArrayEquals(new String[]{"1", "ann", "[\"a\"]"}, in.next());
+        assertArrayEquals(new String[]{"null", "bob", null}, in.next());
+        assertEquals(2, in.getRow());
+        assertNull(in.next());
+    }
+
+    @Test
+    public void skipsMalformedJsonLines() throws IOException {
+        DataReader in = open(".ndjson", "{\"id\": 1}\n{\"id\": \n[1, 2]\n{\"id\": 4}\n", "id");
+        assertArrayEquals(new String[]{"1"}, in.next());
+        try {
+            in.next();
+            fail("Read a truncated object");
+        } catch (IllegalArgumentException e) {
+            assertEquals(2, in.getRow());
+        }
+        try {
+            in.next();
+            fail("Read an array");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Expected an object.", e.getMessage());
+        }
+        assertArrayEquals(new String[]{"4"}, in.next());
+        assertEquals(4, in.getRow());
+        assertNull(in.next());
+    }
+}
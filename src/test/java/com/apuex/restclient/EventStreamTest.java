@@ -0,0 +1,235 @@
+package com.apuex.restclient;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class EventStreamTest {
+
+    /**
+     * Answers with the responses given, in turn.
+     */
+    private static class FakeClient extends RestClient {
+
+        final Deque<Response> responses = new ArrayDeque<Response>();
+        final List<RequestSpec> requests = new ArrayList<RequestSpec>();
+
+        @Override
+        public Response open(RequestSpec request, RequestMonitor monitor) throws Exception {
+            requests.add(request);
+            if (responses.isEmpty()) {
+                throw new IOException("Connection refused");
+            }
+            return responses.poll();
+        }
+
+        FakeClient respond(int status, String contentType, String body) throws UnsupportedEncodingException {
+            Map<String, List<String>> headers = Response.newHeaders();
+            if (contentType != null) {
+                headers.put("Content-Type", Collections.singletonList(contentType));
+            }
+            responses.add(new Response("HTTP/1.1 " + status, status, headers,
+                    new ByteArrayInputStream(body.getBytes("UTF-8")), null));
+            return this;
+        }
+    }
+
+    /**
+     * Collects the events, and stops the stream once the responses given
+     * are used up.
+     */
+    private static class Recorder implements EventStream.Listener {
+
+        final List<EventStream.Event> events = new ArrayList<EventStream.Event>();
+        final List<Long> retries = new ArrayList<Long>();
+        final List<Exception> causes = new ArrayList<Exception>();
+        FakeClient client;
+        EventStream stream;
+
+        public void connected(Response response) {
+        }
+
+        public void event(EventStream.Event event) {
+            events.add(event);
+        }
+
+        public void disconnected(Exception cause, long retry) {
+            causes.add(cause);
+            retries.add(retry);
+            if (client.responses.isEmpty()) {
+                stream.stop();
+            }
+        }
+    }
+
+    private static RequestSpec request(String accept) {
+        return new RequestSpec("http://host/events", "GET", "application/json", accept,
+                new LinkedHashMap<String, String>(), "", new ArrayList<File>());
+    }
+
+    private static Recorder run(FakeClient client, RequestSpec request) {
+        Recorder recorder = new Recorder();
+        recorder.client = client;
+        recorder.stream = new EventStream(client, request, recorder);
+        recorder.stream.run();
+        return recorder;
+    }
+
+    private static void assertEvent(String type, String id, String data, EventStream.Event event) {
+        assertEquals(type, event.getType());
+        assertEquals(id, event.getId());
+        assertEquals(data, event.getData());
+    }
+
+    @Test
+    public void parsesEvents() throws Exception {
+        FakeClient client = new FakeClient().respond(200, "text/event-stream; charset=utf-8",
+                ": keep alive\n"
+                        + "data: first\n\n"
+                        + "event: update\r\nid: 1\r\ndata:  two spaces\r\ndata:second line\r\n\r\n"
+                        + "data\rfoo: ignored\r\r"
+                        + "id\ndata: after an empty id\n\n"
+                        + "data: incomplete");
+        Recorder recorder = run(client, request(EventStream.EVENT_STREAM));
+        assertEquals(4, recorder.events.size());
+        assertEvent("message", null, "first", recorder.events.get(0));
+        assertEvent("update", "1", " two spaces\nsecond line", recorder.events.get(1));
+        assertEvent("message", "1", "", recorder.events.get(2));
+        assertEvent("message", "", "after an empty id", recorder.events.get(3));
+        assertEquals("", recorder.stream.getLastEventId());
+    }
+
+    @Test
+    public void ignoresEventsWithoutData() throws Exception {
+        FakeClient client = new FakeClient().respond(200, "text/event-stream",
+                "event: ping\n\nid: 5\n\n");
+        Recorder recorder = run(client, request(EventStream.EVENT_STREAM));
+        assertTrue(recorder.events.isEmpty());
+        assertEquals("5", recorder.stream.getLastEventId());
+    }
+
+    @Test
+    public void ignoresIdsWithNull() throws Exception {
+        FakeClient client = new FakeClient().respond(200, "text/event-stream",
+                "id: 1\nid: a\u0000b\ndata: x\n\n");
+        Recorder recorder = run(client, request(EventStream.EVENT_STREAM));
+        assertEvent("message", "1", "x", recorder.events.get(0));
+    }
+
+    @Test
+    public void splitsOtherStreamsIntoLines() throws Exception {
+        FakeClient client = new FakeClient().respond(200, "application/x-ndjson",
+                "{\"a\":1}\r\n{\"b\":2}\n\n\r{\"c\":3}");
+        Recorder recorder = run(client, request("application/x-ndjson"));
+        assertEquals(3, recorder.events.size());
+        assertEvent(null, null, "{\"a\":1}", recorder.events.get(0));
+        assertEvent(null, null, "{\"b\":2}", recorder.events.get(1));
+        assertEvent(null, null, "{\"c\":3}", recorder.events.get(2));
+    }
+
+    @Test
+    public void readsLinesWithAQuotedOrUnknownCharset() throws Exception {
+        for (String charset : new String[]{"\"utf-8\"", "no-such-charset"}) {
+            FakeClient client = new FakeClient().respond(200, "application/x-ndjson; charset=" + charset,
+                    "{\"a\":1}\n");
+            Recorder recorder = run(client, request("application/x-ndjson"));
+            assertEquals(charset, 1, recorder.events.size());
+            assertEvent(null, null, "{\"a\":1}", recorder.events.get(0));
+            assertNull(charset, recorder.causes.get(0));
+        }
+    }
+
+    @Test
+    public void takesTheRetryDelay() throws Exception {
+        FakeClient client = new FakeClient().respond(200, "text/event-stream", "retry: 250\n\n");
+        Recorder recorder = run(client, request(EventStream.EVENT_STREAM));
+        assertEquals(Collections.singletonList(250L), recorder.retries);
+    }
+
+    @Test
+    public void ignoresRetryDelaysOtherThanDigits() throws Exception {
+        for (String retry : new String[]{"-5", "+7", "1.5", " 9", "", "1e3", "99999999999999999999"}) {
+            FakeClient client = new FakeClient().respond(200, "text/event-stream", "retry: " + retry + "\n\n");
+            Recorder recorder = run(client, request(EventStream.EVENT_STREAM));
+            assertEquals(retry, Collections.singletonList(EventStream.DEFAULT_RETRY), recorder.retries);
+        }
+    }
+
+    @Test
+    public void reconnectsWithTheLastEventId() throws Exception {
+        FakeClient client = new FakeClient()
+                .respond(200, "text/event-stream", "retry: 0\nid: 7\ndata: x\n\n")
+                .respond(204, null, "");
+        Recorder recorder = run(client, request(EventStream.EVENT_STREAM));
+        assertEquals(2, recorder.stream.getConnectionCount());
+        assertNull(client.requests.get(0).getHeaders().get("Last-Event-ID"));
+        assertEquals("7", client.requests.get(1).getHeaders().get("Last-Event-ID"));
+        assertEquals(EventStream.EVENT_STREAM, client.requests.get(1).getHeaders().get("Accept"));
+        // 204 ends the stream.
+        assertEquals(-1L, (long) recorder.retries.get(1));
+        assertNull(recorder.causes.get(1));
+    }
+
+    @Test
+    public void reconnectsAfterAFailure() throws Exception {
+        FakeClient client = new FakeClient().respond(200, "text/event-stream", "retry: 0\n\n");
+        Recorder recorder = new Recorder() {
+            @Override
+            public void disconnected(Exception cause, long retry) {
+                causes.add(cause);
+                retries.add(retry);
+                if (causes.size() == 2) {
+                    stream.stop();
+                }
+            }
+        };
+        recorder.stream = new EventStream(client, request(EventStream.EVENT_STREAM), recorder);
+        // the first response ends normally, the second attempt fails.
+        recorder.stream.run();
+        assertEquals(2, client.requests.size());
+        assertNull(recorder.causes.get(0));
+        assertTrue(recorder.causes.get(1) instanceof IOException);
+        assertEquals(Arrays.asList(0L, 0L), recorder.retries);
+    }
+
+    @Test
+    public void stopsOnErrorStatus() throws Exception {
+        FakeClient client = new FakeClient()
+                .respond(503, "text/event-stream", "")
+                .respond(200, "text/event-stream", "data: never\n\n");
+        Recorder recorder = run(client, request(EventStream.EVENT_STREAM));
+        assertEquals(1, client.requests.size());
+        assertEquals(Collections.singletonList(-1L), recorder.retries);
+        assertNotNull(recorder.causes.get(0));
+        assertTrue(recorder.events.isEmpty());
+        assertTrue(recorder.stream.isStopped());
+    }
+
+    @Test
+    public void stopsOnOtherContentTypeForEventStreams() throws Exception {
+        FakeClient client = new FakeClient()
+                .respond(200, "text/html", "<html></html>")
+                .respond(200, "text/event-stream", "data: never\n\n");
+        Recorder recorder = run(client, request(EventStream.EVENT_STREAM));
+        assertEquals(1, client.requests.size());
+        assertEquals(Collections.singletonList(-1L), recorder.retries);
+        assertNotNull(recorder.causes.get(0));
+        assertTrue(recorder.events.isEmpty());
+    }
+}
@@ -0,0 +1,113 @@
+package com.apuex.restclient;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class HistoryTest {
+
+    private File directory;
+    private History history;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("history", "");
+        directory.delete();
+        history = new History(directory);
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static RequestSpec request(String method, String url, String body) {
+        return new RequestSpec(url, method, "application/json", "application/json",
+                new LinkedHashMap<String, String>(), body, new ArrayList<File>());
+    }
+
+    /**
+     * Records an exchange, reading its response body to the end.
+     */
+    private void exchange(RequestSpec request, String contentType, String body) throws IOException {
+        Map<String, List<String>> headers = Response.newHeaders();
+        headers.put("Content-Type", Collections.singletonList(contentType));
+        Response response = new Response("HTTP/1.1 200 OK", 200, headers,
+                new ByteArrayInputStream(body.getBytes("UTF-8")), null);
+        InputStream in = history.record(request, response, new RequestMonitor());
+        try {
+            HttpRequest.copy(in, null, false);
+        } finally {
+            in.close();
+        }
+    }
+
+    private List<String> search(String query) throws IOException {
+        List<String> urls = new ArrayList<String>();
+        for (History.Entry e : history.search(query)) {
+            urls.add(e.getUrl());
+        }
+        return urls;
+    }
+
+    @Test
+    public void recordsBodiesWithAQuotedOrUnknownCharset() throws IOException {
+        exchange(request("GET", "http://host/a", ""), "application/json; charset=\"utf-8\"", "{\"name\":\"alpha\"}");
+        exchange(request("GET", "http://host/b", ""), "application/json; charset=no-such", "{\"name\":\"beta\"}");
+        assertEquals(Collections.singletonList("http://host/a"), search("body:alpha"));
+        assertEquals(Collections.singletonList("http://host/b"), search("body:beta"));
+    }
+
+    @Test
+    public void indexesAResponseBodyStoredBeforeAsARequestBody() throws IOException {
+        String json = "{\"name\":\"echoed\"}";
+        exchange(request("POST", "http://host/echo", json), "application/json", json);
+        assertEquals(Collections.singletonList("http://host/echo"), search("body:echoed"));
+    }
+
+    @Test
+    public void indexesAResponseBodyStoredBeforeAsBinary() throws IOException {
+        exchange(request("GET", "http://host/binary", ""), "application/octet-stream", "shared words");
+        exchange(request("GET", "http://host/other", ""), "text/plain", "other words");
+        exchange(request("GET", "http://host/text", ""), "text/plain", "shared words");
+        assertEquals(Arrays.asList("http://host/text", "http://host/other", "http://host/binary"),
+                search("body:words"));
+        assertEquals(Arrays.asList("http://host/text", "http://host/binary"), search("body:shared"));
+    }
+
+    @Test
+    public void indexesWordsLoggedAgainAfterARestartOnce() throws IOException {
+        exchange(request("GET", "http://host/a", ""), "text/plain", "same words");
+        history = new History(directory);
+        exchange(request("GET", "http://host/b", ""), "text/plain", "same words");
+        assertEquals(Arrays.asList("http://host/b", "http://host/a"), search("body:same"));
+        exchange(request("GET", "http://host/c", ""), "text/plain", "same words");
+        assertEquals(Arrays.asList("http://host/c", "http://host/b", "http://host/a"), search("body:same"));
+    }
+}
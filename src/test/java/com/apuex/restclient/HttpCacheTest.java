@@ -0,0 +1,283 @@
+package com.apuex.restclient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class HttpCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    /**
+     * A response, which is nothing but its status and headers.
+     */
+    private static class FakeConnection extends HttpURLConnection {
+
+        final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+        FakeConnection() throws IOException {
+            super(new URL("http://host/"));
+        }
+
+        FakeConnection header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public int getResponseCode() {
+            return HTTP_OK;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+
+    private File directory;
+    private HttpCache cache;
+    private HttpServer server;
+    /**
+     * The If-None-Match header of each request served, or "" if none.
+     */
+    private final List<String> validators = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("cache", "");
+        directory.delete();
+        cache = new HttpCache(directory, 1 << 20);
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+        cache.clear();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Starts a server answering with a body, which must always be
+     * revalidated, and 304 Not Modified to a request with its ETag.
+     */
+    private String serve(final String body) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                validators.add(ifNoneMatch == null ? "" : ifNoneMatch);
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                exchange.getResponseHeaders().add("Cache-Control", "max-age=0");
+                if (ETAG.equals(ifNoneMatch)) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    byte[] bytes = body.getBytes("UTF-8");
+                    exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=UTF-8");
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(bytes);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/resource";
+    }
+
+    private static String date(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+
+    private static RequestSpec get(String url) {
+        return new RequestSpec(url, "GET", "text/plain", "text/plain",
+                new LinkedHashMap<String, String>(), "", new ArrayList<File>());
+    }
+
+    private static String read(Response response) throws IOException {
+        try {
+            return HttpRequest.asString(response.getBody(), "UTF-8");
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void revalidatesAStaleEntry() throws Exception {
+        RestClient client = new RestClient();
+        client.setCache(cache);
+        RequestSpec request = get(serve("hello"));
+        assertEquals("hello", read(client.open(request, new RequestMonitor())));
+        RequestMonitor monitor = new RequestMonitor();
+        Response response = client.open(request, monitor);
+        assertEquals(200, response.getStatus());
+        assertEquals("hello", read(response));
+        assertEquals(HttpCache.Status.REVALIDATED, monitor.getCacheStatus());
+        assertEquals(Arrays.asList("", ETAG), validators);
+    }
+
+    @Test
+    public void sendsTheRequestAgainOnNotModifiedIfTheBodyIsGone() throws Exception {
+        RestClient client = new RestClient();
+        client.setCache(cache);
+        RequestSpec request = get(serve("hello"));
+        assertEquals("hello", read(client.open(request, new RequestMonitor())));
+        for (File f : directory.listFiles()) {
+            if (f.getName().endsWith(".body")) {
+                assertTrue(f.delete());
+            }
+        }
+        RequestMonitor monitor = new RequestMonitor();
+        Response response = client.open(request, monitor);
+        assertEquals(200, response.getStatus());
+        assertEquals("hello", read(response));
+        assertEquals(HttpCache.Status.MISS, monitor.getCacheStatus());
+        assertEquals(Arrays.asList("", ETAG, ""), validators);
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void followsMaxAgeLessAge() throws Exception {
+        long now = 1000000000000L;
+        assertEquals(now + 60000, HttpCache.freshUntil(new FakeConnection()
+                .header("Cache-Control", "public, max-age=60"), now));
+        assertEquals(now + 40000, HttpCache.freshUntil(new FakeConnection()
+                .header("Cache-Control", "max-age=60").header("Age", "20"), now));
+        assertEquals(now + Integer.MAX_VALUE * 1000L, HttpCache.freshUntil(new FakeConnection()
+                .header("Cache-Control", "max-age=99999999999"), now));
+        // max-age takes precedence over Expires.
+        assertEquals(now + 60000, HttpCache.freshUntil(new FakeConnection()
+                .header("Cache-Control", "max-age=60").header("Expires", "0"), now));
+    }
+
+    @Test
+    public void followsNoStoreAndNoCache() throws Exception {
+        long now = 1000000000000L;
+        assertEquals(HttpCache.NOT_STORABLE, HttpCache.freshUntil(new FakeConnection()
+                .header("Cache-Control", "no-store, max-age=60"), now));
+        assertEquals(now, HttpCache.freshUntil(new FakeConnection()
+                .header("Cache-Control", "no-cache, max-age=60"), now));
+    }
+
+    @Test
+    public void followsExpiresRelativeToDate() throws Exception {
+        long now = 1000000000000L;
+        long date = now - 3600000;
+        assertEquals(now + 30000, HttpCache.freshUntil(new FakeConnection()
+                .header("Date", date(date)).header("Expires", date(date + 30000)), now));
+        assertEquals(now, HttpCache.freshUntil(new FakeConnection()
+                .header("Date", date(date)).header("Expires", "0"), now));
+        assertEquals(now - 30000, HttpCache.freshUntil(new FakeConnection()
+                .header("Date", date(date)).header("Expires", date(date - 30000)), now));
+    }
+
+    @Test
+    public void takesATenthOfTheTimeSinceLastModified() throws Exception {
+        long now = 1000000000000L;
+        assertEquals(now + 10000, HttpCache.freshUntil(new FakeConnection()
+                .header("Date", date(now)).header("Last-Modified", date(now - 100000)), now));
+        assertEquals(now, HttpCache.freshUntil(new FakeConnection()
+                .header("Date", date(now)).header("Last-Modified", date(now + 100000)), now));
+        assertEquals(now, HttpCache.freshUntil(new FakeConnection(), now));
+    }
+
+    @Test
+    public void dropsTheContentEncodingOfADecodedBody() throws Exception {
+        FakeConnection connection = new FakeConnection().header("Cache-Control", "max-age=60");
+        for (boolean decoded : new boolean[]{true, false}) {
+            Map<String, List<String>> headers = Response.newHeaders();
+            headers.put("Content-Encoding", Collections.singletonList("gzip"));
+            headers.put("Content-Length", Collections.singletonList("25"));
+            headers.put("Content-Type", Collections.singletonList("text/plain"));
+            InputStream in = cache.store("key", connection, headers, decoded,
+                    new ByteArrayInputStream("hello".getBytes("UTF-8")));
+            assertEquals("hello", HttpRequest.asString(in, "UTF-8"));
+            Map<String, List<String>> stored = cache.get("key").getHeaders();
+            assertEquals(!decoded, stored.containsKey("Content-Encoding"));
+            assertEquals(!decoded, stored.containsKey("Content-Length"));
+            assertTrue(stored.containsKey("Content-Type"));
+            // the response read meanwhile keeps its headers.
+            assertTrue(headers.containsKey("Content-Encoding"));
+        }
+    }
+
+    @Test
+    public void servesADecodedBodyWithoutItsContentEncoding() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=UTF-8");
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = new GZIPOutputStream(exchange.getResponseBody());
+                out.write("hello".getBytes("UTF-8"));
+                out.close();
+                exchange.close();
+            }
+        });
+        server.start();
+        RestClient client = new RestClient();
+        client.setCache(cache);
+        RequestSpec request = get("http://127.0.0.1:" + server.getAddress().getPort() + "/gzip");
+        assertEquals("hello", read(client.open(request, new RequestMonitor())));
+        RequestMonitor monitor = new RequestMonitor();
+        Response response = client.open(request, monitor);
+        assertEquals(HttpCache.Status.HIT, monitor.getCacheStatus());
+        assertNull(response.getHeaders().get("Content-Encoding"));
+        assertEquals("hello", read(response));
+    }
+}
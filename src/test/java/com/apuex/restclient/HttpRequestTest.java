@@ -0,0 +1,47 @@
+package com.apuex.restclient;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class HttpRequestTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void readsTheCharsetParameter() {
+        assertEquals("ISO-8859-1", HttpRequest.getCharset("text/html; charset=ISO-8859-1"));
+        assertEquals("utf-8", HttpRequest.getCharset("application/json; charset=\"utf-8\""));
+        assertEquals("utf-8", HttpRequest.getCharset("text/plain; Charset=utf-8; q=1"));
+        assertEquals("utf-16", HttpRequest.getCharset("text/plain; format=flowed; charset=utf-16"));
+    }
+
+    @Test
+    public void defaultsWithoutACharsetParameter() {
+        assertEquals(HttpRequest.DEFAULT_CHARSET, HttpRequest.getCharset(null));
+        assertEquals(HttpRequest.DEFAULT_CHARSET, HttpRequest.getCharset("application/json"));
+        assertEquals(HttpRequest.DEFAULT_CHARSET, HttpRequest.getCharset("multipart/form-data; boundary=--x"));
+        assertEquals(HttpRequest.DEFAULT_CHARSET, HttpRequest.getCharset("text/plain; charset="));
+        assertEquals(HttpRequest.DEFAULT_CHARSET, HttpRequest.getCharset("text/plain; charset=\"\""));
+    }
+
+    @Test
+    public void looksUpCharsets() {
+        assertEquals(Charset.forName("ISO-8859-1"), HttpRequest.toCharset("latin1"));
+        assertEquals(UTF_8, HttpRequest.toCharset("utf-8"));
+    }
+
+    @Test
+    public void fallsBackOnIllegalOrUnsupportedCharsets() {
+        assertEquals(UTF_8, HttpRequest.toCharset("\"utf-8\""));
+        assertEquals(UTF_8, HttpRequest.toCharset("utf-8; q=1"));
+        assertEquals(UTF_8, HttpRequest.toCharset("no-such-charset"));
+        assertEquals(UTF_8, HttpRequest.toCharset(""));
+        assertEquals(UTF_8, HttpRequest.toCharset(null));
+    }
+}
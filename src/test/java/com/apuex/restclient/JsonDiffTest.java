@@ -0,0 +1,90 @@
+package com.apuex.restclient;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class JsonDiffTest {
+
+    /**
+     * @return The differences, each as its kind and path.
+     */
+    private static List<String> diff(String a, String b) throws InterruptedIOException {
+        final List<String> differences = new ArrayList<String>();
+        new JsonDiff(new JsonDiff.Listener() {
+            public void difference(JsonDiff.Kind kind, String path, Object a, Object b) {
+                differences.add(kind + " " + path);
+            }
+        }).diff(Json.parse(a), Json.parse(b));
+        return differences;
+    }
+
+    private static List<String> none() {
+        return Collections.emptyList();
+    }
+
+    @Test
+    public void findsNothingInEqualDocuments() throws Exception {
+        assertEquals(none(), diff("{\"a\": [1, 2, {\"b\": null}]}", "{\"a\":[1,2,{\"b\":null}]}"));
+        assertEquals(none(), diff("[]", "[]"));
+        assertEquals(none(), diff("{}", "{}"));
+    }
+
+    @Test
+    public void ignoresTheOrderOfMembers() throws Exception {
+        assertEquals(none(), diff("{\"a\": 1, \"b\": {\"c\": 2, \"d\": 3}}",
+                "{\"b\": {\"d\": 3, \"c\": 2}, \"a\": 1}"));
+    }
+
+    @Test
+    public void reportsMembersAddedAndRemoved() throws Exception {
+        assertEquals(Arrays.asList("REMOVED $.a", "ADDED $.b"), diff("{\"a\": 1}", "{\"b\": 1}"));
+    }
+
+    @Test
+    public void reportsChangedValuesWithTheirPath() throws Exception {
+        assertEquals(Collections.singletonList("CHANGED $.items[1].price"),
+                diff("{\"items\": [{\"price\": 1}, {\"price\": 2}]}",
+                        "{\"items\": [{\"price\": 1}, {\"price\": 3}]}"));
+        assertEquals(Collections.singletonList("CHANGED $"), diff("1", "\"1\""));
+        assertEquals(Collections.singletonList("CHANGED $.a"), diff("{\"a\": [1]}", "{\"a\": {}}"));
+    }
+
+    @Test
+    public void quotesMemberNames() throws Exception {
+        assertEquals(Arrays.asList("CHANGED $[\"x y\"]", "CHANGED $[\"\"]", "CHANGED $[\"1\"]"),
+                diff("{\"x y\": 1, \"\": 1, \"1\": 1}", "{\"x y\": 2, \"\": 2, \"1\": 2}"));
+    }
+
+    @Test
+    public void reportsAnInsertionIntoAnArrayOnce() throws Exception {
+        assertEquals(Collections.singletonList("ADDED $[1]"), diff("[1, 2, 3, 4]", "[1, 9, 2, 3, 4]"));
+        assertEquals(Collections.singletonList("REMOVED $[0]"), diff("[1, 2, 3, 4]", "[2, 3, 4]"));
+        assertEquals(Arrays.asList("ADDED $[0]", "ADDED $[1]"), diff("[]", "[1, 2]"));
+    }
+
+    @Test
+    public void comparesReplacedElements() throws Exception {
+        assertEquals(Arrays.asList("ADDED $[0]", "CHANGED $[1>2].p"),
+                diff("[1, {\"p\": 1}]", "[0, 1, {\"p\": 2}]"));
+    }
+
+    @Test
+    public void recognizesJsonContentTypes() {
+        assertTrue(JsonDiff.isJson("application/json"));
+        assertTrue(JsonDiff.isJson("Application/JSON; charset=UTF-8"));
+        assertTrue(JsonDiff.isJson("application/problem+json"));
+        assertTrue(JsonDiff.isJson("text/json"));
+        assertFalse(JsonDiff.isJson("text/plain"));
+        assertFalse(JsonDiff.isJson(null));
+    }
+}
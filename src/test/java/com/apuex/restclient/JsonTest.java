@@ -0,0 +1,124 @@
+package com.apuex.restclient;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class JsonTest {
+
+    @Test
+    public void readsEscapes() {
+        assertEquals("a\"b\\c/d\b\f\n\r\t", Json.parse("\"a\\\"b\\\\c\\/d\\b\\f\\n\\r\\t\""));
+    }
+
+    @Test
+    public void readsUnicodeEscapes() {
+        assertEquals("\u00e9\u4e2d\ud83d\ude00", Json.parse("\"\\u00E9\\u4e2d\\ud83d\\ude00\""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortUnicodeEscape() {
+        Json.parse("\"\\u12\"");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidUnicodeEscape() {
+        Json.parse("\"\\u12g4\"");
+    }
+
+    @Test
+    public void readsNestedValues() {
+        Object value = Json.parse(" {\"a\": [1, {\"b\": [true, false, null]}, []], \"c\": {}} ");
+        Map<String, Object> b = new LinkedHashMap<String, Object>();
+        b.put("b", Arrays.asList(Boolean.TRUE, Boolean.FALSE, null));
+        Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        expected.put("a", Arrays.asList(1L, b, Collections.emptyList()));
+        expected.put("c", Collections.emptyMap());
+        assertEquals(expected, value);
+    }
+
+    @Test
+    public void keepsMemberOrder() {
+        Map<?, ?> map = (Map<?, ?>) Json.parse("{\"z\": 1, \"a\": 2, \"m\": 3}");
+        assertEquals(Arrays.asList("z", "a", "m"), Arrays.asList(map.keySet().toArray()));
+    }
+
+    @Test
+    public void readsIntegralNumbersAsLong() {
+        assertEquals(0L, Json.parse("0"));
+        assertEquals(-42L, Json.parse("-42"));
+        assertEquals(Long.MAX_VALUE, Json.parse("9223372036854775807"));
+    }
+
+    @Test
+    public void readsOtherNumbersAsDouble() {
+        assertEquals(1.5, Json.parse("1.5"));
+        assertEquals(1e3, Json.parse("1e3"));
+        assertEquals(-2.5E-3, Json.parse("-2.5E-3"));
+        // too large for a long.
+        assertEquals(1e19, Json.parse("10000000000000000000"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidNumber() {
+        Json.parse("1-2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTrailingGarbage() {
+        Json.parse("{\"a\": 1} x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSecondValue() {
+        Json.parse("1 2");
+    }
+
+    @Test
+    public void rejectsTruncatedInput() {
+        String text = "{\"a\": [1, \"two\", {\"b\": true}], \"c\": null}";
+        for (int i = 0; i < text.length(); i++) {
+            try {
+                Json.parse(text.substring(0, i));
+                fail("Parsed " + text.substring(0, i));
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(" at offset "));
+            }
+        }
+        assertNotNull(Json.parse(text));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMisspelledLiteral() {
+        Json.parse("nul");
+    }
+
+    @Test
+    public void roundTripsThroughWrite() {
+        String text = "{\"s\":\"q\\\"b\\\\n\\nr\\rt\\t\\u0001\u00e9\",\"n\":-1,\"d\":0.25,"
+                + "\"a\":[true,false,null,[],{}],\"o\":{\"x\":{\"y\":[1,2]}}}";
+        Object value = Json.parse(text);
+        assertEquals(text, Json.toString(value));
+        assertEquals(value, Json.parse(Json.toString(value)));
+    }
+
+    @Test
+    public void writesControlCharactersEscaped() {
+        assertEquals("\"\\u001f\\n\"", Json.toString("\u001f\n"));
+    }
+
+    @Test
+    public void writesNonFiniteNumbersAsNull() {
+        List<Object> values = Arrays.<Object>asList(Double.NaN, Double.POSITIVE_INFINITY, 1.5, 7);
+        assertEquals("[null,null,1.5,7]", Json.toString(values));
+    }
+}
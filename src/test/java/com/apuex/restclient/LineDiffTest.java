@@ -0,0 +1,151 @@
+package com.apuex.restclient;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class LineDiffTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<MappedTextFile> mapped = new ArrayList<MappedTextFile>();
+    private final List<File> files = new ArrayList<File>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (MappedTextFile file : mapped) {
+            file.close();
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private MappedTextFile map(String content) throws IOException {
+        File file = File.createTempFile("diff", ".txt");
+        files.add(file);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+        MappedTextFile text = new MappedTextFile(file);
+        mapped.add(text);
+        return text;
+    }
+
+    private static List<String> lines(LineDiff.Lines lines) {
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < lines.size(); i++) {
+            list.add(lines.get(i, UTF_8));
+        }
+        return list;
+    }
+
+    /**
+     * Compares the texts and applies the changes to the lines of the first,
+     * checking that the result is the lines of the second.
+     *
+     * @return The changes.
+     */
+    private List<int[]> check(String a, String b) throws IOException {
+        LineDiff diff = new LineDiff(map(a), map(b));
+        final List<int[]> changes = new ArrayList<int[]>();
+        diff.diff(new Myers.Listener() {
+            public void changed(int aStart, int aEnd, int bStart, int bEnd) {
+                changes.add(new int[]{aStart, aEnd, bStart, bEnd});
+            }
+        });
+        List<String> x = lines(diff.getA());
+        List<String> y = lines(diff.getB());
+        List<String> result = new ArrayList<String>();
+        int i = 0;
+        for (int[] change : changes) {
+            assertTrue(change[0] >= i && change[1] <= x.size() && change[3] <= y.size());
+            result.addAll(x.subList(i, change[0]));
+            result.addAll(y.subList(change[2], change[3]));
+            i = change[1];
+        }
+        result.addAll(x.subList(i, x.size()));
+        assertEquals(y, result);
+        return changes;
+    }
+
+    @Test
+    public void splitsLines() throws Exception {
+        LineDiff diff = new LineDiff(map("one\ntwo\r\n\nlast"), map(""));
+        diff.diff(new Myers.Listener() {
+            public void changed(int aStart, int aEnd, int bStart, int bEnd) {
+            }
+        });
+        assertEquals(Arrays.asList("one", "two", "", "last"), lines(diff.getA()));
+        assertEquals(0, diff.getB().size());
+    }
+
+    @Test
+    public void comparesEmptyFiles() throws Exception {
+        assertTrue(check("", "").isEmpty());
+        List<int[]> changes = check("", "a\nb\n");
+        assertEquals(1, changes.size());
+        assertArrayEquals(new int[]{0, 0, 0, 2}, changes.get(0));
+        changes = check("a\nb\n", "");
+        assertEquals(1, changes.size());
+        assertArrayEquals(new int[]{0, 2, 0, 0}, changes.get(0));
+    }
+
+    @Test
+    public void findsNothingInIdenticalFiles() throws Exception {
+        assertTrue(check("a\nb\nc\n", "a\nb\nc\n").isEmpty());
+    }
+
+    @Test
+    public void replacesDisjointFilesWhole() throws Exception {
+        List<int[]> changes = check("a\nb\nc\n", "x\ny\n");
+        assertEquals(1, changes.size());
+        assertArrayEquals(new int[]{0, 3, 0, 2}, changes.get(0));
+    }
+
+    @Test
+    public void ignoresCarriageReturns() throws Exception {
+        assertTrue(check("a\r\nb\r\nc\r\n", "a\nb\nc\n").isEmpty());
+        List<int[]> changes = check("a\r\nb\r\nc", "a\nx\nc\n");
+        assertEquals(1, changes.size());
+        assertArrayEquals(new int[]{1, 2, 1, 2}, changes.get(0));
+    }
+
+    @Test
+    public void ignoresAMissingLastLineBreak() throws Exception {
+        assertTrue(check("a\nb", "a\nb\n").isEmpty());
+    }
+
+    @Test
+    public void patchesRandomFiles() throws Exception {
+        Random random = new Random(3);
+        for (int round = 0; round < 50; round++) {
+            StringBuilder a = new StringBuilder();
+            StringBuilder b = new StringBuilder();
+            for (int i = random.nextInt(200); i > 0; i--) {
+                a.append("line ").append(random.nextInt(20)).append(random.nextBoolean() ? "\r\n" : "\n");
+            }
+            for (int i = random.nextInt(200); i > 0; i--) {
+                b.append("line ").append(random.nextInt(20)).append('\n');
+            }
+            check(a.toString(), b.toString());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.apuex.restclient;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class LoadTestTest {
+
+    /**
+     * Answers at once, but stalls the first request.
+     */
+    private static class StallingClient extends RestClient {
+
+        final AtomicInteger sent = new AtomicInteger();
+        final long stallMillis;
+
+        StallingClient(long stallMillis) {
+            this.stallMillis = stallMillis;
+        }
+
+        @Override
+        public String send(RequestSpec request, RequestMonitor monitor) throws Exception {
+            if (sent.incrementAndGet() == 1) {
+                Thread.sleep(stallMillis);
+            }
+            return "";
+        }
+    }
+
+    private static RequestSpec request() {
+        return new RequestSpec("http://host/", "GET", "application/json", "application/json",
+                new LinkedHashMap<String, String>(), "", new ArrayList<File>());
+    }
+
+    @Test
+    public void countsTheTimePacedRequestsWaitedForAStall() throws Exception {
+        // 10 ms apart, while the first request stalls the only worker for 300 ms.
+        LoadTest test = new LoadTest(new StallingClient(300), request(), 1, 20, 0, 100);
+        test.run();
+        assertEquals(20, test.getCompleted());
+        // requests scheduled during the stall waited up to 290 ms.
+        assertTrue(test.getHistogram().getValueAtPercentile(50) >= 100000);
+        assertTrue(test.getHistogram().getValueAtPercentile(90) >= 200000);
+        // while being served at once.
+        assertTrue(test.getServiceTimes().getValueAtPercentile(90) < 100000);
+        assertTrue(test.formatReport().contains("service:"));
+    }
+
+    @Test
+    public void measuresUnpacedRequestsFromTheirSend() throws Exception {
+        LoadTest test = new LoadTest(new StallingClient(300), request(), 1, 20, 0, 0);
+        test.run();
+        assertEquals(20, test.getCompleted());
+        assertTrue(test.getHistogram().getValueAtPercentile(90) < 100000);
+        assertTrue(test.getHistogram().getMaxValue() >= 300000);
+        assertFalse(test.formatReport().contains("service:"));
+    }
+}
@@ -0,0 +1,137 @@
+package com.apuex.restclient;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class MappedTextFileTest {
+
+    private final List<MappedTextFile> opened = new ArrayList<MappedTextFile>();
+    private final List<File> files = new ArrayList<File>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (MappedTextFile text : opened) {
+            text.close();
+        }
+        for (File f : files) {
+            f.delete();
+        }
+    }
+
+    private MappedTextFile open(byte[] bytes) throws IOException {
+        File file = File.createTempFile("text", ".txt");
+        files.add(file);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        MappedTextFile text = new MappedTextFile(file);
+        opened.add(text);
+        text.buildIndex();
+        return text;
+    }
+
+    private static byte[] repeat(char c, int count) {
+        byte[] bytes = new byte[count];
+        Arrays.fill(bytes, (byte) c);
+        return bytes;
+    }
+
+    private static String line(MappedTextFile text, int line) {
+        long start = text.getLineStart(line);
+        byte[] bytes = new byte[(int) (text.getLineEnd(start) - start)];
+        text.get(start, bytes, 0, bytes.length);
+        return new String(bytes, Charset.forName("UTF-8"));
+    }
+
+    @Test
+    public void indexesLines() throws IOException {
+        MappedTextFile text = open("one\ntwo\n\nfour".getBytes("UTF-8"));
+        assertEquals(4, text.getLineCount());
+        assertEquals("one", line(text, 0));
+        assertEquals("two", line(text, 1));
+        assertEquals("", line(text, 2));
+        assertEquals("four", line(text, 3));
+        assertEquals(4, text.getMaxLineLength());
+        assertEquals(4L, text.getNextLineStart(0));
+        assertEquals(1, text.getLineOf(5));
+        assertEquals(3, text.getLineOf(9));
+    }
+
+    @Test
+    public void indexesAnEmptyFile() throws IOException {
+        MappedTextFile text = open(new byte[0]);
+        assertEquals(1, text.getLineCount());
+        assertEquals("", line(text, 0));
+        assertEquals(0, text.getLineOf(0));
+    }
+
+    @Test
+    public void splitsALongLine() throws IOException {
+        MappedTextFile text = open(repeat('x', 10000));
+        int max = MappedTextFile.MAX_LINE_LENGTH;
+        assertEquals(3, text.getLineCount());
+        assertEquals(max, text.getMaxLineLength());
+        assertEquals(0L, text.getLineStart(0));
+        assertEquals((long) max, text.getLineStart(1));
+        assertEquals(2L * max, text.getLineStart(2));
+        assertEquals((long) max, text.getLineEnd(0));
+        assertEquals((long) max, text.getNextLineStart(0));
+        assertEquals(10000L, text.getLineEnd(2 * max));
+        assertEquals(10000 - 2 * max, line(text, 2).length());
+        assertEquals(0, text.getLineOf(max - 1));
+        assertEquals(1, text.getLineOf(max));
+        assertEquals(2, text.getLineOf(9999));
+    }
+
+    @Test
+    public void doesNotSplitALineEndingAtTheLimit() throws IOException {
+        byte[] line = repeat('x', MappedTextFile.MAX_LINE_LENGTH);
+        byte[] bytes = new byte[line.length * 2 + 1];
+        System.arraycopy(line, 0, bytes, 0, line.length);
+        bytes[line.length] = '\n';
+        System.arraycopy(line, 0, bytes, line.length + 1, line.length);
+        MappedTextFile text = open(bytes);
+        assertEquals(2, text.getLineCount());
+        assertEquals(line.length + 1L, text.getLineStart(1));
+        assertEquals(line.length + 1L, text.getNextLineStart(0));
+        assertEquals(MappedTextFile.MAX_LINE_LENGTH, text.getMaxLineLength());
+    }
+
+    @Test
+    public void splitsBetweenCharacters() throws IOException {
+        StringBuilder sb = new StringBuilder("a");
+        for (int i = 0; i < 5000; i++) {
+            sb.append("\u4e2d\u00e9\ud83d\ude00");
+        }
+        String s = sb.toString();
+        MappedTextFile text = open((s + "\nend").getBytes("UTF-8"));
+        StringBuilder joined = new StringBuilder();
+        int lines = text.getLineCount();
+        assertTrue(lines > 2);
+        for (int i = 0; i < lines - 1; i++) {
+            String row = line(text, i);
+            assertFalse(row.indexOf('\ufffd') >= 0);
+            assertTrue(text.getLineEnd(text.getLineStart(i)) - text.getLineStart(i) <= MappedTextFile.MAX_LINE_LENGTH);
+            joined.append(row);
+        }
+        assertEquals(s, joined.toString());
+        assertEquals("end", line(text, lines - 1));
+    }
+}
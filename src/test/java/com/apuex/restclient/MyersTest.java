@@ -0,0 +1,148 @@
+package com.apuex.restclient;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class MyersTest {
+
+    private static List<int[]> diff(int[] a, int[] b) throws InterruptedIOException {
+        final List<int[]> changes = new ArrayList<int[]>();
+        new Myers(a, b).diff(new Myers.Listener() {
+            public void changed(int aStart, int aEnd, int bStart, int bEnd) {
+                changes.add(new int[]{aStart, aEnd, bStart, bEnd});
+            }
+        });
+        return changes;
+    }
+
+    /**
+     * Applies the changes to a, checking that they are in order and that the
+     * elements kept in between are equal in both sequences.
+     *
+     * @return The result, which should be b.
+     */
+    private static int[] patch(int[] a, int[] b, List<int[]> changes) {
+        int[] result = new int[b.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        for (int[] change : changes) {
+            assertTrue(change[0] >= i && change[0] <= change[1] && change[1] <= a.length);
+            assertTrue(change[2] >= j && change[2] <= change[3] && change[3] <= b.length);
+            assertTrue("empty change", change[0] < change[1] || change[2] < change[3]);
+            assertEquals("unequal lengths kept", change[0] - i, change[2] - j);
+            for (; i < change[0]; i++, j++) {
+                assertEquals(a[i], b[j]);
+                result[n++] = a[i];
+            }
+            for (j = change[2]; j < change[3]; j++) {
+                result[n++] = b[j];
+            }
+            i = change[1];
+        }
+        assertEquals("unequal lengths kept", a.length - i, b.length - j);
+        for (; i < a.length; i++) {
+            result[n++] = a[i];
+        }
+        return result;
+    }
+
+    private static List<int[]> check(int[] a, int[] b) throws InterruptedIOException {
+        List<int[]> changes = diff(a, b);
+        assertArrayEquals(b, patch(a, b, changes));
+        return changes;
+    }
+
+    private static int[] random(Random random, int length, int alphabet) {
+        int[] x = new int[length];
+        for (int i = 0; i < length; i++) {
+            x[i] = random.nextInt(alphabet);
+        }
+        return x;
+    }
+
+    @Test
+    public void comparesEmptySequences() throws Exception {
+        assertTrue(check(new int[0], new int[0]).isEmpty());
+        List<int[]> changes = check(new int[0], new int[]{1, 2});
+        assertEquals(1, changes.size());
+        assertArrayEquals(new int[]{0, 0, 0, 2}, changes.get(0));
+        changes = check(new int[]{1, 2}, new int[0]);
+        assertEquals(1, changes.size());
+        assertArrayEquals(new int[]{0, 2, 0, 0}, changes.get(0));
+    }
+
+    @Test
+    public void findsNothingInIdenticalSequences() throws Exception {
+        int[] a = random(new Random(1), 1000, 10);
+        assertTrue(check(a, a.clone()).isEmpty());
+    }
+
+    @Test
+    public void replacesDisjointSequencesWhole() throws Exception {
+        List<int[]> changes = check(new int[]{1, 2, 3}, new int[]{4, 5, 6, 7});
+        assertEquals(1, changes.size());
+        assertArrayEquals(new int[]{0, 3, 0, 4}, changes.get(0));
+    }
+
+    @Test
+    public void reportsASingleInsertionOnce() throws Exception {
+        int[] a = new int[10000];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i;
+        }
+        int[] b = new int[a.length + 1];
+        System.arraycopy(a, 0, b, 0, 5000);
+        b[5000] = a.length;
+        System.arraycopy(a, 5000, b, 5001, 5000);
+        List<int[]> changes = check(a, b);
+        assertEquals(1, changes.size());
+        assertArrayEquals(new int[]{5000, 5000, 5000, 5001}, changes.get(0));
+    }
+
+    @Test
+    public void findsTheShortestDiffOfSmallInputs() throws Exception {
+        // the example of the paper: ABCABBA against CBABAC, 5 differences.
+        int[] a = {0, 1, 2, 0, 1, 1, 0};
+        int[] b = {2, 1, 0, 1, 0, 2};
+        int edits = 0;
+        for (int[] change : check(a, b)) {
+            edits += change[1] - change[0] + change[3] - change[2];
+        }
+        assertEquals(5, edits);
+    }
+
+    @Test
+    public void patchesRandomSequences() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            int[] a = random(random, random.nextInt(50), 1 + random.nextInt(8));
+            int[] b = random(random, random.nextInt(50), 1 + random.nextInt(8));
+            check(a, b);
+        }
+    }
+
+    @Test
+    public void patchesLargeEditedSequences() throws Exception {
+        Random random = new Random(7);
+        int[] a = random(random, 50000, 1000);
+        int[] b = a.clone();
+        for (int i = 0; i < 500; i++) {
+            b[random.nextInt(b.length)] = random.nextInt(1000);
+        }
+        int[] c = random(random, 50000, 1000);
+        check(a, b);
+        check(a, c);
+        check(a, Arrays.copyOfRange(a, 1000, 40000));
+    }
+}
@@ -0,0 +1,108 @@
+package com.apuex.restclient;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class RetryPolicyTest {
+
+    private static String date(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(millis));
+    }
+
+    /**
+     * Asserts that the backoff of the attempt stays within [0, bound], and
+     * comes close to both ends.
+     */
+    private static void assertBackoff(RetryPolicy policy, int attempt, long bound) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 2000; i++) {
+            long delay = policy.backoff(attempt);
+            assertTrue(attempt + ": " + delay, delay >= 0 && delay <= bound);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue(attempt + ": " + min, min <= bound / 10);
+        assertTrue(attempt + ": " + max, max >= bound - bound / 10);
+    }
+
+    @Test
+    public void takesDelaySeconds() {
+        RetryPolicy policy = new RetryPolicy();
+        assertEquals(120000L, policy.retryAfter("120"));
+        assertEquals(5000L, policy.retryAfter(" 5 "));
+        assertEquals(0L, policy.retryAfter("0"));
+    }
+
+    @Test
+    public void ignoresInvalidValues() {
+        RetryPolicy policy = new RetryPolicy();
+        for (String value : new String[]{"-5", "+5", "1.5", "5s", "", "soon"}) {
+            assertEquals(value, -1L, policy.retryAfter(value));
+        }
+        assertEquals(-1L, policy.retryAfter(null));
+    }
+
+    @Test
+    public void saturatesHugeDelays() {
+        RetryPolicy policy = new RetryPolicy();
+        assertEquals(Long.MAX_VALUE, policy.retryAfter("9223372036854776"));
+        assertEquals(Long.MAX_VALUE, policy.retryAfter("99999999999999999999"));
+        assertEquals(9223372036854775000L, policy.retryAfter("9223372036854775"));
+    }
+
+    @Test
+    public void takesHttpDates() {
+        RetryPolicy policy = new RetryPolicy();
+        long delay = policy.retryAfter(date(System.currentTimeMillis() + 60000));
+        assertTrue(Long.toString(delay), delay > 55000 && delay <= 60000);
+        assertEquals(0L, policy.retryAfter(date(System.currentTimeMillis() - 60000)));
+    }
+
+    @Test
+    public void ignoresRetryAfterUnlessHonored() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setHonorRetryAfter(false);
+        assertEquals(-1L, policy.retryAfter("120"));
+    }
+
+    @Test
+    public void doublesTheBackoffUpToTheMaximum() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setInitialDelay(100);
+        policy.setMaxDelay(1000);
+        assertBackoff(policy, 1, 100);
+        assertBackoff(policy, 2, 200);
+        assertBackoff(policy, 4, 800);
+        assertBackoff(policy, 5, 1000);
+        assertBackoff(policy, 100, 1000);
+    }
+
+    @Test
+    public void capsTheBackoffOnOverflow() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setInitialDelay(Long.MAX_VALUE / 4);
+        policy.setMaxDelay(5000);
+        assertBackoff(policy, 3, 5000);
+        assertBackoff(policy, 31, 5000);
+    }
+
+    @Test
+    public void doesNotWaitWithoutAMaximumDelay() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxDelay(0);
+        assertEquals(0L, policy.backoff(1));
+        assertEquals(0L, policy.backoff(10));
+    }
+}
@@ -0,0 +1,95 @@
+package com.apuex.restclient;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class TeeInputStreamTest {
+
+    /**
+     * Keeps the copy in memory, up to a limit.
+     */
+    private static class Copy extends TeeInputStream {
+
+        final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        final int limit;
+        int commits;
+        int aborts;
+
+        Copy(String content, int limit) throws IOException {
+            super(new ByteArrayInputStream(content.getBytes("UTF-8")));
+            this.limit = limit;
+        }
+
+        boolean write(byte[] b, int off, int len) {
+            copy.write(b, off, len);
+            return copy.size() <= limit;
+        }
+
+        void commit() {
+            commits++;
+        }
+
+        void abort() {
+            aborts++;
+        }
+    }
+
+    @Test
+    public void commitsAtTheEnd() throws IOException {
+        Copy in = new Copy("hello, world", 100);
+        byte[] buffer = new byte[5];
+        assertEquals('h', in.read());
+        while (in.read(buffer, 0, buffer.length) != -1) {
+            assertEquals(0, in.commits);
+        }
+        assertEquals(-1, in.read());
+        in.close();
+        assertEquals("hello, world", in.copy.toString("UTF-8"));
+        assertEquals(1, in.commits);
+        assertEquals(0, in.aborts);
+    }
+
+    @Test
+    public void abortsWhenClosedBeforeTheEnd() throws IOException {
+        Copy in = new Copy("hello, world", 100);
+        in.read(new byte[5], 0, 5);
+        in.close();
+        in.close();
+        assertEquals(0, in.commits);
+        assertEquals(1, in.aborts);
+    }
+
+    @Test
+    public void abortsWhenSkipped() throws IOException {
+        Copy in = new Copy("hello, world", 100);
+        in.skip(5);
+        while (in.read() != -1) {
+            // reads on without copying.
+        }
+        assertEquals(0, in.commits);
+        assertEquals(1, in.aborts);
+        assertEquals("", in.copy.toString("UTF-8"));
+    }
+
+    @Test
+    public void abortsOnceTheWriterGivesUp() throws IOException {
+        Copy in = new Copy("hello, world", 4);
+        byte[] buffer = new byte[3];
+        int total = 0;
+        for (int n; (n = in.read(buffer, 0, buffer.length)) != -1; ) {
+            total += n;
+        }
+        assertEquals(12, total);
+        assertEquals("hello,", in.copy.toString("UTF-8"));
+        assertEquals(0, in.commits);
+        assertEquals(1, in.aborts);
+    }
+}
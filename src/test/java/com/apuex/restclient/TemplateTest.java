@@ -0,0 +1,89 @@
+package com.apuex.restclient;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wangxy
+ */
+public class TemplateTest {
+
+    @Test
+    public void expandsVariables() {
+        List<String> variables = new ArrayList<String>();
+        Template url = Template.compile("http://host/users/${id}?name=${ name }&again=${id}", variables);
+        assertEquals(Arrays.asList("id", "name"), variables);
+        assertFalse(url.isConstant());
+        assertEquals("http://host/users/7?name=ann&again=7", url.expand(new String[]{"7", "ann"}));
+    }
+
+    @Test
+    public void sharesVariablesBetweenTemplates() {
+        List<String> variables = new ArrayList<String>();
+        Template url = Template.compile("/users/${id}", variables);
+        Template body = Template.compile("{\"name\": \"${name}\", \"id\": ${id}}", variables);
+        assertEquals(Arrays.asList("id", "name"), variables);
+        String[] values = {"7", "ann"};
+        assertEquals("/users/7", url.expand(values));
+        assertEquals("{\"name\": \"ann\", \"id\": 7}", body.expand(values));
+    }
+
+    @Test
+    public void keepsTextWithoutVariables() {
+        List<String> variables = new ArrayList<String>();
+        Template template = Template.compile("{\"a\": \"$ {b} $\"}", variables);
+        assertTrue(template.isConstant());
+        assertTrue(variables.isEmpty());
+        assertEquals("{\"a\": \"$ {b} $\"}", template.expand(new String[0]));
+        assertEquals("", Template.compile("", variables).expand(new String[0]));
+    }
+
+    @Test
+    public void unescapesDoubledDollars() {
+        List<String> variables = new ArrayList<String>();
+        Template template = Template.compile("$${literal} ${id} $${id}", variables);
+        assertEquals(Arrays.asList("id"), variables);
+        assertEquals("${literal} 1 ${id}", template.expand(new String[]{"1"}));
+        assertEquals("${x}", Template.compile("$${x}", variables).expand(new String[0]));
+    }
+
+    @Test
+    public void insertsValuesVerbatim() {
+        List<String> variables = new ArrayList<String>();
+        Template template = Template.compile("${a}", variables);
+        assertEquals("${b}", template.expand(new String[]{"${b}"}));
+    }
+
+    @Test
+    public void rejectsUnknownVariables() {
+        List<String> variables = new ArrayList<String>();
+        Template template = Template.compile("/users/${id}/${missing}", variables);
+        try {
+            template.expand(new String[]{"7", null});
+            fail("Expanded a variable without value");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No value for missing", e.getMessage());
+        }
+        try {
+            template.expand(new String[]{"7"});
+            fail("Expanded a variable without value");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No value for missing", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnclosedPlaceholders() {
+        Template.compile("/users/${id", new ArrayList<String>());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyNames() {
+        Template.compile("/users/${ }", new ArrayList<String>());
+    }
+}